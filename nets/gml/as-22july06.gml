@@ -1,6 +1,6 @@
-Creator "Mark Newman on Sat Jul 22 05:41:45 2006"
 graph
 [
+  Creator "Mark Newman on Sat Jul 22 05:41:45 2006"
   directed 0
   node
   [
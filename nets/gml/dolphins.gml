@@ -1,6 +1,6 @@
-Creator "Mark Newman on Wed Jul 26 15:04:20 2006"
 graph
 [
+  Creator "Mark Newman on Wed Jul 26 15:04:20 2006"
   directed 0
   node
   [
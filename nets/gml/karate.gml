@@ -1,6 +1,6 @@
-Creator "Mark Newman on Fri Jul 21 12:39:27 2006"
 graph
 [
+  Creator "Mark Newman on Fri Jul 21 12:39:27 2006"
   node
   [
     id 1
@@ -0,0 +1,144 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+
+/**
+ * Measure the memory allocated by the node computations of SHARC on static
+ * networks, with the plain similarity read from the live histograms and with
+ * the weighted similarity of SawSharc. Once the assignment has converged, the
+ * nodes are computed again and the bytes allocated by the current thread are
+ * divided by the number of computations. As the communities are scored by id
+ * and no label nor score changes anymore, neither similarity is expected to
+ * allocate per node, and the benchmark exits with a failure status if one of
+ * them allocates more than a few bytes per node.
+ * 
+ * Usage: AllocationBenchmark (for the networks of nets/gml),
+ * AllocationBenchmark muw seed (as for the WLFR networks of Simulation), or
+ * AllocationBenchmark file... to benchmark specific network files.
+ */
+public class AllocationBenchmark {
+
+	protected int maxSteps = 100;
+
+	protected int sweeps = 10;
+
+	/**
+	 * Largest number of bytes allocated per node computation, above which the
+	 * check fails
+	 */
+	protected double threshold = 16.0;
+
+	protected boolean failed;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length == 0) {
+			networks.add("nets/gml/karate.gml");
+			networks.add("nets/gml/dolphins.gml");
+			networks.add("nets/gml/football.gml");
+			networks.add("nets/gml/lesmis.gml");
+		} else if (args[0].contains("."))
+			for (String network : args)
+				networks.add(network);
+		else
+			Simulation.addWlfrNetworks(networks, args);
+
+		long[] seeds = { 32, 17, 5648 };
+
+		boolean failed = false;
+		for (String net : networks)
+			for (long seed : seeds)
+				failed |= new AllocationBenchmark(net, seed).failed;
+		if (failed)
+			System.exit(1);
+	}
+
+	public AllocationBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		try {
+			failed |= check(run(network, seed, new Sharc()), "plain");
+			failed |= check(run(network, seed, new SawSharc()), "weighted");
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			failed = true;
+		}
+	}
+
+	/**
+	 * Report an allocation rate above the threshold.
+	 * 
+	 * @return true if the check fails
+	 */
+	protected boolean check(double perNode, String similarity) {
+		if (perNode <= threshold)
+			return false;
+		System.out.println(similarity + " similarity allocates " + perNode
+				+ " bytes per computeNode");
+		return true;
+	}
+
+	/**
+	 * Run the algorithm until convergence, then measure the allocations of
+	 * further node computations.
+	 * 
+	 * @return the number of bytes allocated per node computation
+	 */
+	protected double run(String network, long seed, Sharc algo)
+			throws Exception {
+		Graph graph = new DefaultGraph("graph", false, true);
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+
+		/*
+		 * Load the whole network before computing
+		 */
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+		input.begin(network);
+		while (input.nextStep())
+			;
+		input.end();
+
+		int steps = 0;
+		while (steps < maxSteps && !algo.isConverged()) {
+			algo.compute();
+			steps++;
+		}
+
+		/*
+		 * Collect the nodes beforehand, so that only the computations are
+		 * measured
+		 */
+		Node[] nodes = new Node[graph.getNodeCount()];
+		int count = 0;
+		for (Node u : graph)
+			nodes[count++] = u;
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory
+						.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int sweep = 0; sweep < sweeps; sweep++)
+			for (int i = 0; i < count; i++)
+				algo.computeNode(nodes[i]);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		double perNode = (double) allocated / Math.max(1, sweeps * count);
+
+		System.out.println(algo.getClass().getSimpleName() + ": " + steps
+				+ " steps, " + allocated + " bytes for " + (sweeps * count)
+				+ " computeNode, " + perNode + " bytes per computeNode");
+
+		algo.terminate();
+		return perNode;
+	}
+}
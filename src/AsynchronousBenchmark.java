@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Check the asynchronous steps of SHARC against the sequential engine on
+ * large static networks: for an increasing number of threads and staleness
+ * bound, compare the running time, the modularity and the NMI with the ones
+ * of the in place steps, and report the staleness counters. A run whose
+ * modularity or NMI falls more than the tolerance below the sequential one
+ * is reported as such.
+ * 
+ * Usage: AsynchronousBenchmark [file...], the 5000 nodes LFR networks and the
+ * AS graph being used by default.
+ */
+public class AsynchronousBenchmark {
+
+	protected String referenceMarker = "value";
+
+	protected int maxSteps = 100;
+
+	protected int sweeps = 10;
+
+	protected double tolerance = 0.02;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String network : args)
+				networks.add(network);
+		} else {
+			networks.add("nets/gml/as-22july06.gml");
+			ArrayList<String> lfr = new ArrayList<String>();
+			Simulation.addLfrNetworks(lfr, args);
+			for (String network : lfr)
+				if (network.contains("-5000-"))
+					networks.add(network);
+		}
+
+		long[] seeds = { 32, 17, 5648 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new AsynchronousBenchmark(net, seed);
+	}
+
+	public AsynchronousBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		int[] threads = { 1, 2, 4, 8, 16, 32 };
+		int[] staleness = { 0, 1, 4 };
+		try {
+			double[] reference = run(network, seed, 0, 0);
+			for (int parallelism : threads)
+				for (int k : staleness) {
+					double[] measures = run(network, seed, parallelism, k);
+					if (measures[0] < reference[0] - tolerance
+							|| measures[1] < reference[1] - tolerance)
+						System.out.println("asynchronous " + parallelism
+								+ " threads, staleness " + k
+								+ " below the sequential engine");
+					System.out.println("speedup: "
+							+ (reference[2] / Math.max(1, measures[2])));
+				}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Run the algorithm on a network, in place if parallelism is 0.
+	 * 
+	 * @return the modularity, the NMI and the time spent computing, in
+	 *         nanoseconds
+	 */
+	protected double[] run(String network, long seed, int parallelism,
+			int staleness) throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+		algo.setAsynchronous(parallelism, staleness, sweeps);
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+		NormalizedMutualInformation NMI = new NormalizedMutualInformation(
+				algo.getMarker(), referenceMarker);
+		NMI.init(graph);
+
+		/*
+		 * Load the whole network before computing
+		 */
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+		input.begin(network);
+		while (input.nextStep())
+			;
+		input.end();
+
+		int steps = 0;
+		long start = System.nanoTime();
+		while (steps < maxSteps && !algo.isConverged()) {
+			algo.compute();
+			steps++;
+		}
+		long time = System.nanoTime() - start;
+
+		double q = Q.getMeasure();
+		double nmi = NMI.getMeasure();
+		String counters = "";
+		AsynchronousStep step = algo.getAsynchronousStep();
+		if (step != null)
+			counters = ", max staleness " + step.getMaxStaleness() + ", "
+					+ step.getWaits() + " waits, " + step.getUpdates()
+					+ " updates";
+
+		System.out.println((parallelism == 0 ? "sequential"
+				: "asynchronous " + parallelism + " threads, staleness "
+						+ staleness)
+				+ ": " + steps + " steps, " + (time / 1000000) + " ms, Q = "
+				+ q + ", NMI = " + nmi + counters);
+
+		algo.terminate();
+		return new double[] { q, nmi, time };
+	}
+}
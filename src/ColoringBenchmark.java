@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Compare the running time, number of steps and modularity of SHARC when
+ * computing the nodes in place on one thread, synchronously and by the
+ * classes of a distance-2 coloring on an increasing number of threads. Each
+ * run computes one step per step of the network file, then steps until
+ * convergence.
+ * 
+ * Usage: ColoringBenchmark [file...], the highway-120 mobility traces and the
+ * 5000 nodes LFR networks being used by default.
+ */
+public class ColoringBenchmark {
+
+	protected int maxSteps = 100;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String network : args)
+				networks.add(network);
+		} else {
+			for (int i = 0; i < 4; i++)
+				networks.add("nets/dgs/highway-120-" + i + ".dgs");
+			ArrayList<String> lfr = new ArrayList<String>();
+			Simulation.addLfrNetworks(lfr, args);
+			for (String network : lfr)
+				if (network.contains("-5000-"))
+					networks.add(network);
+		}
+
+		long[] seeds = { 32, 17, 5648 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new ColoringBenchmark(net, seed);
+	}
+
+	public ColoringBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		int[] threads = { 1, 2, 4, 8, 16, 32 };
+		try {
+			long reference = run(network, seed, 0, false);
+			for (int parallelism : threads)
+				run(network, seed, parallelism, false);
+			for (int parallelism : threads) {
+				long time = run(network, seed, parallelism, true);
+				System.out.println("speedup " + parallelism + " threads: "
+						+ ((double) reference / Math.max(1, time)));
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Run the algorithm on a network.
+	 * 
+	 * @return the time spent computing, in nanoseconds
+	 */
+	protected long run(String network, long seed, int parallelism,
+			boolean colored) throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+		if (colored)
+			algo.setColoredScheduling(parallelism);
+		else
+			algo.setSynchronous(parallelism);
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+
+		int step = 0;
+		long time = 0;
+		input.begin(network);
+		while (input.nextStep() || (step < maxSteps && !algo.isConverged())) {
+			long start = System.nanoTime();
+			algo.compute();
+			time += System.nanoTime() - start;
+			step++;
+		}
+		input.end();
+
+		System.out.println((parallelism == 0 ? "in place"
+				: (colored ? "colored " : "synchronous ") + parallelism
+						+ " threads")
+				+ ": " + step + " steps, " + (time / 1000000) + " ms, Q = "
+				+ Q.getMeasure() + ", C = " + algo.getConvergence());
+
+		algo.terminate();
+		return time;
+	}
+}
@@ -0,0 +1,150 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.StructureStability;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Same simulations as Simulation for the SHARC algorithms, all the seeds of a
+ * network being run as lanes over a single graph and neighborhood index
+ * instead of one run per seed, each lane writing the log its own run would
+ * have written.
+ * 
+ * Usage: LaneSimulation file..., or LaneSimulation muw seed for the WLFR
+ * networks of Simulation.
+ */
+public class LaneSimulation {
+
+	protected String referenceMarker = "value";
+	protected String weightMarker = "weight";
+
+	protected int maxSteps = 100;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0 && args[0].contains("."))
+			for (String network : args)
+				networks.add(network);
+		else
+			Simulation.addWlfrNetworks(networks, args);
+
+		String[] algorithms = { "Sharc", "NewSawSharc" };
+
+		long[] seeds = { 32, 17, 5648, 110283, 299, 654, 13449, 8095, 48293805,
+				323, 1153, 7607, 3709, 466644, 160, 125, 170910, 1036, 9085,
+				976619 };
+
+		for (String net : networks)
+			for (String algo : algorithms)
+				new LaneSimulation(net, algo, seeds);
+	}
+
+	public LaneSimulation(String network, String algorithm, long[] seeds) {
+		System.out.println("----------");
+		System.out.println("Starting new lane simulation with :");
+		System.out.println("network file " + network);
+		System.out.println("algorithm " + algorithm);
+		System.out.println("lanes " + seeds.length);
+
+		Graph graph = new DefaultGraph("graph");
+
+		try {
+			FileSource input = FileSourceFactory.sourceFor(network);
+			input.addSink(graph);
+
+			/*
+			 * One lane per seed, each with its own marker and measures
+			 */
+			Class algorithmClass = Class
+					.forName("org.graphstream.algorithm.community." + algorithm);
+			SharcLanes lanes = new SharcLanes(graph);
+			int count = seeds.length;
+			Modularity[] Q = new Modularity[count];
+			Modularity[] WQ = new Modularity[count];
+			NormalizedMutualInformation[] NMI = new NormalizedMutualInformation[count];
+			CommunityDistribution[] D = new CommunityDistribution[count];
+			StructureStability[] R = new StructureStability[count];
+			PrintStream[] p = new PrintStream[count];
+			for (int k = 0; k < count; k++) {
+				Sharc algo = (Sharc) algorithmClass.getConstructor(Graph.class,
+						String.class).newInstance(graph,
+						"community_" + seeds[k]);
+				algo.setRandom(new Random(seeds[k]));
+				lanes.addLane(algo);
+				input.addSink(algo);
+
+				R[k] = new StructureStability(algo.getMarker(), weightMarker);
+				R[k].init(graph);
+				input.addSink(R[k]);
+				Q[k] = new Modularity(algo.getMarker());
+				Q[k].init(graph);
+				WQ[k] = new Modularity(algo.getMarker(), weightMarker);
+				WQ[k].init(graph);
+				NMI[k] = new NormalizedMutualInformation(algo.getMarker(),
+						referenceMarker);
+				NMI[k].init(graph);
+				D[k] = new CommunityDistribution(algo.getMarker());
+				D[k].init(graph);
+
+				p[k] = new PrintStream(new FileOutputStream("log/"
+						+ getNetworkName(network) + "_" + algorithm + "_"
+						+ seeds[k] + ".log"));
+			}
+
+			/*
+			 * Run the lanes, each one stopping when its own run would have
+			 */
+			boolean[] done = new boolean[count];
+			int running = count;
+			int step = 0;
+			input.begin(network);
+			while (running > 0) {
+				boolean more = input.nextStep();
+				for (int k = 0; k < count; k++) {
+					Sharc algo = lanes.getLane(k);
+					if (done[k])
+						continue;
+					if (!more && (step >= maxSteps || algo.isConverged())) {
+						done[k] = true;
+						running--;
+						continue;
+					}
+
+					p[k].println("S = " + step);
+
+					algo.compute();
+
+					p[k].println("Q = " + Q[k].getMeasure());
+					p[k].println("WQ = " + WQ[k].getMeasure());
+					p[k].println("NMI = " + NMI[k].getMeasure());
+					p[k].println("D = " + D[k]);
+					p[k].println("R = " + R[k]);
+					p[k].println("C = " + algo.getConvergence());
+				}
+				step++;
+			}
+
+			/*
+			 * Close stuff properly
+			 */
+			for (int k = 0; k < count; k++)
+				p[k].close();
+			input.end();
+			lanes.terminate();
+
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	protected String getNetworkName(String network) {
+		File f = new File(network);
+		String name = f.getName();
+		return name.substring(0, name.lastIndexOf('.'));
+	}
+}
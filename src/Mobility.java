@@ -26,6 +26,8 @@ public class Mobility {
 	protected long seed = 0;
 	protected Random rng;
 
+	protected OriginatorIndex originators;
+
 	protected int steps = 600;
 	protected double breathingPeriod = 150;
 
@@ -48,13 +50,37 @@ public class Mobility {
 		//
 		SandSharc algo = new SandSharc(graph, "community", stability);
 		algo.setRandom(rng);
+		originators = algo.getOriginatorIndex();
 		algo.staticMode();
 
+		/*
+		 * Keep the algorithm state out of the node attributes, and only
+		 * relabel the nodes whose community changed at each step
+		 */
+		algo.setBatchedNotification(true);
+		final Graph display = graph;
+		algo.addCommunityChangeListener(new CommunityChangeListener() {
+			public void communitiesChanged(CommunityChangeSet changes) {
+				for (int i = 0; i < changes.size(); i++) {
+					Node n = display.getNode(changes.getNodeId(i));
+					if (n != null)
+						n.setAttribute("label", n.getId() + "<"
+								+ changes.getCommunity(i) + ">");
+				}
+			}
+		});
+
 		try {
 			// output.begin("mobility-test.dgs");
 			// graph.addSink(output);
 			graph.addSink(stab);
 
+			/*
+			 * The algorithm keeps its neighborhood index up to date from the
+			 * events of the graph it moves
+			 */
+			graph.addSink(algo);
+
 			/*
 			 * Initialize the graph and the first connections
 			 */
@@ -256,11 +282,8 @@ public class Mobility {
 			else {
 				n.setAttribute("ui.size", 5);
 			}
-			
-			n.setAttribute("label",
-					n.getId() + "<" + n.getAttribute(marker) + ">");
 
-			if (n.hasAttribute(marker + ".originator")) {
+			if (originators.isOriginator(n.getId())) {
 				n.setAttribute("ui.style", "text-color: red;");
 			}
 			else {
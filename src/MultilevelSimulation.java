@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Compare the flat SHARC algorithm with its multilevel driver on large static
+ * networks: number of node computations, running time, modularity and NMI.
+ * 
+ * Usage: MultilevelSimulation [file...], the 5000 nodes LFR networks and the
+ * AS graph being used by default.
+ */
+public class MultilevelSimulation {
+
+	protected String referenceMarker = "value";
+
+	protected int maxSteps = 100;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String network : args)
+				networks.add(network);
+		} else {
+			networks.add("nets/gml/as-22july06.gml");
+			ArrayList<String> lfr = new ArrayList<String>();
+			Simulation.addLfrNetworks(lfr, args);
+			for (String network : lfr)
+				if (network.contains("-5000-"))
+					networks.add(network);
+		}
+
+		long[] seeds = { 32, 17, 5648 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new MultilevelSimulation(net, seed);
+	}
+
+	public MultilevelSimulation(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		try {
+			run(network, seed, false);
+			run(network, seed, true);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	protected void run(String network, long seed, boolean multilevel)
+			throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		MultilevelSharc driver = new MultilevelSharc(graph);
+		driver.setRandom(new Random(seed));
+		Sharc algo = driver.getAlgorithm();
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+		NormalizedMutualInformation NMI = new NormalizedMutualInformation(
+				algo.getMarker(), referenceMarker);
+		NMI.init(graph);
+
+		/*
+		 * Load the whole network before computing
+		 */
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+		input.begin(network);
+		while (input.nextStep())
+			;
+		input.end();
+
+		long computations = 0;
+		long start = System.nanoTime();
+		if (multilevel) {
+			driver.compute();
+			computations = driver.getComputations();
+		} else {
+			for (int step = 0; step < maxSteps && !algo.isConverged(); step++) {
+				algo.compute();
+				computations += graph.getNodeCount();
+			}
+		}
+		long time = System.nanoTime() - start;
+
+		System.out.println((multilevel ? "multilevel " + driver.getLevelSizes()
+				: "flat") + ": " + computations + " computeNode, "
+				+ (time / 1000000) + " ms, Q = " + Q.getMeasure() + ", NMI = "
+				+ NMI.getMeasure());
+
+		algo.terminate();
+	}
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Compare the number of node computations, the running time and the quality
+ * of the assignment of SHARC on static networks, when computing all the nodes
+ * at each step until convergence, and when computing the nodes by decreasing
+ * residual until no node may change community anymore.
+ * 
+ * Usage: ResidualBenchmark muw seed (as for the WLFR networks of Simulation),
+ * or ResidualBenchmark file... to benchmark specific network files.
+ */
+public class ResidualBenchmark {
+
+	protected String referenceMarker = "value";
+
+	protected int maxSteps = 100;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0 && args[0].contains("."))
+			for (String network : args)
+				networks.add(network);
+		else
+			Simulation.addWlfrNetworks(networks, args);
+
+		long[] seeds = { 32, 17, 5648, 110283, 299 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new ResidualBenchmark(net, seed);
+	}
+
+	public ResidualBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		try {
+			run(network, seed, false);
+			run(network, seed, true);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	protected void run(String network, long seed, boolean residual)
+			throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+		NormalizedMutualInformation NMI = new NormalizedMutualInformation(
+				algo.getMarker(), referenceMarker);
+		NMI.init(graph);
+
+		/*
+		 * Load the whole network before computing
+		 */
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+		input.begin(network);
+		while (input.nextStep())
+			;
+		input.end();
+
+		long computations = 0;
+		int steps = 0;
+		long start = System.nanoTime();
+		if (residual) {
+			/*
+			 * Compute by decreasing residual, with the same budget as the
+			 * plain order
+			 */
+			ResidualSteps residualSteps = algo.getResidualSteps();
+			long budget = (long) maxSteps * graph.getNodeCount();
+			while (computations < budget) {
+				computations += residualSteps.compute((int) Math.min(
+						Integer.MAX_VALUE, budget - computations));
+				steps++;
+				if (residualSteps.getPendingNodes() == 0)
+					break;
+			}
+		} else {
+			/*
+			 * Compute all the nodes at each step until convergence
+			 */
+			while (steps < maxSteps && !algo.isConverged()) {
+				algo.compute();
+				computations += graph.getNodeCount();
+				steps++;
+			}
+		}
+		long time = System.nanoTime() - start;
+
+		System.out.println((residual ? "residual" : "plain") + " order: "
+				+ computations + " computeNode, " + steps + " steps, "
+				+ (time / 1000000) + " ms, Q = " + Q.getMeasure()
+				+ ", NMI = " + NMI.getMeasure() + ", C = "
+				+ algo.getConvergence());
+
+		algo.terminate();
+	}
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.ConnectedComponents;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Compare the running time and modularity of SHARC when computing the nodes
+ * in place on one thread and by connected components on an increasing number
+ * of threads, on fragmented contact traces. Each run computes one step per
+ * step of the trace, as DynamicSimulationCabs and DynamicSimulationInfocom
+ * do.
+ * 
+ * Usage: ShardedBenchmark [file...], the cabs and Infocom traces being used by
+ * default.
+ */
+public class ShardedBenchmark {
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String network : args)
+				networks.add(network);
+		} else {
+			networks.add("nets/dgs/cabs_10000.dgs");
+			networks.add("nets/dgs/infocom2006.dgs");
+		}
+
+		long[] seeds = { 32, 17, 5648 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new ShardedBenchmark(net, seed);
+	}
+
+	public ShardedBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		int[] threads = { 1, 2, 4, 8, 16, 32 };
+		try {
+			long reference = run(network, seed, 0);
+			for (int parallelism : threads) {
+				long time = run(network, seed, parallelism);
+				System.out.println("speedup " + parallelism + " threads: "
+						+ ((double) reference / Math.max(1, time)));
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Run the algorithm on a trace, in place if parallelism is 0.
+	 * 
+	 * @return the time spent computing, in nanoseconds
+	 */
+	protected long run(String network, long seed, int parallelism)
+			throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+		algo.setComponentSharding(parallelism);
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+		ConnectedComponents CC = new ConnectedComponents();
+		CC.init(graph);
+
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+
+		int step = 0;
+		long time = 0;
+		double components = 0;
+		input.begin(network);
+		while (input.nextStep()) {
+			long start = System.nanoTime();
+			algo.compute();
+			time += System.nanoTime() - start;
+			components += CC.getConnectedComponentsCount(2);
+			step++;
+		}
+		input.end();
+
+		System.out.println((parallelism == 0 ? "in place" : "sharded "
+				+ parallelism + " threads")
+				+ ": " + step + " steps, " + (time / 1000000) + " ms, Q = "
+				+ Q.getMeasure() + ", CC = " + (components / Math.max(1, step)));
+
+		algo.terminate();
+		return time;
+	}
+}
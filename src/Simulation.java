@@ -126,7 +126,7 @@ public class Simulation {
 			 */
 			int step = 0;
 			input.begin(network);
-			while (input.nextStep() || step < 100) {
+			while (input.nextStep() || (step < 100 && !hasConverged(algo))) {
 				p.println("S = " + step);
 
 				algo.compute();
@@ -136,6 +136,8 @@ public class Simulation {
 				p.println("NMI = " + NMI.getMeasure());
 				p.println("D = " + D);
 				p.println("R = " + R);
+				if (algo instanceof Sharc)
+					p.println("C = " + ((Sharc) algo).getConvergence());
 
 				step++;
 			}
@@ -153,6 +155,14 @@ public class Simulation {
 
 	}
 
+	/**
+	 * Whether the algorithm reports that its assignment is stable or
+	 * oscillating, so that the simulation of a static network can stop early.
+	 */
+	protected boolean hasConverged(DecentralizedCommunityAlgorithm algo) {
+		return algo instanceof Sharc && ((Sharc) algo).isConverged();
+	}
+
 	protected String getNetworkName(String network) {
 		File f = new File(network);
 		String name = f.getName();
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+import org.graphstream.algorithm.measure.*;
+
+/**
+ * Measure the running time of the synchronous steps of SHARC on static
+ * networks for an increasing number of threads, and check that the final
+ * assignment does not depend on the number of threads.
+ * 
+ * Usage: SynchronousBenchmark muw seed (as for the WLFR networks of
+ * Simulation), or SynchronousBenchmark file... to benchmark specific network
+ * files.
+ */
+public class SynchronousBenchmark {
+
+	protected String referenceMarker = "value";
+
+	protected int maxSteps = 100;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0 && args[0].contains("."))
+			for (String network : args)
+				networks.add(network);
+		else
+			Simulation.addWlfrNetworks(networks, args);
+
+		long[] seeds = { 32, 17, 5648 };
+
+		for (String net : networks)
+			for (long seed : seeds)
+				new SynchronousBenchmark(net, seed);
+	}
+
+	public SynchronousBenchmark(String network, long seed) {
+		System.out.println("----------");
+		System.out.println("network file " + network);
+		System.out.println("seed " + seed);
+
+		int[] threads = { 1, 2, 4, 8, 16, 32 };
+		try {
+			HashMap<String, Object> reference = null;
+			for (int parallelism : threads) {
+				HashMap<String, Object> assignment = run(network, seed,
+						parallelism);
+				if (reference == null)
+					reference = assignment;
+				else if (!sameCommunities(reference, assignment))
+					System.out.println("assignment with " + parallelism
+							+ " threads differs from 1 thread");
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}
+
+	protected HashMap<String, Object> run(String network, long seed,
+			int parallelism) throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+		algo.setSynchronous(parallelism);
+
+		Modularity Q = new Modularity(algo.getMarker());
+		Q.init(graph);
+		NormalizedMutualInformation NMI = new NormalizedMutualInformation(
+				algo.getMarker(), referenceMarker);
+		NMI.init(graph);
+
+		/*
+		 * Load the whole network before computing
+		 */
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		input.addSink(algo);
+		input.begin(network);
+		while (input.nextStep())
+			;
+		input.end();
+
+		int steps = 0;
+		long start = System.nanoTime();
+		while (steps < maxSteps && !algo.isConverged()) {
+			algo.compute();
+			steps++;
+		}
+		long time = System.nanoTime() - start;
+
+		System.out.println(parallelism + " threads: " + steps + " steps, "
+				+ (time / 1000000) + " ms, " + (time / 1000 / Math.max(1, steps))
+				+ " us/step, Q = " + Q.getMeasure() + ", NMI = "
+				+ NMI.getMeasure() + ", C = " + algo.getConvergence());
+
+		HashMap<String, Object> assignment = algo.getAssignment();
+		algo.terminate();
+		return assignment;
+	}
+
+	/**
+	 * Whether two assignments group the nodes the same way, the labels of
+	 * the communities originated in different runs being different objects.
+	 */
+	protected boolean sameCommunities(HashMap<String, Object> a,
+			HashMap<String, Object> b) {
+		if (a.size() != b.size())
+			return false;
+		HashMap<Object, Object> forward = new HashMap<Object, Object>();
+		HashMap<Object, Object> backward = new HashMap<Object, Object>();
+		for (String id : a.keySet()) {
+			Object x = a.get(id);
+			Object y = b.get(id);
+			if (y == null && !b.containsKey(id))
+				return false;
+			Object fx = forward.put(x, y);
+			Object by = backward.put(y, x);
+			if ((fx != null && !fx.equals(y)) || (by != null && !by.equals(x)))
+				return false;
+		}
+		return true;
+	}
+}
@@ -21,6 +21,8 @@ public class Test {
 
 	protected Random rng;
 
+	protected OriginatorIndex originators;
+
 	/**
 	 * @param args
 	 */
@@ -40,6 +42,7 @@ public class Test {
 		SandSharc algo = new SandSharc(graph, "community", stability);
 		//AutonomyOrientedCommunityDetection algo = new AutonomyOrientedCommunityDetection(graph);
 		algo.setRandom(rng);
+		originators = algo.getOriginatorIndex();
 
 		EdgeStability E = new EdgeStability();
 		E.init(graph);
@@ -250,7 +253,7 @@ public class Test {
 			//n.setAttribute("label",
 			//		n.getId() + "<" + n.getAttribute(marker) + ">" + n.getNumber(marker + ".freshness"));
 
-			if (n.hasAttribute(marker + ".originator")) {
+			if (originators.isOriginator(n.getId())) {
 				n.setAttribute("ui.style", "text-color: red;");
 			}
 			else {
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.*;
+import org.graphstream.stream.file.*;
+import org.graphstream.algorithm.community.*;
+
+/**
+ * Check that SHARC gives the same assignment whether it is a sink of the
+ * graph, and so receives the attribute events of the labels it writes, or
+ * only listens to the same source as the graph, as the simulations do. Both
+ * runs use the same seed, so that their assignments must be identical. The
+ * check is done for the complete steps, the active scheduling and the
+ * residual scheduling, and also compares the number of community changes
+ * notified to the listeners. It then checks that a static run with active
+ * scheduling gives the same assignment as a static run with complete steps,
+ * for the same seed and number of steps.
+ * 
+ * Usage: WiringCheck [file...], the karate, dolphins and lesmis networks
+ * being used by default. A network from which no node is read counts as a
+ * mismatch, so that the check cannot pass on unreadable files.
+ */
+public class WiringCheck {
+
+	protected int maxSteps = 100;
+
+	protected int mismatches;
+
+	/**
+	 * Number of community changes notified during the last run
+	 */
+	protected int changes;
+
+	public static void main(String[] args) {
+		ArrayList<String> networks = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String network : args)
+				networks.add(network);
+		} else {
+			networks.add("nets/gml/karate.gml");
+			networks.add("nets/gml/dolphins.gml");
+			networks.add("nets/gml/lesmis.gml");
+		}
+
+		long[] seeds = { 32, 17, 5648, 110283, 299 };
+
+		int mismatches = 0;
+		for (String net : networks)
+			for (long seed : seeds)
+				mismatches += new WiringCheck(net, seed).mismatches;
+		System.out.println(mismatches == 0 ? "OK" : mismatches
+				+ " mismatching runs");
+		if (mismatches > 0)
+			System.exit(1);
+	}
+
+	public WiringCheck(String network, long seed) {
+		try {
+			check(network, seed, "in place");
+			check(network, seed, "active");
+			check(network, seed, "residual");
+			checkStatic(network, seed);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			mismatches++;
+		}
+	}
+
+	/**
+	 * Run a mode of the algorithm with both wirings and compare the results.
+	 */
+	protected void check(String network, long seed, String mode)
+			throws Exception {
+		HashMap<String, Object> reference = run(network, seed, mode, true);
+		int referenceChanges = changes;
+		HashMap<String, Object> assignment = run(network, seed, mode, false);
+		if (!sameCommunities(reference, assignment)) {
+			System.out.println(network + ", seed " + seed + ", " + mode
+					+ ": " + count(assignment) + " communities instead of "
+					+ count(reference));
+			mismatches++;
+		} else if (changes != referenceChanges) {
+			System.out.println(network + ", seed " + seed + ", " + mode
+					+ ": " + changes + " changes notified instead of "
+					+ referenceChanges);
+			mismatches++;
+		}
+	}
+
+	/**
+	 * Run the algorithm in static mode with active and complete steps, and
+	 * compare the results.
+	 */
+	protected void checkStatic(String network, long seed) throws Exception {
+		HashMap<String, Object> reference = run(network, seed, "static",
+				false);
+		HashMap<String, Object> assignment = run(network, seed,
+				"static active", false);
+		if (!sameCommunities(reference, assignment)) {
+			System.out.println(network + ", seed " + seed
+					+ ", static active: " + count(assignment)
+					+ " communities instead of " + count(reference));
+			mismatches++;
+		}
+	}
+
+	/**
+	 * Run the algorithm on a network. Static runs do the maximum number of
+	 * steps, the others stop once the assignment converged.
+	 * 
+	 * @param sink
+	 *            true to make the algorithm a sink of the graph, false to
+	 *            make it a sink of the source of the graph
+	 * @return the final assignment
+	 */
+	protected HashMap<String, Object> run(String network, long seed,
+			String mode, boolean sink) throws Exception {
+		Graph graph = new DefaultGraph("graph");
+		Sharc algo = new Sharc();
+		algo.init(graph);
+		algo.setRandom(new Random(seed));
+		if (mode.startsWith("static"))
+			algo.staticMode();
+		if (mode.endsWith("active"))
+			algo.getActiveSteps().setEnabled(true);
+		changes = 0;
+		algo.addCommunityChangeListener(new CommunityChangeListener() {
+			public void communitiesChanged(CommunityChangeSet set) {
+				changes += set.size();
+			}
+		});
+
+		FileSource input = FileSourceFactory.sourceFor(network);
+		input.addSink(graph);
+		if (sink)
+			graph.addSink(algo);
+		else
+			input.addSink(algo);
+
+		int step = 0;
+		input.begin(network);
+		if (mode.equals("residual")) {
+			/*
+			 * Load the whole network, then compute until no node may change
+			 * community anymore
+			 */
+			while (input.nextStep())
+				;
+			algo.getResidualSteps().compute(maxSteps * graph.getNodeCount());
+		} else {
+			boolean fixed = mode.startsWith("static");
+			while (input.nextStep()
+					|| (step < maxSteps && (fixed || !algo.isConverged()))) {
+				algo.compute();
+				step++;
+			}
+		}
+		input.end();
+		if (graph.getNodeCount() == 0)
+			throw new IOException(network + ": no node read");
+
+		HashMap<String, Object> assignment = algo.getAssignment();
+		algo.terminate();
+		return assignment;
+	}
+
+	/**
+	 * Number of distinct communities of an assignment.
+	 */
+	protected int count(HashMap<String, Object> assignment) {
+		return new HashSet<Object>(assignment.values()).size();
+	}
+
+	/**
+	 * Whether two assignments group the nodes the same way, the labels of
+	 * the communities originated in different runs being different objects.
+	 */
+	protected boolean sameCommunities(HashMap<String, Object> a,
+			HashMap<String, Object> b) {
+		if (a.size() != b.size())
+			return false;
+		HashMap<Object, Object> forward = new HashMap<Object, Object>();
+		HashMap<Object, Object> backward = new HashMap<Object, Object>();
+		for (String id : a.keySet()) {
+			Object x = a.get(id);
+			Object y = b.get(id);
+			if (y == null && !b.containsKey(id))
+				return false;
+			Object fx = forward.put(x, y);
+			Object by = backward.put(y, x);
+			if ((fx != null && !fx.equals(y)) || (by != null && !by.equals(x)))
+				return false;
+		}
+		return true;
+	}
+}
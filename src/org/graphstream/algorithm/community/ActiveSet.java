@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Dirty frontier of a decentralized community algorithm: the nodes, by number
+ * in the neighborhood index, that have to be computed at the next step
+ * because their inputs changed since they were last computed, plus timers
+ * waking nodes up at a given step.
+ * 
+ * Nodes are marked by the graph and label events, and by the algorithm
+ * itself after computing a node. At the beginning of a step, the nodes whose
+ * timer expired are marked, and the marked nodes become the nodes of the
+ * step. A node stays marked until it is taken to be computed, so that a mark
+ * made during the step is due at the current step if the node was not
+ * visited yet, and at the next one otherwise. The set also records the step
+ * at which each node was last computed, so that the timers of the skipped
+ * nodes can be advanced lazily, and the nodes of a step can be ordered from
+ * the stalest one.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ActiveSet {
+
+	/**
+	 * Value of the last step of a node never computed
+	 */
+	protected static final int NEVER = Integer.MIN_VALUE;
+
+	/**
+	 * Number of the current (or last) step
+	 */
+	protected int step;
+
+	/**
+	 * Whether a step is in progress
+	 */
+	protected boolean inStep;
+
+	/**
+	 * Whether all the nodes have to be computed at the next step
+	 */
+	protected boolean all;
+
+	/**
+	 * Nodes that were marked since the last step began, some of which may
+	 * have been taken since, and whether each node is in that list
+	 */
+	protected int[] pending = new int[16];
+	protected int pendingCount;
+	protected boolean[] listed = new boolean[16];
+
+	/**
+	 * Whether each node is marked, and the number of marked nodes
+	 */
+	protected boolean[] marked = new boolean[16];
+	protected int markedCount;
+
+	/**
+	 * Nodes marked when the current step began
+	 */
+	protected int[] current = new int[16];
+	protected int currentCount;
+
+	/**
+	 * Step up to which the timers of each node are up to date
+	 */
+	protected int[] lastStep = new int[16];
+
+	/**
+	 * Step at which each node was last computed
+	 */
+	protected int[] lastComputed = new int[16];
+
+	/**
+	 * Timers, encoded as the step in the high bits and the node number in the
+	 * low bits
+	 */
+	protected PriorityQueue<Long> timers = new PriorityQueue<Long>();
+
+	/**
+	 * New active set, for which all the nodes are to be computed at the first
+	 * step.
+	 */
+	public ActiveSet() {
+		clear();
+	}
+
+	/**
+	 * Forget all marks, timers and steps, so that all the nodes are computed
+	 * at the next step.
+	 */
+	public void clear() {
+		Arrays.fill(marked, false);
+		Arrays.fill(listed, false);
+		Arrays.fill(lastStep, NEVER);
+		Arrays.fill(lastComputed, NEVER);
+		markedCount = 0;
+		pendingCount = 0;
+		currentCount = 0;
+		timers.clear();
+		all = true;
+	}
+
+	/**
+	 * Mark all the nodes for the next step.
+	 */
+	public void markAll() {
+		all = true;
+	}
+
+	/**
+	 * Cancel a pending {@link #markAll()}, keeping the nodes marked
+	 * individually, e.g. when the nodes were just computed by other means.
+	 */
+	public void markNone() {
+		all = false;
+	}
+
+	/**
+	 * Mark a node, for the current step if it is in progress and the node was
+	 * not taken yet, for the next step otherwise.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void mark(int u) {
+		if (u < 0)
+			return;
+		ensure(u);
+		if (marked[u])
+			return;
+		marked[u] = true;
+		markedCount++;
+		if (!listed[u]) {
+			listed[u] = true;
+			if (pendingCount == pending.length)
+				pending = Arrays.copyOf(pending, 2 * pendingCount);
+			pending[pendingCount++] = u;
+		}
+	}
+
+	/**
+	 * Take a node to compute it, clearing its mark so that the marks made
+	 * from then on are due at the next step.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return whether the node was marked
+	 */
+	public boolean take(int u) {
+		if (u < 0 || u >= marked.length || !marked[u])
+			return false;
+		marked[u] = false;
+		markedCount--;
+		return true;
+	}
+
+	/**
+	 * Mark a node for the specified step. The node is marked for the next
+	 * step if that step is already started.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param at
+	 *            step at which the node is to be computed
+	 */
+	public void wakeAt(int u, int at) {
+		if (at <= step + (inStep ? 0 : 1))
+			mark(u);
+		else
+			timers.add((((long) at) << 32) | u);
+	}
+
+	/**
+	 * Start a new step, marking the nodes whose timer expires at this step
+	 * and gathering the marked nodes. They stay marked until they are taken.
+	 * 
+	 * @return true if all the nodes have to be computed, whether they are
+	 *         marked or not
+	 */
+	public boolean beginStep() {
+		step++;
+		inStep = true;
+
+		boolean everything = all;
+		all = false;
+
+		while (!timers.isEmpty() && (timers.peek() >> 32) <= step) {
+			int u = (int) (timers.poll() & 0xFFFFFFFFL);
+			mark(u);
+		}
+
+		if (current.length < markedCount)
+			current = new int[Math.max(2 * current.length, markedCount)];
+		currentCount = 0;
+		for (int i = 0; i < pendingCount; i++) {
+			int u = pending[i];
+			listed[u] = false;
+			if (marked[u])
+				current[currentCount++] = u;
+		}
+		System.arraycopy(current, 0, pending, 0, currentCount);
+		pendingCount = currentCount;
+		for (int i = 0; i < pendingCount; i++)
+			listed[pending[i]] = true;
+
+		return everything;
+	}
+
+	/**
+	 * Complete the current step.
+	 */
+	public void endStep() {
+		inStep = false;
+	}
+
+	/**
+	 * Number of marked nodes, i.e. between two steps the number of nodes due
+	 * at the next one.
+	 * 
+	 * @return the number of marked nodes, -1 if all the nodes are to be
+	 *         computed
+	 */
+	public int pendingSize() {
+		return all ? -1 : markedCount;
+	}
+
+	/**
+	 * Number of nodes marked when the current step began.
+	 * 
+	 * @return the number of nodes to compute
+	 */
+	public int size() {
+		return currentCount;
+	}
+
+	/**
+	 * A node marked when the current step began.
+	 * 
+	 * @param i
+	 *            position of the node, in [0, size()[
+	 * @return the number of the node
+	 */
+	public int get(int i) {
+		return current[i];
+	}
+
+	/**
+	 * Number of the current step, or of the last one between two steps.
+	 * 
+	 * @return the step number
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Record that a node has been computed at the current step.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void computed(int u) {
+		ensure(u);
+		lastStep[u] = step;
+		lastComputed[u] = step;
+	}
+
+	/**
+	 * Record that a node of the current step has been deferred to the next
+	 * one: the current step does not count as a skipped step for its timers,
+	 * as if the node had been asleep, while the steps skipped before are
+	 * returned so that the caller can advance its timers.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the number of steps skipped before the current one
+	 * @see #catchUp(int)
+	 */
+	public int defer(int u) {
+		ensure(u);
+		int idle = catchUp(u);
+		lastStep[u] = step;
+		return idle;
+	}
+
+	/**
+	 * Number of steps since a node was last computed.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the number of steps, Integer.MAX_VALUE if the node was never
+	 *         computed
+	 */
+	public int staleness(int u) {
+		if (u < 0 || u >= lastComputed.length || lastComputed[u] == NEVER)
+			return Integer.MAX_VALUE;
+		return step - lastComputed[u];
+	}
+
+	/**
+	 * Number of steps during which a node has been skipped since it was last
+	 * computed, not counting the step in progress, and consider it as up to
+	 * date from then on.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the number of skipped steps, 0 if the node was never computed
+	 */
+	public int catchUp(int u) {
+		if (u < 0 || u >= lastStep.length || lastStep[u] == NEVER)
+			return 0;
+		int upTo = inStep ? step - 1 : step;
+		int idle = Math.max(0, upTo - lastStep[u]);
+		lastStep[u] += idle;
+		return idle;
+	}
+
+	/**
+	 * Forget a removed node, whose number may be reused, clearing its mark.
+	 * The node may still be woken up by a timer, which only causes an extra
+	 * computation.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void forget(int u) {
+		take(u);
+		if (u >= 0 && u < lastStep.length) {
+			lastStep[u] = NEVER;
+			lastComputed[u] = NEVER;
+		}
+	}
+
+	protected void ensure(int u) {
+		if (u >= marked.length) {
+			int length = marked.length;
+			int capacity = Math.max(2 * length, u + 1);
+			marked = Arrays.copyOf(marked, capacity);
+			listed = Arrays.copyOf(listed, capacity);
+			lastStep = Arrays.copyOf(lastStep, capacity);
+			lastComputed = Arrays.copyOf(lastComputed, capacity);
+			Arrays.fill(lastStep, length, capacity, NEVER);
+			Arrays.fill(lastComputed, length, capacity, NEVER);
+		}
+	}
+}
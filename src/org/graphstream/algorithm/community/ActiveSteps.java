@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Driver of the active steps of {@link Sharc}, computing the nodes of the
+ * active set of the algorithm only. A step may stop at a deadline, the nodes
+ * left being carried into the next one, and steps may be computed in
+ * micro-batches as the graph events arrive. The nodes are computed, scheduled
+ * and deferred through the algorithm, so that the variants keep their own
+ * timers. The driver of an algorithm is given by
+ * {@link Sharc#getActiveSteps()}.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ActiveSteps {
+
+	/**
+	 * Algorithm whose steps are computed
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * Whether the steps of the algorithm are active steps
+	 */
+	protected boolean enabled;
+
+	/**
+	 * Whether the step in progress has to stop at the deadline, and the
+	 * deadline as a value of System.nanoTime()
+	 */
+	protected boolean bounded;
+	protected long deadline;
+
+	/**
+	 * Number of nodes computed and deferred during the last step
+	 */
+	protected int stepComputed;
+	protected int stepDeferred;
+
+	/**
+	 * Number of consecutive steps that deferred nodes
+	 */
+	protected int overloadedSteps;
+
+	/**
+	 * Whether the nodes affected by the graph events are computed in
+	 * micro-batches as the events arrive, rather than only at each step
+	 */
+	protected boolean eventDriven;
+
+	/**
+	 * Number of affected nodes from which a micro-batch is computed, 0 for
+	 * no limit
+	 */
+	protected int batchSize;
+
+	/**
+	 * Time in milliseconds after which pending nodes are computed, 0 for no
+	 * limit
+	 */
+	protected long batchWindow;
+
+	/**
+	 * Time of the last micro-batch
+	 */
+	protected long lastFlush;
+
+	/**
+	 * Whether a micro-batch is being computed
+	 */
+	protected boolean flushing;
+
+	/**
+	 * Nodes of the step in the order they are visited
+	 */
+	protected ArrayList<Node> order = new ArrayList<Node>();
+
+	/**
+	 * New active steps of an algorithm.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 */
+	public ActiveSteps(Sharc algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Perform one step on the nodes of the active set only. The nodes are
+	 * visited in the random order a complete step would draw, and a node is
+	 * computed if it is marked when its turn comes, including by the nodes
+	 * computed before it during the step. The other nodes would keep the
+	 * same assignment if they were computed, as none of their neighbors
+	 * changed community and their 2-hop topology did not change since they
+	 * were last computed, so that the step gives the same result as a
+	 * complete step for the same seed. As for the complete steps, the steps
+	 * of a static graph are always computed, while the steps of a dynamic one
+	 * are skipped if the graph did not change, unless nodes are marked.
+	 * 
+	 * The steps that stop at a deadline and the micro-batches only visit the
+	 * nodes marked when they begin, in random order, the stalest first for
+	 * the former. Nodes marked during such a step are computed at the next
+	 * one. The nodes computed are left in the active nodes of the algorithm.
+	 * 
+	 * @complexity O(n + a DELTA) where n is the number of nodes, a the
+	 *             number of active nodes and DELTA the average node degree in
+	 *             the network, O(a DELTA) for the steps that stop at a
+	 *             deadline and the micro-batches
+	 */
+	public void compute() {
+		final Sharc algo = algorithm;
+		ArrayList<Node> activeNodes = algo.activeNodes;
+		activeNodes.clear();
+		stepComputed = 0;
+		stepDeferred = 0;
+		final NeighborhoodIndex index = algo.getNeighborhoodIndex();
+		algo.getCommunityHistograms();
+		final ActiveSet frontier = algo.getActiveSet();
+		if (!algo.staticMode && !algo.graphChanged
+				&& frontier.pendingSize() == 0)
+			return;
+
+		boolean everything = frontier.beginStep();
+
+		order.clear();
+		if (!bounded && !flushing)
+			order.addAll(algo.graph.getNodeSet());
+		else if (everything) {
+			for (Node u : algo.graph)
+				order.add(u);
+		} else {
+			for (int i = 0; i < frontier.size(); i++) {
+				String id = index.idOf(frontier.get(i));
+				Node u = id == null ? null : algo.graph.<Node> getNode(id);
+				if (u != null)
+					order.add(u);
+			}
+		}
+		Collections.shuffle(order, algo.rng);
+
+		/*
+		 * Stalest nodes first when the step may not compute them all
+		 */
+		if (bounded)
+			Collections.sort(order, new Comparator<Node>() {
+				public int compare(Node a, Node b) {
+					int sa = frontier.staleness(index.indexOf(a.getId()));
+					int sb = frontier.staleness(index.indexOf(b.getId()));
+					return sa > sb ? -1 : (sa < sb ? 1 : 0);
+				}
+			});
+
+		int visited = 0;
+		for (; visited < order.size(); visited++) {
+			if (bounded && !activeNodes.isEmpty()
+					&& System.nanoTime() - deadline >= 0)
+				break;
+			Node u = order.get(visited);
+			int un = index.number(u.getId());
+			if (!frontier.take(un) && !everything)
+				continue;
+			algo.computeNode(u);
+			algo.updateDisplayClass(u);
+			frontier.computed(un);
+			algo.schedule(u, un);
+			activeNodes.add(u);
+		}
+
+		/*
+		 * Carry the nodes left at the deadline into the next step
+		 */
+		stepComputed = activeNodes.size();
+		for (int i = visited; i < order.size(); i++) {
+			int un = index.number(order.get(i).getId());
+			if (everything || frontier.take(un)) {
+				algo.deferNode(un);
+				frontier.mark(un);
+				stepDeferred++;
+			}
+		}
+		overloadedSteps = stepDeferred > 0 ? overloadedSteps + 1 : 0;
+
+		frontier.endStep();
+		algo.graphChanged = algo.staticMode;
+	}
+
+	/**
+	 * Compute only the nodes whose neighborhood changed since they were last
+	 * computed, rather than all the nodes at each step: nodes are marked when
+	 * an edge is added or removed in their 2-hop neighborhood, when the weight
+	 * of one of their links changes, or when one of their neighbors changes
+	 * community.
+	 * 
+	 * @param enabled
+	 *            true to enable active scheduling, false to compute all the
+	 *            nodes at each step (default)
+	 */
+	public void setEnabled(boolean enabled) {
+		if (!enabled && algorithm.frontier != null)
+			algorithm.synchronizeTimers();
+		this.enabled = enabled;
+		algorithm.frontier = null;
+	}
+
+	/**
+	 * Whether the steps of the algorithm are active steps.
+	 * 
+	 * @return true if active scheduling is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Perform one step of the algorithm that stops at the specified deadline,
+	 * computing the nodes of the active set from the stalest one, i.e. the
+	 * one computed the longest time ago, and carrying the nodes left into the
+	 * next step. At least one node is computed, so that the steps always
+	 * progress. This enables active scheduling.
+	 * 
+	 * @param deadline
+	 *            time at which the step must stop, as a value of
+	 *            System.nanoTime()
+	 * @return the fraction of the nodes due at this step that were computed
+	 * @see #getCoverage()
+	 */
+	public double computeUntil(long deadline) {
+		if (!enabled)
+			setEnabled(true);
+		bounded = true;
+		this.deadline = deadline;
+		try {
+			algorithm.compute();
+		} finally {
+			bounded = false;
+		}
+		return getCoverage();
+	}
+
+	/**
+	 * Fraction of the nodes due at the last step that were computed.
+	 * 
+	 * @return the coverage of the last step, 1 if all the due nodes were
+	 *         computed
+	 */
+	public double getCoverage() {
+		int due = stepComputed + stepDeferred;
+		return due == 0 ? 1.0 : ((double) stepComputed) / due;
+	}
+
+	/**
+	 * Number of nodes of the last step carried into the next one.
+	 * 
+	 * @return the number of deferred nodes
+	 */
+	public int getDeferredNodes() {
+		return stepDeferred;
+	}
+
+	/**
+	 * Number of consecutive steps, up to the last one, that could not compute
+	 * all their nodes before the deadline, e.g. to detect a sustained
+	 * overload.
+	 * 
+	 * @return the number of overloaded steps
+	 */
+	public int getOverloadedSteps() {
+		return overloadedSteps;
+	}
+
+	/**
+	 * Maintain the assignment continuously: the nodes affected by the graph
+	 * events (both endpoints of an added or removed link and their neighbors,
+	 * the endpoints of a link whose weight changed) are computed as soon as
+	 * enough of them are pending or enough time passed since the last
+	 * computation, rather than at the next step. Each such micro-batch counts
+	 * as a step, e.g. for the timers of the dynamic variants. Calling
+	 * {@link Sharc#compute()} still computes the pending nodes right away.
+	 * This enables active scheduling.
+	 * 
+	 * A micro-batch reads the graph and the neighborhood index, which only
+	 * agree when the graph holds the element of the event being received:
+	 * after an addition and before a removal, as when the algorithm is a
+	 * sink of the graph. On the events received in another order, e.g. from
+	 * a source the graph listens to as well, the micro-batch is postponed to
+	 * the next event.
+	 * 
+	 * @param batchSize
+	 *            number of pending nodes from which they are computed, 0 for
+	 *            no limit
+	 * @param window
+	 *            time in milliseconds after which the pending nodes are
+	 *            computed on the next event, 0 for no limit
+	 */
+	public void setEventDriven(int batchSize, long window) {
+		this.batchSize = Math.max(0, batchSize);
+		this.batchWindow = Math.max(0, window);
+		eventDriven = this.batchSize > 0 || this.batchWindow > 0;
+		if (eventDriven) {
+			lastFlush = System.currentTimeMillis();
+			if (!enabled)
+				setEnabled(true);
+			algorithm.getNeighborhoodIndex();
+			algorithm.getActiveSet();
+		}
+	}
+
+	/**
+	 * Disable the micro-batches, the pending nodes being computed at the next
+	 * step.
+	 */
+	public void stopEventDriven() {
+		eventDriven = false;
+	}
+
+	/**
+	 * Compute the pending nodes if the size or time limit of a micro-batch is
+	 * reached.
+	 */
+	public void flushIfDue() {
+		if (!eventDriven || flushing || algorithm.frontier == null)
+			return;
+		int pending = algorithm.frontier.pendingSize();
+		if (pending == 0)
+			return;
+		if (pending < 0
+				|| (batchSize > 0 && pending >= batchSize)
+				|| (batchWindow > 0 && System.currentTimeMillis()
+						- lastFlush >= batchWindow))
+			flush();
+	}
+
+	/**
+	 * Compute the pending nodes right away, as a step of the algorithm.
+	 */
+	public void flush() {
+		flushing = true;
+		try {
+			algorithm.compute();
+		} finally {
+			flushing = false;
+			lastFlush = System.currentTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Reading and writing of community assignments as text files, with one line
+ * per node made of the node id and the community label separated by a tab.
+ * Labels are written as the community id for {@link Community} labels, and
+ * as their string value otherwise, so that reading a file gives one distinct
+ * label per community.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class AssignmentFile {
+
+	/**
+	 * Write the assignment of the nodes of a graph that have a community.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param marker
+	 *            the community attribute marker
+	 * @param file
+	 *            name of the file to write
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(Graph graph, String marker, String file)
+			throws IOException {
+		PrintStream out = new PrintStream(file);
+		try {
+			for (Node u : graph) {
+				Object label = u.getAttribute(marker);
+				if (label == null)
+					continue;
+				if (label instanceof Community)
+					label = ((Community) label).getId();
+				out.println(u.getId() + "\t" + label);
+			}
+			if (out.checkError())
+				throw new IOException("unable to write " + file);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read an assignment.
+	 * 
+	 * @param file
+	 *            name of the file to read
+	 * @return the label of each node, by node id
+	 * @throws IOException
+	 *             if the file can not be read or is malformed
+	 */
+	public static HashMap<String, Object> read(String file)
+			throws IOException {
+		HashMap<String, Object> labels = new HashMap<String, Object>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				if (line.trim().length() == 0)
+					continue;
+				int tab = line.lastIndexOf('\t');
+				if (tab <= 0)
+					throw new IOException(file + ":" + number
+							+ ": expecting a node id and a label");
+				labels.put(line.substring(0, tab), line.substring(tab + 1));
+			}
+		} finally {
+			in.close();
+		}
+		return labels;
+	}
+}
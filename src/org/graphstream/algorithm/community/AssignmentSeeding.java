@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Seeding of the assignment of {@link Sharc}, so that a run starts from a
+ * given assignment rather than from self-communities, e.g. the one of a
+ * previous run on the same network, one saved in a file, or one built by a
+ * single pass of label propagation. The state of the variants is set up
+ * consistently with the seeded labels through the algorithm. The seeding of
+ * an algorithm is given by {@link Sharc#getSeeding()}.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class AssignmentSeeding {
+
+	/**
+	 * Algorithm whose assignment is seeded
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * New seeding of the assignment of an algorithm.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 */
+	public AssignmentSeeding(Sharc algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Save the current assignment of the nodes to a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @throws IOException
+	 *             if the file can not be written
+	 * @see AssignmentFile
+	 */
+	public void save(String file) throws IOException {
+		AssignmentFile.write(algorithm.graph, algorithm.marker, file);
+	}
+
+	/**
+	 * Seed the assignment of the nodes with the one saved in a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @see #seed(Map)
+	 */
+	public void load(String file) throws IOException {
+		seed(AssignmentFile.read(file));
+	}
+
+	/**
+	 * Seed the assignment of the nodes. Labels that are not {@link Community}
+	 * instances (e.g. read from a file) are replaced by one new community per
+	 * distinct label. The score of each seeded node is set to its plain
+	 * similarity with its neighbors of the same community, and the state of
+	 * the algorithm is set up consistently with the seeded labels.
+	 * 
+	 * @param labels
+	 *            community label of the nodes to seed, by node id
+	 * @complexity O(m) where m is the number of links in the network
+	 */
+	public void seed(Map<String, ?> labels) {
+		final Sharc algo = algorithm;
+		NeighborhoodIndex index = algo.getNeighborhoodIndex();
+		CommunityHistograms histograms = algo.getCommunityHistograms();
+		HashMap<Object, Community> communities = new HashMap<Object, Community>();
+		for (Node u : algo.graph) {
+			Object label = labels.get(u.getId());
+			if (label == null)
+				continue;
+			if (!(label instanceof Community)) {
+				Community community = communities.get(label);
+				if (community == null) {
+					community = new Community();
+					communities.put(label, community);
+				}
+				label = community;
+			}
+			algo.setCommunity(u, label);
+		}
+
+		/*
+		 * Scores of the seeded nodes in their community
+		 */
+		for (Node u : algo.graph) {
+			if (!labels.containsKey(u.getId()))
+				continue;
+			int un = index.number(u.getId());
+			int community = histograms.communityOf(un);
+			double score = 0.0;
+			int[] neighbors = index.neighbors(un);
+			for (int j = 0; j < index.degree(un); j++)
+				if (histograms.communityOf(neighbors[j]) == community)
+					score += index.similarity(un, neighbors[j]);
+			u.setAttribute(algo.getScoreMarker(), score);
+		}
+
+		algo.seedState();
+	}
+
+	/**
+	 * Seed the assignment with a single pass of label propagation: the nodes
+	 * are visited once in random order, and each node joins the community
+	 * with the highest similarity with its already visited neighbors, or
+	 * originates a new community if it has none.
+	 * 
+	 * @complexity O(m) where m is the number of links in the network
+	 * @see #seed(Map)
+	 */
+	public void seedByPropagation() {
+		final Sharc algo = algorithm;
+		NeighborhoodIndex index = algo.getNeighborhoodIndex();
+		HashMap<String, Object> labels = new HashMap<String, Object>();
+		HashMap<Object, Double> scores = new HashMap<Object, Double>();
+
+		ArrayList<Node> nodes = algo.activeNodes;
+		nodes.clear();
+		for (Node u : algo.graph)
+			nodes.add(u);
+		Collections.shuffle(nodes, algo.rng);
+
+		for (Node u : nodes) {
+			int un = index.number(u.getId());
+			Object best = null;
+			double bestScore = 0.0;
+			scores.clear();
+			int[] neighbors = index.neighbors(un);
+			for (int j = 0; j < index.degree(un); j++) {
+				Object label = labels.get(index.idOf(neighbors[j]));
+				if (label == null)
+					continue;
+				Double score = scores.get(label);
+				double total = (score == null ? 0.0 : score)
+						+ index.similarity(un, neighbors[j]);
+				scores.put(label, total);
+				if (total > bestScore) {
+					best = label;
+					bestScore = total;
+				}
+			}
+			labels.put(u.getId(), best != null ? best : new Community());
+		}
+		nodes.clear();
+
+		seed(labels);
+	}
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous, lock-free run of the SHARC assignment. The node numbers are
+ * split in one block per thread, and each thread sweeps its block over and
+ * over, every node choosing its community from the communities its neighbors
+ * have at that moment. The communities live in an atomic array written by
+ * the thread owning the node and read by all the others, with no lock and no
+ * barrier between the sweeps.
+ * 
+ * The staleness is bounded by the sweep clocks of the threads: a thread only
+ * starts its sweep s once every other thread has completed at least s - k
+ * sweeps, so that the community it reads for a neighbor is at most k updates
+ * behind the neighbor's own sweep count. A thread waiting on a slower one
+ * spins, so that the run needs one pool thread per block. With k = 0 the
+ * threads advance in lock step, yet still read the communities chosen during
+ * the current sweep.
+ * 
+ * The communities originated during the run get fresh ids above the ones of
+ * the histograms, their labels being created when the run is applied. The
+ * result depends on the scheduling of the threads: unlike
+ * {@link SynchronousStep}, two runs with the same seed may give different
+ * assignments.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class AsynchronousStep extends SynchronousStep {
+
+	/**
+	 * Sweep clock of a thread that will not sweep anymore
+	 */
+	protected static final int DONE = Integer.MAX_VALUE;
+
+	/**
+	 * Maximum number of sweeps a thread may be ahead of the slowest one
+	 */
+	protected int staleness;
+
+	/**
+	 * Number of blocks, one per thread
+	 */
+	protected int blocks;
+
+	/**
+	 * Live community id of each node, -1 if it has none
+	 */
+	protected AtomicIntegerArray live;
+
+	/**
+	 * Next id of the communities originated during the run
+	 */
+	protected AtomicInteger nextCommunity;
+
+	/**
+	 * Upper bound of the community ids frozen at the start of the run, the
+	 * ids above being originated during the run
+	 */
+	protected int frozenRange;
+
+	/**
+	 * Number of nodes holding each frozen community id at the start of the
+	 * run
+	 */
+	protected int[] holders = new int[0];
+
+	/**
+	 * Number of sweeps completed by each thread, DONE once it stopped
+	 */
+	protected AtomicIntegerArray clocks;
+
+	/**
+	 * Number of changes of the last sweep of each thread
+	 */
+	protected AtomicIntegerArray changes;
+
+	/**
+	 * Largest number of sweeps a thread was ahead of the slowest one when
+	 * starting a sweep, since the creation of the step
+	 */
+	protected AtomicInteger maxStaleness = new AtomicInteger();
+
+	/**
+	 * Number of times a thread waited for a slower one
+	 */
+	protected AtomicLong waits = new AtomicLong();
+
+	/**
+	 * Number of node updates that changed a community
+	 */
+	protected AtomicLong updates = new AtomicLong();
+
+	/**
+	 * Number of sweeps of the last run, on the thread that did the most
+	 */
+	protected int sweeps;
+
+	/**
+	 * New asynchronous step of an algorithm, over its neighborhood index. The
+	 * algorithm must not keep a state per node.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 * @param parallelism
+	 *            number of threads computing the nodes
+	 * @param staleness
+	 *            maximum number of sweeps a thread may be ahead of the
+	 *            slowest one
+	 * @param seed
+	 *            seed of the tie breaks
+	 */
+	public AsynchronousStep(Sharc algorithm, int parallelism, int staleness,
+			long seed) {
+		super(algorithm, parallelism, seed);
+		this.staleness = Math.max(0, staleness);
+		blocks = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Run up to the specified number of sweeps on every thread, stopping
+	 * earlier once the last sweep of every thread changed no community. The
+	 * histograms are only read, before the threads start.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @param maxSweeps
+	 *            maximum number of sweeps of each thread
+	 * @return the number of sweeps of the thread that did the most
+	 * @complexity O(s n DELTA / p) where s is the number of sweeps, n the
+	 *             number of nodes, DELTA the average node degree and p the
+	 *             number of threads
+	 */
+	public int compute(CommunityHistograms histograms, int maxSweeps) {
+		freeze(histograms);
+
+		clocks = new AtomicIntegerArray(blocks);
+		changes = new AtomicIntegerArray(blocks);
+		for (int w = 0; w < blocks; w++)
+			changes.set(w, -1);
+
+		Worker[] workers = new Worker[blocks];
+		for (int w = 0; w < blocks; w++)
+			workers[w] = new Worker(w, Math.max(1, maxSweeps));
+		for (int w = 0; w < blocks; w++)
+			pool.execute(workers[w]);
+		sweeps = 0;
+		for (int w = 0; w < blocks; w++) {
+			workers[w].join();
+			sweeps = Math.max(sweeps, workers[w].swept);
+		}
+
+		endStep();
+		return sweeps;
+	}
+
+	/**
+	 * Copy the current communities of all the nodes to the live array.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @complexity O(n + c) where n is the number of nodes and c the capacity
+	 *             of the community ids
+	 */
+	@Override
+	public void freeze(CommunityHistograms histograms) {
+		super.freeze(histograms);
+		live = new AtomicIntegerArray(size);
+		for (int u = 0; u < size; u++)
+			live.set(u, communities[u]);
+		nextCommunity = new AtomicInteger(range);
+		frozenRange = range;
+		if (holders.length < range)
+			holders = new int[Math.max(2 * holders.length, range)];
+		else
+			Arrays.fill(holders, 0);
+		for (int u = 0; u < size; u++)
+			if (communities[u] >= 0)
+				holders[communities[u]]++;
+
+		/*
+		 * Originated ids exceed any bound known in advance
+		 */
+		range = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Community chosen by a node at the end of the last run.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the community id, -1 if the node has none
+	 */
+	@Override
+	public int choiceOf(int u) {
+		return u < size && live.get(u) != ABSENT ? live.get(u) : -1;
+	}
+
+	/**
+	 * Maximum staleness of the runs.
+	 * 
+	 * @return the largest number of sweeps a thread was ahead of the slowest
+	 *         one when starting a sweep
+	 */
+	public int getMaxStaleness() {
+		return maxStaleness.get();
+	}
+
+	/**
+	 * Number of times a thread had to wait for a slower one, a high count
+	 * meaning that the staleness bound throttles the threads.
+	 * 
+	 * @return the number of waits
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/**
+	 * Number of node updates that changed a community.
+	 * 
+	 * @return the number of updates
+	 */
+	public long getUpdates() {
+		return updates.get();
+	}
+
+	/**
+	 * Number of sweeps of the last run.
+	 * 
+	 * @return the number of sweeps of the thread that did the most
+	 */
+	public int getSweeps() {
+		return sweeps;
+	}
+
+	@Override
+	protected int community(int u) {
+		return live.get(u);
+	}
+
+	/**
+	 * Compute a node and publish its choice.
+	 * 
+	 * @return whether the node changed community
+	 */
+	protected boolean update(int u, CommunityBuckets h) {
+		int current = live.get(u);
+		if (current == ABSENT)
+			return false;
+		choose(u, h);
+		int choice = choices[u];
+		if (choice == ORIGINATE)
+			choice = alone(u, current) ? current : nextCommunity
+					.getAndIncrement();
+		if (choice == current)
+			return false;
+		live.lazySet(u, choice);
+		return true;
+	}
+
+	/**
+	 * Whether a node that has to originate a community already holds one of
+	 * its own, i.e. it is isolated and no other node holds its community. It
+	 * then keeps it rather than originating a new one at each sweep, which
+	 * would prevent the run from ever becoming quiet.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param current
+	 *            community id of the node
+	 */
+	protected boolean alone(int u, int current) {
+		if (current < 0 || index.degree(u) > 0)
+			return false;
+		return current >= frozenRange || holders[current] == 1;
+	}
+
+	/**
+	 * Lowest sweep clock of the threads other than the specified one.
+	 */
+	protected int slowest(int w) {
+		int slowest = DONE;
+		for (int v = 0; v < blocks; v++)
+			if (v != w)
+				slowest = Math.min(slowest, clocks.get(v));
+		return slowest;
+	}
+
+	/**
+	 * Whether the last sweep of every thread changed no community.
+	 */
+	protected boolean quiet() {
+		for (int w = 0; w < blocks; w++)
+			if (changes.get(w) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Task sweeping the block of node numbers of one thread.
+	 */
+	@SuppressWarnings("serial")
+	protected class Worker extends RecursiveAction {
+
+		protected int block;
+
+		protected int maxSweeps;
+
+		protected int swept;
+
+		protected Worker(int block, int maxSweeps) {
+			this.block = block;
+			this.maxSweeps = maxSweeps;
+		}
+
+		@Override
+		protected void compute() {
+			int from = (int) ((long) size * block / blocks);
+			int to = (int) ((long) size * (block + 1) / blocks);
+			CommunityBuckets h = buckets.get();
+			try {
+				for (swept = 0; swept < maxSweeps; swept++) {
+
+					/*
+					 * Wait for the slowest thread to be close enough
+					 */
+					int slowest = slowest(block);
+					if (slowest < swept - staleness)
+						waits.incrementAndGet();
+					while (slowest < swept - staleness) {
+						Thread.yield();
+						slowest = slowest(block);
+					}
+					if (slowest != DONE) {
+						int ahead = swept - slowest;
+						int max = maxStaleness.get();
+						while (ahead > max
+								&& !maxStaleness.compareAndSet(max, ahead))
+							max = maxStaleness.get();
+					}
+
+					int changed = 0;
+					for (int u = from; u < to; u++)
+						if (update(u, h))
+							changed++;
+					updates.addAndGet(changed);
+					changes.set(block, changed);
+					clocks.set(block, swept + 1);
+
+					if (quiet()) {
+						swept++;
+						break;
+					}
+				}
+			} finally {
+				changes.set(block, 0);
+				clocks.set(block, DONE);
+			}
+		}
+	}
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reusable map from community ids to a count and a sum of doubles, used to
+ * accumulate community scores without boxing nor per-node allocation.
+ * 
+ * By default entries are kept in an open-addressing table with linear
+ * probing. When the ids are known to be in a small range, the map can instead
+ * index dense arrays directly by id (see {@link #reset(int)}).
+ * 
+ * Entries are enumerated through slots: for each slot below
+ * {@link #slots()}, {@link #key(int)} gives the id stored in the slot or -1 if
+ * the slot is empty.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class CommunityBuckets {
+
+	/**
+	 * Largest id range for which dense arrays are used
+	 */
+	public static final int DENSE_LIMIT = 4096;
+
+	/**
+	 * Key of empty slots
+	 */
+	protected static final int FREE = -1;
+
+	/**
+	 * Id stored in each slot, or the ids in insertion order in dense mode
+	 */
+	protected int[] keys;
+
+	/**
+	 * Count of each slot, or of each id in dense mode
+	 */
+	protected double[] counts;
+
+	/**
+	 * Sum of each slot, or of each id in dense mode
+	 */
+	protected double[] sums;
+
+	/**
+	 * Position of each id in the keys in dense mode, -1 if absent
+	 */
+	protected int[] positions;
+
+	/**
+	 * Number of entries
+	 */
+	protected int size;
+
+	/**
+	 * Whether entries are indexed by id
+	 */
+	protected boolean dense;
+
+	/**
+	 * New empty map using open addressing.
+	 */
+	public CommunityBuckets() {
+		keys = new int[8];
+		counts = new double[8];
+		sums = new double[8];
+		Arrays.fill(keys, FREE);
+	}
+
+	/**
+	 * Empty the map, switching to dense arrays if all the ids that will be
+	 * added are below a small enough bound.
+	 * 
+	 * @param range
+	 *            upper bound of the ids that will be added
+	 */
+	public void reset(int range) {
+		clear();
+		boolean wasDense = dense;
+		dense = range <= DENSE_LIMIT;
+		if (dense) {
+			if (!wasDense || counts.length < range)
+				allocate(Math.max(8, range));
+		} else if (wasDense) {
+			keys = new int[8];
+			counts = new double[8];
+			sums = new double[8];
+			Arrays.fill(keys, FREE);
+		}
+	}
+
+	/**
+	 * Remove all entries.
+	 * 
+	 * @complexity O(n) where n is the number of entries, or the table size when
+	 *             open addressing is used
+	 */
+	public void clear() {
+		if (dense) {
+			for (int i = 0; i < size; i++) {
+				counts[keys[i]] = 0.0;
+				sums[keys[i]] = 0.0;
+				positions[keys[i]] = FREE;
+			}
+		} else if (size > 0)
+			Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	/**
+	 * Add a count and a sum to the entry of an id, creating it if needed.
+	 * 
+	 * @param id
+	 *            the community id, non-negative
+	 * @param count
+	 *            value added to the count
+	 * @param sum
+	 *            value added to the sum
+	 */
+	public void add(int id, double count, double sum) {
+		if (dense) {
+			if (id >= counts.length) {
+				int capacity = Math.max(2 * counts.length, id + 1);
+				keys = Arrays.copyOf(keys, capacity);
+				counts = Arrays.copyOf(counts, capacity);
+				sums = Arrays.copyOf(sums, capacity);
+				int length = positions.length;
+				positions = Arrays.copyOf(positions, capacity);
+				Arrays.fill(positions, length, capacity, FREE);
+			}
+			if (positions[id] == FREE) {
+				positions[id] = size;
+				keys[size++] = id;
+			}
+			counts[id] += count;
+			sums[id] += sum;
+			return;
+		}
+
+		int slot = slot(id);
+		if (keys[slot] == FREE) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				slot = slot(id);
+			}
+			keys[slot] = id;
+			counts[slot] = 0.0;
+			sums[slot] = 0.0;
+			size++;
+		}
+		counts[slot] += count;
+		sums[slot] += sum;
+	}
+
+	/**
+	 * Remove the entry of an id.
+	 * 
+	 * @param id
+	 *            the community id
+	 */
+	public void remove(int id) {
+		if (dense) {
+			if (!contains(id))
+				return;
+			int last = keys[--size];
+			keys[positions[id]] = last;
+			positions[last] = positions[id];
+			positions[id] = FREE;
+			counts[id] = 0.0;
+			sums[id] = 0.0;
+			return;
+		}
+
+		int slot = slot(id);
+		if (keys[slot] == FREE)
+			return;
+
+		/*
+		 * Backward shift deletion: move back the entries of the cluster that
+		 * would no longer be found
+		 */
+		int mask = keys.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (keys[next] != FREE) {
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				counts[hole] = counts[next];
+				sums[hole] = sums[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[hole] = FREE;
+		size--;
+	}
+
+	/**
+	 * Whether the map holds an entry for an id.
+	 * 
+	 * @param id
+	 *            the community id
+	 * @return true if there is an entry for the id
+	 */
+	public boolean contains(int id) {
+		if (dense)
+			return id >= 0 && id < positions.length && positions[id] != FREE;
+		return keys[slot(id)] != FREE;
+	}
+
+	/**
+	 * Count of an id.
+	 * 
+	 * @param id
+	 *            the community id
+	 * @return the count, 0 if there is no entry for the id
+	 */
+	public double count(int id) {
+		if (dense)
+			return id < counts.length ? counts[id] : 0.0;
+		int slot = slot(id);
+		return keys[slot] == FREE ? 0.0 : counts[slot];
+	}
+
+	/**
+	 * Sum of an id.
+	 * 
+	 * @param id
+	 *            the community id
+	 * @return the sum, 0 if there is no entry for the id
+	 */
+	public double sum(int id) {
+		if (dense)
+			return id < sums.length ? sums[id] : 0.0;
+		int slot = slot(id);
+		return keys[slot] == FREE ? 0.0 : sums[slot];
+	}
+
+	/**
+	 * Number of entries.
+	 * 
+	 * @return the number of ids in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of slots to enumerate.
+	 * 
+	 * @return the upper bound of the slots
+	 */
+	public int slots() {
+		return dense ? size : keys.length;
+	}
+
+	/**
+	 * Id stored in a slot.
+	 * 
+	 * @param slot
+	 *            the slot, below {@link #slots()}
+	 * @return the id, or -1 if the slot is empty
+	 */
+	public int key(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Count stored in a slot.
+	 * 
+	 * @param slot
+	 *            a non empty slot
+	 * @return the count of the id in the slot
+	 */
+	public double countAt(int slot) {
+		return dense ? counts[keys[slot]] : counts[slot];
+	}
+
+	/**
+	 * Sum stored in a slot.
+	 * 
+	 * @param slot
+	 *            a non empty slot
+	 * @return the sum of the id in the slot
+	 */
+	public double sumAt(int slot) {
+		return dense ? sums[keys[slot]] : sums[slot];
+	}
+
+	/**
+	 * Slot of the best scored id, as chosen by the SHARC assignment: highest
+	 * sum. Ties between the best ids are broken as the original assignment
+	 * does, in favor of the first label in their natural order, i.e. the
+	 * oldest community, so that nothing is drawn and the choice does not
+	 * depend on the order of the slots.
+	 * 
+	 * @param ids
+	 *            allocator giving the labels of the ids
+	 * @return the slot of the best id, -1 if the map is empty
+	 * @complexity O(n) where n is the number of slots
+	 */
+	public int best(CommunityIds ids) {
+		int best = -1;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int slot = 0; slot < slots(); slot++) {
+			if (keys[slot] == FREE)
+				continue;
+			double score = sumAt(slot);
+			if (score > bestScore
+					|| (score == bestScore && ids.compare(keys[slot],
+							keys[best]) < 0)) {
+				best = slot;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Slot of the best scored id, as {@link #best(CommunityIds)} chooses it,
+	 * except that ties between the best ids are broken by a hash of the ids
+	 * salted with a value drawn from the generator, e.g. a node stream, so
+	 * that the communities of equal score are equally likely to be chosen.
+	 * Nothing is drawn when there is no tie.
+	 * 
+	 * @param random
+	 *            generator of the tie breaks
+	 * @return the slot of the best id, -1 if the map is empty
+	 * @complexity O(n) where n is the number of slots
+	 */
+	public int best(Random random) {
+		int best = -1;
+		int ties = 0;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int slot = 0; slot < slots(); slot++) {
+			if (keys[slot] == FREE)
+				continue;
+			double score = sumAt(slot);
+			if (score > bestScore) {
+				best = slot;
+				bestScore = score;
+				ties = 1;
+			} else if (score == bestScore)
+				ties++;
+		}
+		if (ties < 2)
+			return best;
+
+		long salt = random.nextLong();
+		long smallest = Long.MAX_VALUE;
+		best = -1;
+		for (int slot = 0; slot < slots(); slot++) {
+			if (keys[slot] == FREE || sumAt(slot) != bestScore)
+				continue;
+			long h = NodeRandom.mix(salt + keys[slot] * 0x9E3779B97F4A7C15L);
+			if (best < 0 || h < smallest) {
+				best = slot;
+				smallest = h;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Slot holding an id, or the empty slot where it would be inserted.
+	 */
+	protected int slot(int id) {
+		int mask = keys.length - 1;
+		int slot = hash(id) & mask;
+		while (keys[slot] != FREE && keys[slot] != id)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	protected void allocate(int capacity) {
+		keys = new int[capacity];
+		counts = new double[capacity];
+		sums = new double[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, FREE);
+	}
+
+	protected void grow() {
+		int[] oldKeys = keys;
+		double[] oldCounts = counts;
+		double[] oldSums = sums;
+		keys = new int[2 * oldKeys.length];
+		counts = new double[keys.length];
+		sums = new double[keys.length];
+		Arrays.fill(keys, FREE);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				sums[slot] = oldSums[i];
+			}
+		}
+	}
+
+	protected static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
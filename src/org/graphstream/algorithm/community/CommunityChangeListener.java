@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+/**
+ * Listener notified once per step of the nodes whose community changed, so
+ * that consumers of the assignment can update in bulk rather than on each
+ * attribute event.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public interface CommunityChangeListener {
+
+	/**
+	 * A step of the algorithm ended.
+	 * 
+	 * @param changes
+	 *            the nodes whose community changed during the step, only
+	 *            valid during the call
+	 */
+	void communitiesChanged(CommunityChangeSet changes);
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Nodes whose community changed during a step, with their community before
+ * and after the step. A node whose community changed several times during
+ * the step appears once, and not at all if it ended the step in its initial
+ * community.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class CommunityChangeSet {
+
+	/**
+	 * Number of the step, counted from the creation of the change set
+	 */
+	protected int step;
+
+	/**
+	 * Ids of the changed nodes, in the order of their first change
+	 */
+	protected ArrayList<String> nodes = new ArrayList<String>();
+
+	/**
+	 * Community of each changed node before the step
+	 */
+	protected ArrayList<Object> previous = new ArrayList<Object>();
+
+	/**
+	 * Community of each changed node after its last change
+	 */
+	protected ArrayList<Object> current = new ArrayList<Object>();
+
+	/**
+	 * Position of each changed node in the lists
+	 */
+	protected HashMap<String, Integer> positions =
+			new HashMap<String, Integer>();
+
+	/**
+	 * Number of the step.
+	 * 
+	 * @return the number of steps completed before this one
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Number of nodes whose community changed.
+	 * 
+	 * @return the number of changed nodes
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Id of a changed node.
+	 * 
+	 * @param i
+	 *            position of the change, between 0 and size() - 1
+	 * @return the node id
+	 */
+	public String getNodeId(int i) {
+		return nodes.get(i);
+	}
+
+	/**
+	 * Community of a changed node before the step.
+	 * 
+	 * @param i
+	 *            position of the change, between 0 and size() - 1
+	 * @return the previous community, or null if the node had none
+	 */
+	public Object getPreviousCommunity(int i) {
+		return previous.get(i);
+	}
+
+	/**
+	 * Community of a changed node after the step.
+	 * 
+	 * @param i
+	 *            position of the change, between 0 and size() - 1
+	 * @return the new community, or null if the node has none anymore
+	 */
+	public Object getCommunity(int i) {
+		return current.get(i);
+	}
+
+	/**
+	 * Record a change of the community of a node during the step.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @param from
+	 *            community before the change, or null
+	 * @param to
+	 *            community after the change, or null
+	 */
+	protected void record(String nodeId, Object from, Object to) {
+		Integer i = positions.get(nodeId);
+		if (i != null) {
+			current.set(i, to);
+			return;
+		}
+		if (from == null ? to == null : from.equals(to))
+			return;
+		positions.put(nodeId, nodes.size());
+		nodes.add(nodeId);
+		previous.add(from);
+		current.add(to);
+	}
+
+	/**
+	 * Drop the nodes that came back to their initial community, once the
+	 * step is complete.
+	 */
+	protected void compact() {
+		int kept = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			Object from = previous.get(i);
+			Object to = current.get(i);
+			if (from == null ? to == null : from.equals(to))
+				continue;
+			nodes.set(kept, nodes.get(i));
+			previous.set(kept, from);
+			current.set(kept, to);
+			kept++;
+		}
+		while (nodes.size() > kept) {
+			nodes.remove(nodes.size() - 1);
+			previous.remove(previous.size() - 1);
+			current.remove(current.size() - 1);
+		}
+	}
+
+	/**
+	 * Forget the changes of the step and move to the next one.
+	 */
+	protected void nextStep() {
+		nodes.clear();
+		previous.clear();
+		current.clear();
+		positions.clear();
+		step++;
+	}
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Live histograms of the communities of the neighbors of each node.
+ * 
+ * For each node and each community found in its neighborhood, the histogram
+ * holds the number of neighbors in that community and the sum of their
+ * neighborhood similarity with the node. Histograms are only updated when a
+ * node changes community or when an edge appears or disappears, so that
+ * scoring a node costs O(k) where k is the number of distinct communities in
+ * its neighborhood.
+ * 
+ * Similarity sums are maintained incrementally. To avoid the accumulation of
+ * rounding errors, the histogram of a node is rebuilt from scratch once it
+ * received more incremental updates than it has neighbors.
+ * 
+ * Community labels are interned to dense ids by a {@link CommunityIds}
+ * allocator, so that histograms are primitive {@link CommunityBuckets} and
+ * comparing the communities of two nodes is a single int comparison.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class CommunityHistograms {
+
+	/**
+	 * Neighborhood index giving the topology and the similarities
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Allocator of the community ids
+	 */
+	protected CommunityIds ids;
+
+	/**
+	 * Current community id of each node, indexed by node number, -1 if the
+	 * node has no community
+	 */
+	protected int[] communities;
+
+	/**
+	 * Histogram of each node, indexed by node number
+	 */
+	protected CommunityBuckets[] histograms;
+
+	/**
+	 * Number of incremental updates of each histogram since its last rebuild
+	 */
+	protected int[] updates;
+
+	/**
+	 * New histograms for the specified graph, using the community stored in
+	 * the specified marker attribute.
+	 * 
+	 * @param graph
+	 *            the graph used to populate the histograms
+	 * @param marker
+	 *            community attribute marker
+	 * @param index
+	 *            neighborhood index of the graph
+	 * @complexity O(n * DELTA) where n is the number of nodes and DELTA is the
+	 *             average node degree in the network
+	 */
+	public CommunityHistograms(Graph graph, String marker,
+			NeighborhoodIndex index) {
+		this.index = index;
+		ids = new CommunityIds();
+		communities = new int[Math.max(16, index.size())];
+		histograms = new CommunityBuckets[communities.length];
+		updates = new int[communities.length];
+		Arrays.fill(communities, -1);
+
+		for (Node u : graph.getNodeSet())
+			if (u.hasAttribute(marker))
+				communities[number(u.getId())] = ids.acquire(u
+						.getAttribute(marker));
+
+		for (int u = 0; u < index.size(); u++)
+			if (index.idOf(u) != null)
+				rebuild(u);
+	}
+
+	/**
+	 * Register the new community of a node and move its contribution in the
+	 * histograms of its neighbors.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @param label
+	 *            new community of the node, or null if it has none
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void setLabel(String nodeId, Object label) {
+		int u = label == null ? index.indexOf(nodeId) : number(nodeId);
+		if (u < 0)
+			return;
+
+		int previous = communities[u];
+		if (label == null ? previous < 0 : label.equals(ids.labelOf(previous)))
+			return;
+
+		/*
+		 * Acquire the new label before releasing the previous one, so that a
+		 * new community never reuses the id of the one the node just left
+		 */
+		int community = label == null ? -1 : ids.acquire(label);
+		ids.release(previous);
+		communities[u] = community;
+
+		int[] neighbors = index.neighbors(u);
+		for (int i = 0; i < index.degree(u); i++) {
+			int w = neighbors[i];
+			double similarity = index.similarity(w, u);
+			remove(w, previous, similarity);
+			add(w, community, similarity);
+		}
+	}
+
+	/**
+	 * Current community of a node, as known by the histograms.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the node community, or null if it has none
+	 */
+	public Object labelOf(int u) {
+		return ids.labelOf(communityOf(u));
+	}
+
+	/**
+	 * Current community id of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the node community id, or -1 if it has none
+	 */
+	public int communityOf(int u) {
+		return u >= 0 && u < communities.length ? communities[u] : -1;
+	}
+
+	/**
+	 * Current community id of a node.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @return the node community id, or -1 if it has none
+	 */
+	public int communityOf(String nodeId) {
+		return communityOf(index.indexOf(nodeId));
+	}
+
+	/**
+	 * Allocator of the community ids, giving the label of each id.
+	 * 
+	 * @return the community ids
+	 */
+	public CommunityIds getCommunityIds() {
+		return ids;
+	}
+
+	/**
+	 * Add an edge to the neighborhood index and update the histograms of all
+	 * the nodes whose similarity with one of its endpoints changed.
+	 * 
+	 * @param edgeId
+	 *            id of the new edge
+	 * @param fromNodeId
+	 *            id of the first endpoint
+	 * @param toNodeId
+	 *            id of the second endpoint
+	 * @param directed
+	 *            whether the edge is directed
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void addEdge(String edgeId, String fromNodeId, String toNodeId,
+			boolean directed) {
+		if (index.hasEdge(edgeId))
+			return;
+
+		int[] ends = new int[] { number(fromNodeId), number(toNodeId) };
+		detach(ends);
+		index.addEdge(edgeId, fromNodeId, toNodeId, directed);
+		attach(ends);
+	}
+
+	/**
+	 * Remove an edge from the neighborhood index and update the histograms of
+	 * all the nodes whose similarity with one of its endpoints changed.
+	 * 
+	 * @param edgeId
+	 *            id of the removed edge
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void removeEdge(String edgeId) {
+		int[] ends = index.endpoints(edgeId);
+		if (ends == null)
+			return;
+
+		ends = ends.clone();
+		detach(ends);
+		index.removeEdge(edgeId);
+		attach(ends);
+	}
+
+	/**
+	 * Remove a node from the neighborhood index and from the histograms.
+	 * 
+	 * @param nodeId
+	 *            id of the removed node
+	 */
+	public void removeNode(String nodeId) {
+		int u = index.indexOf(nodeId);
+		if (u < 0)
+			return;
+
+		int[] nodes = new int[index.degree(u) + 1];
+		nodes[0] = u;
+		System.arraycopy(index.neighbors(u), 0, nodes, 1, index.degree(u));
+
+		detach(nodes);
+		index.removeNode(nodeId);
+		forget(u);
+		nodes[0] = -1;
+		attach(nodes);
+	}
+
+	/**
+	 * Forget the community and the histogram of a node removed from the
+	 * index.
+	 */
+	protected void forget(int u) {
+		if (u < 0 || u >= communities.length)
+			return;
+		ids.release(communities[u]);
+		communities[u] = -1;
+		histograms[u] = null;
+	}
+
+	/**
+	 * Remove all nodes from the histograms and from the neighborhood index.
+	 */
+	public void clear() {
+		index.clear();
+		reset();
+	}
+
+	/**
+	 * Forget all the communities and histograms, once the index has been
+	 * cleared.
+	 */
+	protected void reset() {
+		ids.clear();
+		Arrays.fill(communities, -1);
+		Arrays.fill(histograms, null);
+	}
+
+	/**
+	 * Histogram of a node: for each neighboring community id, the number of
+	 * neighbors in that community and the sum of their similarities with the
+	 * node. The returned buckets belong to the histograms and must not be
+	 * modified.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the histogram of the node
+	 * @complexity O(1), or O(DELTA) where DELTA is the average node degree in
+	 *             the network when the histogram has to be rebuilt
+	 */
+	public CommunityBuckets histogram(int u) {
+		return refreshed(u);
+	}
+
+	/**
+	 * Remove the contribution of the specified nodes from the histograms of
+	 * their neighbors, before a topology change.
+	 */
+	protected void detach(int[] nodes) {
+		for (int x : nodes) {
+			if (communityOf(x) < 0)
+				continue;
+			int[] neighbors = index.neighbors(x);
+			for (int i = 0; i < index.degree(x); i++)
+				if (!contains(nodes, neighbors[i]))
+					remove(neighbors[i], communities[x], index.similarity(
+							neighbors[i], x));
+		}
+	}
+
+	/**
+	 * Add back the contribution of the specified nodes to the histograms of
+	 * their neighbors, and rebuild their own histograms, after a topology
+	 * change.
+	 */
+	protected void attach(int[] nodes) {
+		for (int x : nodes) {
+			if (x < 0)
+				continue;
+			if (communityOf(x) >= 0) {
+				int[] neighbors = index.neighbors(x);
+				for (int i = 0; i < index.degree(x); i++)
+					if (!contains(nodes, neighbors[i]))
+						add(neighbors[i], communities[x], index.similarity(
+								neighbors[i], x));
+			}
+			rebuild(x);
+		}
+	}
+
+	protected void rebuild(int u) {
+		CommunityBuckets h = histogramOf(u);
+		h.clear();
+		int[] neighbors = index.neighbors(u);
+		for (int i = 0; i < index.degree(u); i++)
+			if (communityOf(neighbors[i]) >= 0)
+				h.add(communities[neighbors[i]], 1.0, index.similarity(u,
+						neighbors[i]));
+		updates[u] = 0;
+	}
+
+	/**
+	 * Add the contribution of a neighbor in the specified community to the
+	 * histogram of a node.
+	 */
+	protected void add(int u, int community, double similarity) {
+		if (community < 0)
+			return;
+		histogramOf(u).add(community, 1.0, similarity);
+		updates[u]++;
+	}
+
+	/**
+	 * Remove the contribution of a neighbor in the specified community from
+	 * the histogram of a node.
+	 */
+	protected void remove(int u, int community, double similarity) {
+		if (community < 0)
+			return;
+		CommunityBuckets h = histogramOf(u);
+		if (!h.contains(community))
+			return;
+		if (h.count(community) <= 1.0)
+			h.remove(community);
+		else
+			h.add(community, -1.0, -similarity);
+		updates[u]++;
+	}
+
+	/**
+	 * Number of a node in the index, making room for it in the histograms.
+	 */
+	protected int number(String nodeId) {
+		int u = index.number(nodeId);
+		ensure(u);
+		return u;
+	}
+
+	/**
+	 * Make room for a node number in the histograms, as nodes may also be
+	 * numbered directly by the index (e.g. when it is shared).
+	 */
+	protected void ensure(int u) {
+		if (u >= communities.length) {
+			int length = communities.length;
+			int capacity = Math.max(2 * length, u + 1);
+			communities = Arrays.copyOf(communities, capacity);
+			Arrays.fill(communities, length, capacity, -1);
+			histograms = Arrays.copyOf(histograms, capacity);
+			updates = Arrays.copyOf(updates, capacity);
+		}
+	}
+
+	protected CommunityBuckets histogramOf(int u) {
+		ensure(u);
+		CommunityBuckets h = histograms[u];
+		if (h == null) {
+			h = new CommunityBuckets();
+			histograms[u] = h;
+		}
+		return h;
+	}
+
+	protected CommunityBuckets refreshed(int u) {
+		CommunityBuckets h = histogramOf(u);
+		if (updates[u] > Math.max(16, index.degree(u)))
+			rebuild(u);
+		return h;
+	}
+
+	protected static boolean contains(int[] nodes, int u) {
+		for (int x : nodes)
+			if (x == u)
+				return true;
+		return false;
+	}
+}
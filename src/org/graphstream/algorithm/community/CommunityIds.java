@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Allocator interning community labels to dense integer ids.
+ * 
+ * Each label is given the smallest available id the first time it is
+ * acquired, and keeps it as long as it is held by at least one node. Once a
+ * label is released by all its nodes, its id is recycled for the next new
+ * label, so that ids stay in a range proportional to the number of live
+ * communities and can directly index arrays.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class CommunityIds {
+
+	/**
+	 * Id of each live label
+	 */
+	protected HashMap<Object, Integer> ids;
+
+	/**
+	 * Label of each id, null for unused ids
+	 */
+	protected Object[] labels;
+
+	/**
+	 * Number of nodes holding each id
+	 */
+	protected int[] references;
+
+	/**
+	 * Ids released by retired labels, reused first
+	 */
+	protected int[] freeIds;
+
+	/**
+	 * Number of released ids
+	 */
+	protected int freeCount;
+
+	/**
+	 * Number of allocated ids, used or released
+	 */
+	protected int size;
+
+	/**
+	 * Whether the labels released by all their nodes keep their id until
+	 * {@link #releaseHeld()} is called
+	 */
+	protected boolean holding;
+
+	/**
+	 * Ids released while holding, retired by {@link #releaseHeld()} unless
+	 * they were acquired again
+	 */
+	protected int[] heldIds = new int[16];
+
+	/**
+	 * Number of ids released while holding
+	 */
+	protected int heldCount;
+
+	/**
+	 * New empty allocator.
+	 */
+	public CommunityIds() {
+		ids = new HashMap<Object, Integer>();
+		labels = new Object[16];
+		references = new int[16];
+		freeIds = new int[16];
+	}
+
+	/**
+	 * Id of a label held by one more node, allocating it if the label is new.
+	 * 
+	 * @param label
+	 *            the community label
+	 * @return the id of the label
+	 */
+	public int acquire(Object label) {
+		Integer id = ids.get(label);
+		int c;
+		if (id != null)
+			c = id;
+		else {
+			if (freeCount > 0)
+				c = freeIds[--freeCount];
+			else {
+				if (size == labels.length) {
+					labels = Arrays.copyOf(labels, 2 * size);
+					references = Arrays.copyOf(references, 2 * size);
+				}
+				c = size++;
+			}
+			labels[c] = label;
+			ids.put(label, c);
+		}
+		references[c]++;
+		return c;
+	}
+
+	/**
+	 * Release a label held by one less node, retiring its id if no node holds
+	 * it anymore.
+	 * 
+	 * @param id
+	 *            the id of the label
+	 */
+	public void release(int id) {
+		if (id < 0 || id >= size || labels[id] == null)
+			return;
+
+		if (--references[id] <= 0) {
+			references[id] = 0;
+			if (holding) {
+				if (heldCount == heldIds.length)
+					heldIds = Arrays.copyOf(heldIds, 2 * heldCount);
+				heldIds[heldCount++] = id;
+			} else
+				retire(id);
+		}
+	}
+
+	/**
+	 * Keep the labels released by all their nodes under their id, until
+	 * {@link #releaseHeld()} is called, so that ids read before stay valid
+	 * and comparable with the current ones, e.g. the frozen ids of a
+	 * synchronous step. A label acquired again meanwhile keeps its id.
+	 */
+	public void hold() {
+		holding = true;
+	}
+
+	/**
+	 * Stop holding the released labels, retiring those that no node acquired
+	 * again.
+	 */
+	public void releaseHeld() {
+		holding = false;
+		for (int i = 0; i < heldCount; i++) {
+			int id = heldIds[i];
+			if (labels[id] != null && references[id] <= 0)
+				retire(id);
+		}
+		heldCount = 0;
+	}
+
+	protected void retire(int id) {
+		ids.remove(labels[id]);
+		labels[id] = null;
+		if (freeCount == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+		freeIds[freeCount++] = id;
+	}
+
+	/**
+	 * Id of a label, without acquiring it.
+	 * 
+	 * @param label
+	 *            the community label
+	 * @return the id of the label, or -1 if no node holds it
+	 */
+	public int idOf(Object label) {
+		Integer id = label == null ? null : ids.get(label);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Label of an id.
+	 * 
+	 * @param id
+	 *            the id of the label
+	 * @return the label, or null if the id is not used
+	 */
+	public Object labelOf(int id) {
+		return id < 0 || id >= size ? null : labels[id];
+	}
+
+	/**
+	 * Compare the labels of two ids in their natural order, e.g. the order in
+	 * which {@link Community} instances were created, or the ids themselves
+	 * if the labels are not comparable with each other.
+	 * 
+	 * @param a
+	 *            the id of the first label
+	 * @param b
+	 *            the id of the second label
+	 * @return a negative value, zero or a positive value if the first label
+	 *         comes before, with or after the second one
+	 */
+	@SuppressWarnings("unchecked")
+	public int compare(int a, int b) {
+		Object la = labelOf(a);
+		Object lb = labelOf(b);
+		if (la instanceof Comparable && lb != null
+				&& la.getClass() == lb.getClass())
+			return ((Comparable<Object>) la).compareTo(lb);
+		return a < b ? -1 : (a > b ? 1 : 0);
+	}
+
+	/**
+	 * Number of allocated ids, i.e. an upper bound of all used ids.
+	 * 
+	 * @return the number of allocated ids
+	 */
+	public int capacity() {
+		return size;
+	}
+
+	/**
+	 * Number of labels held by at least one node.
+	 * 
+	 * @return the number of live communities
+	 */
+	public int count() {
+		return size - freeCount;
+	}
+
+	/**
+	 * Retire all labels.
+	 */
+	public void clear() {
+		ids.clear();
+		Arrays.fill(labels, null);
+		Arrays.fill(references, 0);
+		freeCount = 0;
+		heldCount = 0;
+		size = 0;
+	}
+}
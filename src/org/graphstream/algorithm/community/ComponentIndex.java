@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+/**
+ * Connected components of the nodes of a {@link NeighborhoodIndex},
+ * maintained incrementally. An added edge merges the components of its
+ * endpoints, the smaller one being moved into the larger one. A removed edge
+ * or node only marks its component, which is split into its connected parts
+ * by a traversal at the next synchronization, so that the components that
+ * did not lose any edge are never traversed again.
+ * 
+ * As the SHARC assignment of a node only depends on its neighbors, the
+ * components can be computed independently from each other.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ComponentIndex {
+
+	/**
+	 * Neighborhood index giving the node numbers and neighborhoods
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Component of each node, -1 if not tracked
+	 */
+	protected int[] components = new int[16];
+
+	/**
+	 * Position of each node in its component
+	 */
+	protected int[] positions = new int[16];
+
+	/**
+	 * Members of each component
+	 */
+	protected int[][] members = new int[4][];
+
+	/**
+	 * Number of members of each component
+	 */
+	protected int[] sizes = new int[4];
+
+	/**
+	 * Number of component ids, including those of empty components
+	 */
+	protected int count;
+
+	/**
+	 * Ids of the empty components, reused before new ones
+	 */
+	protected int[] free = new int[4];
+
+	protected int freeCount;
+
+	/**
+	 * Whether each component may have been disconnected since the last
+	 * synchronization
+	 */
+	protected boolean[] dirty = new boolean[4];
+
+	/**
+	 * Mark of each node reached by the traversal of a component, equal to
+	 * the current stamp
+	 */
+	protected int[] seen = new int[16];
+
+	protected int stamp;
+
+	/**
+	 * New components of the nodes known by the specified index.
+	 * 
+	 * @param index
+	 *            neighborhood index of the graph
+	 * @complexity O(n + m log n) where n is the number of nodes and m the
+	 *             number of edges
+	 */
+	public ComponentIndex(NeighborhoodIndex index) {
+		this.index = index;
+		Arrays.fill(components, -1);
+		synchronize();
+	}
+
+	/**
+	 * Add the nodes numbered since the last call, forget the removed ones and
+	 * split the components that may have been disconnected.
+	 * 
+	 * @complexity O(n) where n is the number of nodes, plus the size of the
+	 *             split components
+	 */
+	public void synchronize() {
+		int[] added = new int[16];
+		int addedCount = 0;
+		for (int u = 0; u < index.size(); u++) {
+			boolean known = index.idOf(u) != null;
+			if (known && componentOf(u) < 0) {
+				track(u);
+				if (addedCount == added.length)
+					added = Arrays.copyOf(added, 2 * addedCount);
+				added[addedCount++] = u;
+			} else if (!known && componentOf(u) >= 0)
+				remove(u);
+		}
+
+		/*
+		 * Merge once all the new nodes are tracked, as their edges were not
+		 * received while they were not
+		 */
+		for (int i = 0; i < addedCount; i++) {
+			int u = added[i];
+			int[] neighbors = index.neighbors(u);
+			for (int j = 0; j < index.degree(u); j++)
+				edgeAdded(u, neighbors[j]);
+		}
+
+		for (int c = 0; c < count; c++)
+			if (dirty[c]) {
+				dirty[c] = false;
+				if (sizes[c] > 0)
+					split(c);
+				else
+					release(c);
+			}
+	}
+
+	/**
+	 * Update the components once an edge has been added to the index.
+	 * 
+	 * @param a
+	 *            number of the first endpoint
+	 * @param b
+	 *            number of the second endpoint
+	 * @complexity O(s) where s is the size of the smaller component, O(log
+	 *             n) amortized
+	 */
+	public void edgeAdded(int a, int b) {
+		if (a < 0 || b < 0)
+			return;
+		if (componentOf(a) < 0)
+			track(a);
+		if (componentOf(b) < 0)
+			track(b);
+		int ca = components[a];
+		int cb = components[b];
+		if (ca == cb)
+			return;
+		if (sizes[ca] < sizes[cb]) {
+			int c = ca;
+			ca = cb;
+			cb = c;
+		}
+		while (sizes[cb] > 0)
+			move(members[cb][sizes[cb] - 1], ca);
+		if (dirty[cb]) {
+			dirty[ca] = true;
+			dirty[cb] = false;
+			release(cb);
+		}
+	}
+
+	/**
+	 * Record that the neighborhood of a node changed, e.g. that it lost an
+	 * edge, its component being split if needed at the next synchronization.
+	 * 
+	 * @param u
+	 *            number of the node, ignored if negative or not tracked
+	 */
+	public void neighborhoodChanged(int u) {
+		if (componentOf(u) >= 0)
+			dirty[components[u]] = true;
+	}
+
+	/**
+	 * Forget a node that is about to be removed from the index.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void remove(int u) {
+		int c = componentOf(u);
+		if (c < 0)
+			return;
+		detach(u);
+		components[u] = -1;
+		if (sizes[c] > 0)
+			dirty[c] = true;
+	}
+
+	/**
+	 * Component of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the component id, -1 if the node is not tracked
+	 */
+	public int componentOf(int u) {
+		return u >= 0 && u < components.length ? components[u] : -1;
+	}
+
+	/**
+	 * Number of component ids, some components being possibly empty.
+	 * 
+	 * @return the number of component ids
+	 */
+	public int getComponentCount() {
+		return count;
+	}
+
+	/**
+	 * Members of a component. The returned array belongs to the index and is
+	 * only valid until the components change.
+	 * 
+	 * @param component
+	 *            the component id
+	 * @return the numbers of the members, followed by unused entries
+	 */
+	public int[] members(int component) {
+		return members[component];
+	}
+
+	/**
+	 * Number of members of a component.
+	 * 
+	 * @param component
+	 *            the component id
+	 * @return the number of nodes of the component
+	 */
+	public int size(int component) {
+		return sizes[component];
+	}
+
+	/**
+	 * Whether the components are the connected components of the index, once
+	 * synchronized.
+	 * 
+	 * @return true if every node is tracked, its neighbors are in its
+	 *         component and every component is connected
+	 * @complexity O(n + m) where n is the number of nodes and m the number of
+	 *             edges
+	 */
+	public boolean isValid() {
+		for (int u = 0; u < index.size(); u++) {
+			if (index.idOf(u) == null)
+				continue;
+			if (componentOf(u) < 0)
+				return false;
+			int[] neighbors = index.neighbors(u);
+			for (int j = 0; j < index.degree(u); j++)
+				if (componentOf(neighbors[j]) != components[u])
+					return false;
+		}
+		for (int c = 0; c < count; c++) {
+			if (sizes[c] == 0)
+				continue;
+			int reached = traverse(members[c][0], c, c, false);
+			if (reached != sizes[c])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Split a component into its connected parts, the first part keeping the
+	 * id of the component.
+	 */
+	protected void split(int c) {
+		int[] nodes = Arrays.copyOf(members[c], sizes[c]);
+		nextStamp();
+		traverse(nodes[0], c, c, true);
+		for (int u : nodes)
+			if (seen[u] != stamp)
+				traverse(u, c, allocate(), true);
+	}
+
+	/**
+	 * Reach the nodes of a component from a node, moving them to the target
+	 * component if requested.
+	 * 
+	 * @return the number of nodes reached
+	 */
+	protected int traverse(int from, int c, int target, boolean moving) {
+		if (!moving)
+			nextStamp();
+		int[] queue = new int[sizes[c] + (target == c ? 0 : 1)];
+		int head = 0, tail = 0;
+		seen[from] = stamp;
+		queue[tail++] = from;
+		while (head < tail) {
+			int u = queue[head++];
+			if (moving && target != c)
+				move(u, target);
+			int[] neighbors = index.neighbors(u);
+			for (int j = 0; j < index.degree(u); j++) {
+				int v = neighbors[j];
+				if (componentOf(v) == c && seen[v] != stamp) {
+					seen[v] = stamp;
+					if (tail == queue.length)
+						queue = Arrays.copyOf(queue, 2 * tail);
+					queue[tail++] = v;
+				}
+			}
+		}
+		return tail;
+	}
+
+	protected void nextStamp() {
+		if (seen.length < components.length)
+			seen = Arrays.copyOf(seen, components.length);
+		if (++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Put an untracked node in a new component of its own.
+	 */
+	protected void track(int u) {
+		if (u >= components.length) {
+			int length = components.length;
+			int capacity = Math.max(2 * length, u + 1);
+			components = Arrays.copyOf(components, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			Arrays.fill(components, length, capacity, -1);
+		}
+		attach(u, allocate());
+	}
+
+	/**
+	 * Move a tracked node to another component.
+	 */
+	protected void move(int u, int c) {
+		detach(u);
+		attach(u, c);
+	}
+
+	protected void attach(int u, int c) {
+		if (members[c] == null)
+			members[c] = new int[4];
+		else if (sizes[c] == members[c].length)
+			members[c] = Arrays.copyOf(members[c], 2 * sizes[c]);
+		components[u] = c;
+		positions[u] = sizes[c];
+		members[c][sizes[c]++] = u;
+	}
+
+	/**
+	 * Remove a node from the members of its component, releasing the id of
+	 * the component once empty.
+	 */
+	protected void detach(int u) {
+		int c = components[u];
+		int last = members[c][--sizes[c]];
+		members[c][positions[u]] = last;
+		positions[last] = positions[u];
+		if (sizes[c] == 0 && !dirty[c])
+			release(c);
+	}
+
+	protected void release(int c) {
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, 2 * freeCount);
+		free[freeCount++] = c;
+	}
+
+	/**
+	 * Get an unused component id.
+	 */
+	protected int allocate() {
+		while (freeCount > 0) {
+			int c = free[--freeCount];
+			if (sizes[c] == 0 && !dirty[c])
+				return c;
+		}
+		if (count == members.length) {
+			int capacity = 2 * count;
+			members = Arrays.copyOf(members, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			dirty = Arrays.copyOf(dirty, capacity);
+		}
+		return count++;
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+/**
+ * Convergence monitor of a decentralized community algorithm. At each step
+ * (i.e. each call to compute()), the algorithm reports the community and
+ * score of the nodes it computed, from which the monitor counts the label
+ * changes and the total absolute score variation since the previous step.
+ * Nodes that are not reported keep their previous assignment.
+ * 
+ * The assignment is considered as stable once no label changed for a given
+ * number of consecutive steps, and as oscillating once it repeats with the
+ * same period P (2 <= P <= maximum period) for that number of consecutive
+ * steps. Repetitions are detected by comparing order independent
+ * fingerprints of the partitions of the nodes, in which each node is hashed
+ * with the smallest node number of its community rather than with the id of
+ * its community, as the ids of the communities that become empty are reused.
+ * A step that gives the same partition as the previous one counts as
+ * unchanged even if communities were renamed, e.g. when an isolated node
+ * originates a new community. The fingerprint is computed once per step,
+ * whatever the period.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ConvergenceMonitor {
+
+	/**
+	 * Convergence state of the assignment
+	 */
+	public static enum State {
+		/**
+		 * Labels are still changing
+		 */
+		RUNNING,
+		/**
+		 * No label changed for the required number of steps
+		 */
+		STABLE,
+		/**
+		 * The assignment repeats periodically
+		 */
+		OSCILLATING
+	}
+
+	/**
+	 * Value of the previous community of a node not observed yet
+	 */
+	protected static final int UNKNOWN = Integer.MIN_VALUE;
+
+	/**
+	 * Number of consecutive steps without change (or with the same period)
+	 * required to consider the assignment as converged
+	 */
+	protected int stableSteps;
+
+	/**
+	 * Maximum oscillation period that is detected
+	 */
+	protected int maxPeriod;
+
+	/**
+	 * Community and score of each node at the previous step, indexed by node
+	 * number
+	 */
+	protected int[] communities = new int[16];
+	protected double[] scores = new double[16];
+
+	/**
+	 * Label changes and score variation of the step in progress
+	 */
+	protected int changes;
+	protected double delta;
+
+	/**
+	 * Fingerprint of the partition at the end of the last step, i.e. the sum
+	 * of the hashes of the nodes with the smallest node number of their
+	 * community
+	 */
+	protected long fingerprint;
+
+	/**
+	 * Smallest node number of each community id, reused from one step to the
+	 * next
+	 */
+	protected int[] smallest = new int[16];
+
+	/**
+	 * Label changes and score variation of the last complete step
+	 */
+	protected int lastChanges;
+	protected double lastDelta;
+
+	/**
+	 * Number of complete steps
+	 */
+	protected int steps;
+
+	/**
+	 * Number of consecutive steps without label change
+	 */
+	protected int unchangedSteps;
+
+	/**
+	 * Fingerprints of the last steps, indexed by step modulo its length
+	 */
+	protected long[] history;
+
+	/**
+	 * Number of consecutive steps that repeated the step P steps before,
+	 * indexed by P
+	 */
+	protected int[] repeats;
+
+	/**
+	 * New convergence monitor, considering the assignment as converged after
+	 * 5 steps without change, and detecting oscillations up to a period of 4
+	 * steps.
+	 */
+	public ConvergenceMonitor() {
+		this(5, 4);
+	}
+
+	/**
+	 * New convergence monitor with the specified criteria.
+	 * 
+	 * @param stableSteps
+	 *            number of consecutive steps without change, or repeating the
+	 *            same period, after which the assignment is converged
+	 * @param maxPeriod
+	 *            maximum oscillation period that is detected, less than 2 to
+	 *            disable the detection of oscillations
+	 */
+	public ConvergenceMonitor(int stableSteps, int maxPeriod) {
+		this.stableSteps = Math.max(1, stableSteps);
+		this.maxPeriod = Math.max(1, maxPeriod);
+		history = new long[this.maxPeriod + 1];
+		repeats = new int[this.maxPeriod + 1];
+		reset();
+	}
+
+	/**
+	 * Forget all the observed steps.
+	 */
+	public void reset() {
+		Arrays.fill(communities, UNKNOWN);
+		Arrays.fill(scores, 0.0);
+		Arrays.fill(history, 0L);
+		Arrays.fill(repeats, 0);
+		changes = 0;
+		delta = 0.0;
+		fingerprint = 0L;
+		lastChanges = 0;
+		lastDelta = 0.0;
+		steps = 0;
+		unchangedSteps = 0;
+	}
+
+	/**
+	 * Start a new step.
+	 */
+	public void beginStep() {
+		changes = 0;
+		delta = 0.0;
+	}
+
+	/**
+	 * Report the community and score of a node computed during the step in
+	 * progress.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param community
+	 *            community id of the node, -1 if it has none
+	 * @param score
+	 *            score of the node in its community, NaN if it has none
+	 */
+	public void observe(int u, int community, double score) {
+		if (u >= communities.length) {
+			int length = communities.length;
+			int capacity = Math.max(2 * length, u + 1);
+			communities = Arrays.copyOf(communities, capacity);
+			scores = Arrays.copyOf(scores, capacity);
+			Arrays.fill(communities, length, capacity, UNKNOWN);
+		}
+
+		if (Double.isNaN(score))
+			score = 0.0;
+
+		/*
+		 * Nodes observed for the first time count as a change
+		 */
+		if (communities[u] != community)
+			changes++;
+		delta += Math.abs(score - scores[u]);
+		communities[u] = community;
+		scores[u] = score;
+	}
+
+	/**
+	 * Forget the state of a removed node, whose number may be reused.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void forget(int u) {
+		if (u >= 0 && u < communities.length) {
+			communities[u] = UNKNOWN;
+			scores[u] = 0.0;
+		}
+	}
+
+	/**
+	 * Complete the step in progress and update the convergence state.
+	 * 
+	 * @complexity O(n + c) where n is the number of nodes and c the capacity
+	 *             of the community ids
+	 */
+	public void endStep() {
+		lastChanges = changes;
+		lastDelta = delta;
+
+		long previous = fingerprint;
+		fingerprint = fingerprint();
+		if (changes == 0 || (steps > 0 && fingerprint == previous))
+			unchangedSteps++;
+		else
+			unchangedSteps = 0;
+
+		/*
+		 * Compare the assignment with the ones of the previous steps
+		 */
+		for (int p = 2; p <= maxPeriod; p++) {
+			if (steps >= p && history[(steps - p) % history.length] == fingerprint)
+				repeats[p]++;
+			else
+				repeats[p] = 0;
+		}
+		history[steps % history.length] = fingerprint;
+		steps++;
+	}
+
+	/**
+	 * Current convergence state of the assignment.
+	 * 
+	 * @return the convergence state
+	 */
+	public State getState() {
+		if (unchangedSteps >= stableSteps)
+			return State.STABLE;
+		return getPeriod() > 0 ? State.OSCILLATING : State.RUNNING;
+	}
+
+	/**
+	 * Whether the assignment is either stable or oscillating.
+	 * 
+	 * @return true if the algorithm can be stopped
+	 */
+	public boolean isConverged() {
+		return getState() != State.RUNNING;
+	}
+
+	/**
+	 * Period of the oscillation of the assignment.
+	 * 
+	 * @return the smallest period that repeated for the required number of
+	 *         steps, 0 if the assignment is not oscillating
+	 */
+	public int getPeriod() {
+		if (unchangedSteps > 0)
+			return 0;
+		for (int p = 2; p <= maxPeriod; p++)
+			if (repeats[p] >= stableSteps)
+				return p;
+		return 0;
+	}
+
+	/**
+	 * Number of label changes during the last step.
+	 * 
+	 * @return the number of nodes whose community changed
+	 */
+	public int getLabelChanges() {
+		return lastChanges;
+	}
+
+	/**
+	 * Total absolute variation of the node scores during the last step.
+	 * 
+	 * @return the sum of the absolute score variations
+	 */
+	public double getScoreDelta() {
+		return lastDelta;
+	}
+
+	/**
+	 * Number of consecutive steps without label change.
+	 * 
+	 * @return the number of unchanged steps
+	 */
+	public int getUnchangedSteps() {
+		return unchangedSteps;
+	}
+
+	/**
+	 * Number of steps observed since the monitor was created or reset.
+	 * 
+	 * @return the number of steps
+	 */
+	public int getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		return getState() + " " + lastChanges + " " + lastDelta
+				+ (getPeriod() > 0 ? " " + getPeriod() : "");
+	}
+
+	/**
+	 * Fingerprint of the current partition of the nodes, which does not
+	 * depend on the ids of the communities.
+	 * 
+	 * @return the sum of the hashes of the nodes with the smallest node
+	 *         number of their community, -1 for the nodes with none
+	 */
+	protected long fingerprint() {
+		int bound = 0;
+		for (int u = 0; u < communities.length; u++)
+			if (communities[u] >= bound)
+				bound = communities[u] + 1;
+		if (bound > smallest.length)
+			smallest = new int[Math.max(2 * smallest.length, bound)];
+		Arrays.fill(smallest, 0, bound, -1);
+
+		long h = 0L;
+		for (int u = 0; u < communities.length; u++) {
+			int community = communities[u];
+			if (community == UNKNOWN)
+				continue;
+			if (community >= 0 && smallest[community] < 0)
+				smallest[community] = u;
+			h += mix(u, community < 0 ? -1 : smallest[community]);
+		}
+		return h;
+	}
+
+	/**
+	 * Hash of a node and the representative of its community, summed over
+	 * all the nodes to obtain the fingerprint of the partition.
+	 */
+	protected static long mix(int u, int representative) {
+		long h = (((long) u) << 32) ^ (representative & 0xFFFFFFFFL);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+/**
+ * Distance-2 coloring of the nodes of a {@link NeighborhoodIndex}: two nodes
+ * at distance 1 or 2 never have the same color, so that the nodes of a color
+ * class neither are neighbors nor share a neighbor. The nodes of a class can
+ * then be computed concurrently, none of them reading what another one
+ * writes in its closed neighborhood.
+ * 
+ * The coloring is greedy (each node takes the smallest color unused within
+ * distance 2) and maintained incrementally: an added edge only recolors
+ * those of its endpoints whose color conflicts with the new 2-hop
+ * neighborhood, and removing an edge never creates conflicts. The number of
+ * colors is at most DELTA^2 + 1 where DELTA is the maximum node degree.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class DistanceTwoColoring {
+
+	/**
+	 * Neighborhood index giving the node numbers and neighborhoods
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Color of each node, -1 if not colored
+	 */
+	protected int[] colors = new int[16];
+
+	/**
+	 * Position of each node in its color class
+	 */
+	protected int[] positions = new int[16];
+
+	/**
+	 * Members of each color class
+	 */
+	protected int[][] classes = new int[4][];
+
+	/**
+	 * Number of members of each color class
+	 */
+	protected int[] sizes = new int[4];
+
+	/**
+	 * Number of colors, including empty classes
+	 */
+	protected int count;
+
+	/**
+	 * Mark of each color used within distance 2 of the node being colored,
+	 * equal to the current stamp
+	 */
+	protected int[] used = new int[4];
+
+	protected int stamp;
+
+	/**
+	 * New coloring of the nodes known by the specified index.
+	 * 
+	 * @param index
+	 *            neighborhood index of the graph
+	 * @complexity O(n DELTA^2) where n is the number of nodes and DELTA the
+	 *             average node degree
+	 */
+	public DistanceTwoColoring(NeighborhoodIndex index) {
+		this.index = index;
+		Arrays.fill(colors, -1);
+		synchronize();
+	}
+
+	/**
+	 * Color the nodes numbered since the last call, and forget the removed
+	 * ones.
+	 * 
+	 * @complexity O(n) where n is the number of nodes, plus O(DELTA^2) per
+	 *             newly colored node
+	 */
+	public void synchronize() {
+		for (int u = 0; u < index.size(); u++) {
+			boolean known = index.idOf(u) != null;
+			if (known && colorOf(u) < 0)
+				recolor(u);
+			else if (!known && colorOf(u) >= 0)
+				remove(u);
+		}
+	}
+
+	/**
+	 * Update the coloring once an edge has been added to the index.
+	 * 
+	 * @param a
+	 *            number of the first endpoint
+	 * @param b
+	 *            number of the second endpoint
+	 * @complexity O(DELTA^2) where DELTA is the average node degree
+	 */
+	public void edgeAdded(int a, int b) {
+		if (a < 0 || b < 0)
+			return;
+		if (colorOf(a) < 0 || conflicts(a, b))
+			recolor(a);
+		if (colorOf(b) < 0 || conflicts(b, a))
+			recolor(b);
+	}
+
+	/**
+	 * Forget a node that is about to be removed from the index.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void remove(int u) {
+		int c = colorOf(u);
+		if (c < 0)
+			return;
+		int last = classes[c][--sizes[c]];
+		classes[c][positions[u]] = last;
+		positions[last] = positions[u];
+		colors[u] = -1;
+	}
+
+	/**
+	 * Color of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the color, -1 if the node is not colored
+	 */
+	public int colorOf(int u) {
+		return u >= 0 && u < colors.length ? colors[u] : -1;
+	}
+
+	/**
+	 * Number of colors, some classes being possibly empty.
+	 * 
+	 * @return the number of colors
+	 */
+	public int getColorCount() {
+		return count;
+	}
+
+	/**
+	 * Members of a color class. The returned array belongs to the coloring
+	 * and is only valid until the coloring changes.
+	 * 
+	 * @param color
+	 *            the color
+	 * @return the numbers of the members, followed by unused entries
+	 */
+	public int[] members(int color) {
+		return classes[color];
+	}
+
+	/**
+	 * Number of members of a color class.
+	 * 
+	 * @param color
+	 *            the color
+	 * @return the number of nodes with that color
+	 */
+	public int size(int color) {
+		return sizes[color];
+	}
+
+	/**
+	 * Whether the coloring is a valid distance-2 coloring of the index.
+	 * 
+	 * @return true if no two nodes within distance 2 have the same color
+	 * @complexity O(n DELTA^2) where n is the number of nodes
+	 */
+	public boolean isValid() {
+		for (int u = 0; u < index.size(); u++) {
+			if (index.idOf(u) == null)
+				continue;
+			if (colorOf(u) < 0)
+				return false;
+			int[] neighbors = index.neighbors(u);
+			for (int j = 0; j < index.degree(u); j++) {
+				int v = neighbors[j];
+				if (colorOf(v) == colors[u])
+					return false;
+				int[] second = index.neighbors(v);
+				for (int k = 0; k < index.degree(v); k++)
+					if (second[k] != u && colorOf(second[k]) == colors[u])
+						return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a node has the color of the other endpoint of a new edge or of
+	 * one of its neighbors.
+	 */
+	protected boolean conflicts(int u, int other) {
+		int c = colors[u];
+		if (colorOf(other) == c)
+			return true;
+		int[] neighbors = index.neighbors(other);
+		for (int j = 0; j < index.degree(other); j++)
+			if (neighbors[j] != u && colorOf(neighbors[j]) == c)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Give a node the smallest color unused within distance 2.
+	 */
+	protected void recolor(int u) {
+		remove(u);
+
+		if (++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(used, 0);
+			stamp = 1;
+		}
+		int[] neighbors = index.neighbors(u);
+		for (int j = 0; j < index.degree(u); j++) {
+			int v = neighbors[j];
+			use(colorOf(v));
+			int[] second = index.neighbors(v);
+			for (int k = 0; k < index.degree(v); k++)
+				if (second[k] != u)
+					use(colorOf(second[k]));
+		}
+		int c = 0;
+		while (c < used.length && used[c] == stamp)
+			c++;
+
+		if (u >= colors.length) {
+			int length = colors.length;
+			int capacity = Math.max(2 * length, u + 1);
+			colors = Arrays.copyOf(colors, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			Arrays.fill(colors, length, capacity, -1);
+		}
+		if (c >= classes.length) {
+			int capacity = Math.max(2 * classes.length, c + 1);
+			classes = Arrays.copyOf(classes, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+		}
+		if (classes[c] == null)
+			classes[c] = new int[16];
+		else if (sizes[c] == classes[c].length)
+			classes[c] = Arrays.copyOf(classes[c], 2 * sizes[c]);
+		count = Math.max(count, c + 1);
+
+		colors[u] = c;
+		positions[u] = sizes[c];
+		classes[c][sizes[c]++] = u;
+	}
+
+	protected void use(int c) {
+		if (c < 0)
+			return;
+		if (c >= used.length)
+			used = Arrays.copyOf(used, Math.max(2 * used.length, c + 1));
+		used[c] = stamp;
+	}
+}
@@ -1,6 +1,7 @@
 package org.graphstream.algorithm.community;
 
-import org.apache.commons.math.stat.descriptive.moment.*;
+import java.util.Arrays;
+
 import org.graphstream.graph.*;
 
 public class DynSharc extends NewSawSharc {
@@ -8,6 +9,24 @@ public class DynSharc extends NewSawSharc {
 	protected int stallingThreshold = 5;
 	protected int breakPeriod = 5;
 
+	/**
+	 * Per-node state of the algorithm, built on first use on top of the
+	 * neighborhood index and published as node attributes at each step end.
+	 */
+	protected NodeStateTable states;
+
+	/**
+	 * State of the neighbors at the beginning of the step in progress, when
+	 * it is synchronous, null to read their live state
+	 */
+	protected NodeStateTable peers;
+
+	/**
+	 * Index of the originator of each community, created on first request and
+	 * kept up to date from then on.
+	 */
+	protected OriginatorIndex originators;
+
 	public DynSharc() {
 		super();
 	}
@@ -40,6 +59,108 @@ public class DynSharc extends NewSawSharc {
 		this.breakPeriod = breakPeriod;
 	}
 
+	@Override
+	public void init(Graph graph) {
+		super.init(graph);
+		states = null;
+	}
+
+	@Override
+	public void terminate() {
+		if (frontier != null)
+			synchronizeTimers();
+		publishState();
+		super.terminate();
+		states = null;
+	}
+
+	/**
+	 * Publish the per-node state as node attributes at the end of each step,
+	 * unless notifications are batched, before notifying the listeners.
+	 */
+	@Override
+	protected void stepCompleted() {
+		if (!batchedNotification)
+			publishState();
+		super.stepCompleted();
+	}
+
+	/**
+	 * Write the per-node state modified since the last publication to the
+	 * node attributes (score, freshness, originator, break mode...), for
+	 * consumers reading them between steps. With active scheduling, the
+	 * stalling counters of the skipped nodes are only published once they are
+	 * computed again or on {@link #terminate()}.
+	 */
+	public void publishState() {
+		if (states != null)
+			states.publish(graph);
+	}
+
+	/**
+	 * Get the per-node state table of the graph, building it from the current
+	 * node attributes if needed.
+	 * 
+	 * @return the node state table
+	 */
+	protected NodeStateTable getNodeStates() {
+		if (states == null) {
+			states = new NodeStateTable(graph, marker, getNeighborhoodIndex());
+			if (originators != null) {
+				originators.clear();
+				states.setOriginatorIndex(originators);
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * Get the state of the neighbors of the node being computed: the live
+	 * state table, or its copy taken at the beginning of a synchronous step.
+	 * The node reads and writes its own state, and hands its tokens over, in
+	 * the live table.
+	 * 
+	 * @return the node state table to read the neighbors from
+	 */
+	protected NodeStateTable getPeerStates() {
+		return peers != null ? peers : getNodeStates();
+	}
+
+	/**
+	 * The nodes read and write their state, and hand the originator token
+	 * over to their neighbors.
+	 */
+	@Override
+	protected boolean keepsNodeState() {
+		return true;
+	}
+
+	@Override
+	protected void freezeNeighborState() {
+		peers = getNodeStates().snapshot();
+	}
+
+	@Override
+	protected void thawNeighborState() {
+		peers = null;
+	}
+
+	/**
+	 * Get the index of the originator of each community, to find the
+	 * originator of a community or to listen to token moves without
+	 * scanning the node attributes.
+	 * 
+	 * @return the originator index
+	 */
+	public OriginatorIndex getOriginatorIndex() {
+		if (originators == null) {
+			originators = new OriginatorIndex(graph, marker);
+			if (states != null)
+				states.setOriginatorIndex(originators);
+		}
+		return originators;
+	}
+
 	/**
 	 * Compute the node new assignment using the SAw-SHARC algorithm
 	 * 
@@ -50,69 +171,89 @@ public class DynSharc extends NewSawSharc {
 	 */
 	@Override
 	public void computeNode(Node u) {
+		NodeStateTable state = getNodeStates();
+		int un = state.number(u);
+		scan.clear();
+
+		/*
+		 * Advance the timers of the steps skipped by active scheduling, and
+		 * recall what the neighbors may read from this node
+		 */
+		if (frontier != null)
+			catchUp(un, frontier.catchUp(un));
+		double previousFreshness = state.get(un, NodeStateTable.FRESHNESS);
+		boolean wasOriginator = state.has(un, NodeStateTable.ORIGINATOR);
+		boolean wasBreaking = state.has(un, NodeStateTable.BREAK);
 
 		/*
 		 * Recall previous community (will be used for originator update)
 		 */
-		Object previousCommunity = u.getAttribute(marker);
-		Double previousScore = (Double) u.getAttribute(marker + ".score");
-		u.setAttribute(marker + ".old_score", previousScore);
+		int previousCommunity = community(u);
+		if (state.has(un, NodeStateTable.SCORE))
+			state.set(un, NodeStateTable.OLD_SCORE, state.get(un,
+					NodeStateTable.SCORE));
+		else
+			state.remove(un, NodeStateTable.OLD_SCORE);
 
 		/*
 		 * Revert to self-community if no more neighbors or manage first
 		 * iteration of the simulation
 		 */
-		if (u.getDegree() == 0 || previousCommunity == null) {
+		if (u.getDegree() == 0 || previousCommunity < 0) {
 			originateCommunity(u);
 		}
 
 		/*
 		 * Process node break mode
 		 */
-		else if (u.hasAttribute(marker + ".break")) {
-			int remaining = (Integer) u.getAttribute(marker + ".break");
+		else if (state.has(un, NodeStateTable.BREAK)) {
+			int remaining = (int) state.get(un, NodeStateTable.BREAK);
 
-			if (!u.hasAttribute(marker + ".break_done")) {
+			if (!state.has(un, NodeStateTable.BREAK_DONE)) {
 				/*
 				 * Search for a neighbor in break mode, otherwise, initiate a
 				 * new community
 				 */
+				Object brokenCommunity = state.getObject(un,
+						NodeStateTable.BROKEN_COMMUNITY);
 				Object newCommunity = null;
-				for (Edge e : u.getEnteringEdgeSet()) {
-					Node v = e.getOpposite(u);
-					if (v.hasAttribute(marker)
-							&& v.hasAttribute(marker + ".break")
-							&& v.hasAttribute(marker + ".break_done")
-							&& v.hasAttribute(marker + ".broken_community")
-							&& v.<Object> getAttribute(
-									marker + ".broken_community").equals(
-									u.<Object> getAttribute(marker
-											+ ".broken_community"))) {
-						newCommunity = v.getAttribute(marker);
+				NodeStateTable peers = getPeerStates();
+				CommunityIds ids = getCommunityHistograms().getCommunityIds();
+				NeighborScan neighbors = scanNeighbors(u);
+				for (int i = 0; i < neighbors.size(); i++) {
+					int vn = neighbors.number(i);
+					if (neighbors.community(i) >= 0
+							&& peers.has(vn, NodeStateTable.BREAK)
+							&& peers.has(vn, NodeStateTable.BREAK_DONE)
+							&& peers.has(vn, NodeStateTable.BROKEN_COMMUNITY)
+							&& peers.getObject(vn,
+									NodeStateTable.BROKEN_COMMUNITY).equals(
+									brokenCommunity)) {
+						newCommunity = ids.labelOf(neighbors.community(i));
 					}
 				}
 				if (newCommunity == null) {
 					originateCommunity(u);
 				} else {
-					u.setAttribute(marker, newCommunity);
+					setCommunity(u, newCommunity);
 				}
-				u.setAttribute(marker + ".break_done", true);
+				state.set(un, NodeStateTable.BREAK_DONE, 1);
 			}
 
 			/*
 			 * Decrease break mode lifetime
 			 */
 			if (remaining > 0) {
-				u.setAttribute(marker + ".break", remaining - 1);
+				state.set(un, NodeStateTable.BREAK, remaining - 1);
 			}
 
 			/*
 			 * Terminate break mode on lifetime expiration
 			 */
 			else if (remaining == 0) {
-				u.removeAttribute(marker + ".break");
-				u.removeAttribute(marker + ".broken_community");
-				u.removeAttribute(marker + ".break_done");
+				state.remove(un, NodeStateTable.BREAK);
+				state.remove(un, NodeStateTable.BROKEN_COMMUNITY);
+				state.remove(un, NodeStateTable.BREAK_DONE);
 			}
 		}
 
@@ -122,6 +263,12 @@ public class DynSharc extends NewSawSharc {
 		else
 			super.computeNode(u);
 
+		/*
+		 * Mirror the score set by the assignment
+		 */
+		if (u.hasAttribute(getScoreMarker()))
+			state.set(un, NodeStateTable.SCORE, u.getNumber(getScoreMarker()));
+
 		/*
 		 * Set the originator: Currently originator, pass the role to a neighbor
 		 * node with higher score than me or to the neighbor with the highest
@@ -133,11 +280,10 @@ public class DynSharc extends NewSawSharc {
 		 * Update freshness counter and stalling value or reset everything if
 		 * the node has changed community
 		 */
-		if (previousCommunity == null
-				|| previousCommunity.equals(u.getAttribute(marker))) {
+		if (previousCommunity < 0 || previousCommunity == community(u)) {
 			int freshness;
-			if (u.hasAttribute(marker + ".freshness")) {
-				freshness = (Integer) u.getAttribute(marker + ".freshness");
+			if (state.has(un, NodeStateTable.FRESHNESS)) {
+				freshness = (int) state.get(un, NodeStateTable.FRESHNESS);
 			} else {
 				freshness = 0;
 			}
@@ -147,71 +293,237 @@ public class DynSharc extends NewSawSharc {
 			/*
 			 * Has freshness be incremented ? If no, increment the
 			 */
-			if (freshness >= u.getNumber(marker + ".freshness")) {
+			if (freshness >= state.get(un, NodeStateTable.FRESHNESS)) {
 
-				if (u.hasAttribute(marker + ".stalling")) {
-					u.setAttribute(marker + ".stalling",
-							u.getNumber(marker + ".stalling") + 1);
+				if (state.has(un, NodeStateTable.STALLING)) {
+					state.set(un, NodeStateTable.STALLING, state.get(un,
+							NodeStateTable.STALLING) + 1);
 				} else {
-					u.setAttribute(marker + ".stalling", 1);
+					state.set(un, NodeStateTable.STALLING, 1);
 				}
 			} else
-				u.setAttribute(marker + ".stalling", 0);
+				state.set(un, NodeStateTable.STALLING, 0);
 
 		} else {
-			u.setAttribute(marker + ".freshness", 0);
-			u.setAttribute(marker + ".stalling", 0);
+			state.set(un, NodeStateTable.FRESHNESS, 0);
+			state.set(un, NodeStateTable.STALLING, 0);
 		}
 
-		if (u.hasAttribute(marker + ".stalling")
-				&& u.getNumber(marker + ".stalling") > 0) {
+		if (state.has(un, NodeStateTable.STALLING)
+				&& state.get(un, NodeStateTable.STALLING) > 0) {
 			/*
 			 * Enable break mode if the stalling threshold is reached
 			 */
-			if (u.getNumber(marker + ".stalling") >= stallingThreshold) {
+			if (state.get(un, NodeStateTable.STALLING) >= stallingThreshold) {
 
 				// Enable break mode
-				u.setAttribute(marker + ".break", breakPeriod - 1);
-				u.setAttribute(marker + ".broken_community",
-						u.getAttribute(marker));
+				state.set(un, NodeStateTable.BREAK, breakPeriod - 1);
+				state.setObject(un, NodeStateTable.BROKEN_COMMUNITY, u
+						.getAttribute(marker));
 			}
 		}
 
+		if (frontier != null)
+			schedule(un, previousFreshness, wasOriginator, wasBreaking);
+	}
+
+	/**
+	 * Mark for the next step the nodes that have to be computed again after
+	 * the computation of a node, when active scheduling is in progress: the
+	 * node itself while it holds the originator token or is in break mode or
+	 * just left it, and its neighbors if its freshness changed or if it passed
+	 * the token to one of them. Otherwise, the node only has to be woken up
+	 * when its stalling counter reaches the threshold.
+	 * 
+	 * @param un
+	 *            number of the node
+	 * @param previousFreshness
+	 *            freshness of the node before its computation, NaN if none
+	 * @param wasOriginator
+	 *            whether the node held the originator token
+	 * @param wasBreaking
+	 *            whether the node was in break mode
+	 */
+	protected void schedule(int un, double previousFreshness,
+			boolean wasOriginator, boolean wasBreaking) {
+		NodeStateTable state = getNodeStates();
+		boolean originator = state.has(un, NodeStateTable.ORIGINATOR);
+
+		if (Double.compare(previousFreshness, state.get(un,
+				NodeStateTable.FRESHNESS)) != 0
+				|| (wasOriginator && !originator))
+			markNeighborhood(un);
+
+		if (originator || wasBreaking
+				|| state.has(un, NodeStateTable.BREAK))
+			frontier.mark(un);
+		else if (state.has(un, NodeStateTable.STALLING)) {
+			int stalling = (int) state.get(un, NodeStateTable.STALLING);
+			frontier.wakeAt(un, frontier.getStep()
+					+ Math.max(1, stallingThreshold - stalling));
+		}
+	}
+
+	/**
+	 * Advance the timers of a node skipped during the specified number of
+	 * steps. As none of its inputs changed, each skipped step would only
+	 * have increased its stalling counter, and copied its score to its old
+	 * score.
+	 * 
+	 * @param un
+	 *            number of the node
+	 * @param idle
+	 *            number of skipped steps
+	 */
+	protected void catchUp(int un, int idle) {
+		if (idle <= 0)
+			return;
+		NodeStateTable state = getNodeStates();
+		if (state.has(un, NodeStateTable.STALLING))
+			state.set(un, NodeStateTable.STALLING, state.get(un,
+					NodeStateTable.STALLING)
+					+ idle);
+		if (state.has(un, NodeStateTable.SCORE))
+			state.set(un, NodeStateTable.OLD_SCORE, state.get(un,
+					NodeStateTable.SCORE));
+	}
+
+	/**
+	 * The steps skipped before the deferral are caught up, the current one is
+	 * not counted.
+	 */
+	@Override
+	protected void deferNode(int un) {
+		catchUp(un, frontier.defer(un));
+	}
+
+	@Override
+	protected void synchronizeTimers() {
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		for (Node u : graph) {
+			int un = index.number(u.getId());
+			catchUp(un, frontier.catchUp(un));
+		}
 	}
 
 	@Override
 	protected void originateCommunity(Node u) {
 		super.originateCommunity(u);
-		u.setAttribute(marker + ".originator", true);
-		u.setAttribute(marker + ".new_originator", true);
+
+		NodeStateTable state = getNodeStates();
+		int un = state.number(u);
+		state.set(un, NodeStateTable.ORIGINATOR, 1);
+		state.set(un, NodeStateTable.NEW_ORIGINATOR, 1);
+	}
+
+	/**
+	 * Set up the state consistently with a seeded assignment: in each
+	 * community, the node with the highest score gets the originator token,
+	 * and the freshness of the nodes decreases with their distance to the
+	 * originator in the community, as if the token had been there for a
+	 * while. Stalling counters and break modes are reset.
+	 * 
+	 * @complexity O(m) where m is the number of links in the network
+	 */
+	@Override
+	protected void seedState() {
+		NodeStateTable state = getNodeStates();
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		CommunityHistograms histograms = getCommunityHistograms();
+		int[] best = new int[histograms.getCommunityIds().capacity()];
+		Arrays.fill(best, -1);
+
+		/*
+		 * Reset the state and find the best scored node of each community
+		 */
+		for (Node u : graph) {
+			int un = state.number(u);
+			state.remove(un, NodeStateTable.ORIGINATOR);
+			state.remove(un, NodeStateTable.NEW_ORIGINATOR);
+			state.remove(un, NodeStateTable.ORIGINATOR_FROM);
+			state.remove(un, NodeStateTable.BREAK);
+			state.remove(un, NodeStateTable.BREAK_DONE);
+			state.remove(un, NodeStateTable.BROKEN_COMMUNITY);
+			state.set(un, NodeStateTable.FRESHNESS, 0);
+			state.set(un, NodeStateTable.STALLING, 0);
+
+			int community = histograms.communityOf(un);
+			if (community >= 0
+					&& (best[community] < 0 || state.get(un,
+							NodeStateTable.SCORE) > state.get(best[community],
+							NodeStateTable.SCORE)))
+				best[community] = un;
+		}
+
+		/*
+		 * Breadth-first search from the originator of each community, within
+		 * the community
+		 */
+		int[] distances = new int[index.size()];
+		Arrays.fill(distances, -1);
+		int[] queue = new int[index.size()];
+		for (int community = 0; community < best.length; community++) {
+			if (best[community] < 0)
+				continue;
+			int head = 0, tail = 0;
+			queue[tail++] = best[community];
+			distances[best[community]] = 0;
+			while (head < tail) {
+				int v = queue[head++];
+				int[] neighbors = index.neighbors(v);
+				for (int j = 0; j < index.degree(v); j++) {
+					int w = neighbors[j];
+					if (distances[w] < 0
+							&& histograms.communityOf(w) == community) {
+						distances[w] = distances[v] + 1;
+						queue[tail++] = w;
+					}
+				}
+			}
+
+			int eccentricity = distances[queue[tail - 1]];
+			for (int i = 0; i < tail; i++)
+				state.set(queue[i], NodeStateTable.FRESHNESS, eccentricity
+						- distances[queue[i]]);
+			state.set(best[community], NodeStateTable.ORIGINATOR, 1);
+		}
+
+		if (frontier != null)
+			frontier.markAll();
+		publishState();
 	}
 
 	protected void updateFreshessCounter(Node u) {
+		NodeStateTable state = getNodeStates();
+		int un = state.number(u);
+
 		/*
 		 * Initialize freshness counter
 		 */
 		int freshness = 0;
-		if (u.hasAttribute(marker + ".freshness"))
-			freshness = (Integer) u.getAttribute(marker + ".freshness");
+		if (state.has(un, NodeStateTable.FRESHNESS))
+			freshness = (int) state.get(un, NodeStateTable.FRESHNESS);
 
 		/*
 		 * Update the edge validity threshold for the current node
 		 */
 		setEdgeThreshold(u);
+		double threshold = state.get(un, NodeStateTable.THRESHOLD);
 
 		/*
 		 * Set the freshness counter to the highest value heard from one of the
 		 * neighbors of the same community
 		 */
-		for (Edge e : u.getEnteringEdgeSet()) {
-			Node v = e.getOpposite(u);
-			if (v.hasAttribute(marker)
-					&& v.hasAttribute(marker + ".freshness")
-					&& v.<Object> getAttribute(marker).equals(
-							u.<Object> getAttribute(marker))) {
-				if (similarity(u, v) >= u.getNumber(marker + ".threshold")
-						&& v.getNumber(marker + ".freshness") > freshness) {
-					freshness = (int) v.getNumber(marker + ".freshness");
+		int community = community(u);
+		NodeStateTable peers = getPeerStates();
+		NeighborScan neighbors = scanNeighbors(u);
+		for (int i = 0; i < neighbors.size(); i++) {
+			int vn = neighbors.number(i);
+			if (peers.has(vn, NodeStateTable.FRESHNESS)
+					&& community >= 0 && neighbors.community(i) == community) {
+				if (neighbors.similarity(i) >= threshold
+						&& peers.get(vn, NodeStateTable.FRESHNESS) > freshness) {
+					freshness = (int) peers.get(vn, NodeStateTable.FRESHNESS);
 				}
 			}
 		}
@@ -219,21 +531,23 @@ public class DynSharc extends NewSawSharc {
 		/*
 		 * If the node is originator, increase this count
 		 */
-		if (u.hasAttribute(marker + ".originator"))
+		if (state.has(un, NodeStateTable.ORIGINATOR))
 			freshness++;
 
 		/*
 		 * Update the freshness attribute
 		 */
-		u.setAttribute(marker + ".freshness", freshness);
+		state.set(un, NodeStateTable.FRESHNESS, freshness);
 	}
 
-	protected void updateOriginator(Node u, Object previousCommunity) {
-		if (u.hasAttribute(marker + ".originator")) {
-			Double score;
-			if (previousCommunity == null
-					|| previousCommunity.equals(u.getAttribute(marker)))
-				score = (Double) u.getAttribute(marker + ".score");
+	protected void updateOriginator(Node u, int previousCommunity) {
+		NodeStateTable state = getNodeStates();
+		int un = state.number(u);
+
+		if (state.has(un, NodeStateTable.ORIGINATOR)) {
+			double score;
+			if (previousCommunity < 0 || previousCommunity == community(u))
+				score = state.get(un, NodeStateTable.SCORE);
 			else {
 				/*
 				 * Originator node changed community
@@ -243,15 +557,16 @@ public class DynSharc extends NewSawSharc {
 			}
 
 			Node originator = u;
-			for (Edge e : u.getEnteringEdgeSet()) {
-				Node v = e.getOpposite(u);
-				if (v.hasAttribute(marker)
-						&& v.<Object> getAttribute(marker).equals(
-								previousCommunity)
-						&& v.hasAttribute(marker + ".score")
-						&& (Double) v.getAttribute(marker + ".score") > score) {
-					score = (Double) v.getAttribute(marker + ".score");
-					originator = v;
+			NodeStateTable peers = getPeerStates();
+			NeighborScan neighbors = scanNeighbors(u);
+			for (int i = 0; i < neighbors.size(); i++) {
+				int vn = neighbors.number(i);
+				if (previousCommunity >= 0
+						&& neighbors.community(i) == previousCommunity
+						&& peers.has(vn, NodeStateTable.SCORE)
+						&& peers.get(vn, NodeStateTable.SCORE) > score) {
+					score = peers.get(vn, NodeStateTable.SCORE);
+					originator = neighbors.node(i);
 				}
 			}
 
@@ -259,39 +574,124 @@ public class DynSharc extends NewSawSharc {
 			 * Update originator if necessary
 			 */
 			if (originator != u) {
-				u.removeAttribute(marker + ".originator");
-				originator.setAttribute(marker + ".originator", true);
-				originator.setAttribute(marker + ".new_originator", true);
+				int on = state.number(originator);
+				state.set(on, NodeStateTable.ORIGINATOR, 1);
+				state.set(on, NodeStateTable.NEW_ORIGINATOR, 1);
+				state.remove(un, NodeStateTable.ORIGINATOR);
 
 			}
 
-			if (u.hasAttribute(marker + ".new_originator"))
-				u.removeAttribute(marker + ".new_originator");
+			state.remove(un, NodeStateTable.NEW_ORIGINATOR);
 		}
 
 	}
 
 	protected void setEdgeThreshold(Node u) {
 		/*
-		 * Mean and standard deviation
+		 * Mean and (sample) standard deviation of the similarities with the
+		 * neighbors of the same community, using Welford's online algorithm
 		 */
-		Mean mean = new Mean();
-		StandardDeviation stdev = new StandardDeviation();
-		for (Edge e : u.getEnteringEdgeSet()) {
-			Node v = e.getOpposite(u);
-			if (v.hasAttribute(marker)
-					&& v.<Object> getAttribute(marker) == u
-							.<Object> getAttribute(marker)) {
-				mean.increment(similarity(u, v));
-				stdev.increment(similarity(u, v));
+		int community = community(u);
+		int n = 0;
+		double mean = Double.NaN;
+		double m2 = 0.0;
+		NeighborScan neighbors = scanNeighbors(u);
+		for (int i = 0; i < neighbors.size(); i++) {
+			if (community >= 0 && neighbors.community(i) == community) {
+				if (n == 0)
+					mean = 0.0;
+				double x = neighbors.similarity(i);
+				n++;
+				double dev = x - mean;
+				double nDev = dev / n;
+				mean += nDev;
+				m2 += (n - 1.0) * dev * nDev;
 			}
 		}
+		double stdev = n > 1 ? Math.sqrt(m2 / (n - 1.0)) : (n == 1 ? 0.0
+				: Double.NaN);
 
 		/*
 		 * Only consider as valid edges for which the similarity is above (mean
 		 * - 0.5 * stdev)
 		 */
-		double threshold = mean.getResult() - 0.5 * stdev.getResult();
-		u.setAttribute(marker + ".threshold", threshold);
+		double threshold = mean - 0.5 * stdev;
+		NodeStateTable state = getNodeStates();
+		state.set(state.number(u), NodeStateTable.THRESHOLD, threshold);
+	}
+
+	/**
+	 * Keep the originator index up to date with the community of the token
+	 * holders, wherever it is written.
+	 */
+	@Override
+	protected boolean labelWritten(String nodeId, Object previous, Object label) {
+		boolean changed = super.labelWritten(nodeId, previous, label);
+		if (changed && originators != null)
+			originators.communityChanged(nodeId);
+		return changed;
+	}
+
+	@Override
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		super.nodeRemoved(sourceId, timeId, nodeId);
+		if (originators != null)
+			originators.tokenRemoved(nodeId);
+	}
+
+	@Override
+	protected void forgetNode(int u) {
+		super.forgetNode(u);
+		if (states != null)
+			states.reset(u);
+	}
+
+	@Override
+	public void graphCleared(String sourceId, long timeId) {
+		super.graphCleared(sourceId, timeId);
+		if (states != null)
+			states.clear();
+		if (originators != null)
+			originators.clear();
+	}
+
+	@Override
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			String nodeId, String attribute, Object value) {
+		super.nodeAttributeAdded(sourceId, timeId, nodeId, attribute, value);
+		if (states != null && attribute.equals(getScoreMarker()))
+			mirrorScore(nodeId, value);
+	}
+
+	@Override
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		super.nodeAttributeChanged(sourceId, timeId, nodeId, attribute,
+				oldValue, newValue);
+		if (states != null && attribute.equals(getScoreMarker()))
+			mirrorScore(nodeId, newValue);
+	}
+
+	@Override
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		super.nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+		if (states != null && attribute.equals(getScoreMarker()))
+			mirrorScore(nodeId, null);
+	}
+
+	/**
+	 * Keep the score mirrored in the state table up to date when the score
+	 * attribute is modified from outside the algorithm.
+	 */
+	protected void mirrorScore(String nodeId, Object value) {
+		Node n = graph.getNode(nodeId);
+		if (n == null)
+			return;
+		int u = states.number(n);
+		if (value instanceof Number)
+			states.set(u, NodeStateTable.SCORE, ((Number) value).doubleValue());
+		else
+			states.remove(u, NodeStateTable.SCORE);
 	}
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fixed-size MinHash signatures of the neighborhoods of the nodes of a
+ * {@link NeighborhoodIndex}, used to estimate the Jaccard index of two
+ * neighborhoods in O(k) where k is the signature size, whatever the node
+ * degrees.
+ * 
+ * Signatures are updated in O(k) when a link is added. When a link is
+ * removed, the signatures whose minimum came from the removed neighbor are
+ * dropped and lazily recomputed from the index on next use.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class MinHashSignatures {
+
+	/**
+	 * Index giving the neighborhoods of the nodes
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Seed of each hash function
+	 */
+	protected int[] seeds;
+
+	/**
+	 * Signature of each node, indexed by node number, null if it has to be
+	 * recomputed
+	 */
+	protected int[][] signatures;
+
+	/**
+	 * New signatures of the specified size for the neighborhoods of the
+	 * specified index.
+	 * 
+	 * @param index
+	 *            index giving the neighborhoods
+	 * @param size
+	 *            number of hash functions in a signature
+	 */
+	public MinHashSignatures(NeighborhoodIndex index, int size) {
+		this.index = index;
+		seeds = new int[size];
+		Random random = new Random(size);
+		for (int i = 0; i < size; i++)
+			seeds[i] = random.nextInt();
+		signatures = new int[Math.max(16, index.size())][];
+	}
+
+	/**
+	 * Number of hash functions in a signature.
+	 * 
+	 * @return the signature size
+	 */
+	public int size() {
+		return seeds.length;
+	}
+
+	/**
+	 * Update the signatures of two nodes that just became neighbors.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 */
+	public void linkAdded(int a, int b) {
+		add(a, b);
+		add(b, a);
+	}
+
+	/**
+	 * Update the signatures of two nodes that are no longer neighbors.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 */
+	public void linkRemoved(int a, int b) {
+		remove(a, b);
+		remove(b, a);
+	}
+
+	/**
+	 * Forget the signature of a removed node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void nodeRemoved(int u) {
+		if (u < signatures.length)
+			signatures[u] = null;
+	}
+
+	/**
+	 * Estimated Jaccard index of the neighborhoods of two nodes, i.e. the
+	 * fraction of hash functions for which both signatures agree.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 * @return the estimated Jaccard index
+	 * @complexity O(k) where k is the signature size
+	 */
+	public double jaccard(int a, int b) {
+		if (index.degree(a) == 0 || index.degree(b) == 0)
+			return 0.0;
+
+		int[] x = signature(a);
+		int[] y = signature(b);
+		int matches = 0;
+		for (int i = 0; i < seeds.length; i++)
+			if (x[i] == y[i])
+				matches++;
+		return ((double) matches) / seeds.length;
+	}
+
+	/**
+	 * Bound on the estimation error of the Jaccard index that holds with the
+	 * specified confidence, following Hoeffding's inequality.
+	 * 
+	 * @param confidence
+	 *            probability with which the bound must hold, in ]0, 1[
+	 * @return the maximum absolute error on the Jaccard index
+	 */
+	public double errorBound(double confidence) {
+		return Math.sqrt(Math.log(2.0 / (1.0 - confidence))
+				/ (2.0 * seeds.length));
+	}
+
+	protected int[] signature(int u) {
+		ensure(u);
+		if (signatures[u] == null) {
+			int[] signature = new int[seeds.length];
+			Arrays.fill(signature, Integer.MAX_VALUE);
+			int[] neighbors = index.neighbors(u);
+			for (int j = 0; j < index.degree(u); j++)
+				for (int i = 0; i < seeds.length; i++)
+					signature[i] = Math.min(signature[i],
+							hash(i, neighbors[j]));
+			signatures[u] = signature;
+		}
+		return signatures[u];
+	}
+
+	protected void add(int u, int v) {
+		ensure(u);
+		int[] signature = signatures[u];
+		if (signature == null)
+			return;
+		for (int i = 0; i < seeds.length; i++)
+			signature[i] = Math.min(signature[i], hash(i, v));
+	}
+
+	protected void remove(int u, int v) {
+		ensure(u);
+		int[] signature = signatures[u];
+		if (signature == null)
+			return;
+		for (int i = 0; i < seeds.length; i++) {
+			if (signature[i] == hash(i, v)) {
+				signatures[u] = null;
+				return;
+			}
+		}
+	}
+
+	protected void ensure(int u) {
+		if (u >= signatures.length)
+			signatures = Arrays.copyOf(signatures, Math.max(
+					2 * signatures.length, u + 1));
+	}
+
+	/**
+	 * Hash of a node number by the i-th hash function (murmur3 finalizer).
+	 */
+	protected int hash(int i, int v) {
+		int h = v * 0x9E3779B9 + seeds[i];
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.DefaultGraph;
+
+/**
+ * Multilevel driver of the SHARC community detection algorithm for large
+ * static graphs. A few SHARC steps are performed on the graph, then each
+ * community is contracted into a supernode of a coarse graph whose links are
+ * weighted by the number (or total weight) of links between the communities.
+ * The coarse graph is processed recursively with SAw-SHARC, which takes the
+ * link weights into account, then the labels of the supernodes are projected
+ * back on their members and the assignment is refined with a few steps in
+ * which only the nodes whose neighborhood changed are computed.
+ * 
+ * Each level divides the number of nodes by the average community size of
+ * the first steps, so that most of the computations happen on small graphs.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class MultilevelSharc {
+
+	/**
+	 * Graph to which the algorithm is applied
+	 */
+	protected Graph graph;
+
+	/**
+	 * Name of the community attribute
+	 */
+	protected String marker;
+
+	/**
+	 * Name of the link weight attribute, on the graph if present and on the
+	 * coarse graphs
+	 */
+	protected String weightMarker = "weight";
+
+	/**
+	 * Algorithm applied to the graph itself
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * Random number generator shared by all the levels
+	 */
+	protected Random rng = new Random();
+
+	/**
+	 * Maximum number of levels, the graph itself included
+	 */
+	protected int levels = 4;
+
+	/**
+	 * Maximum number of steps performed before contracting a level
+	 */
+	protected int coarseningSteps = 3;
+
+	/**
+	 * Maximum number of steps performed on the coarsest level
+	 */
+	protected int coarsestSteps = 20;
+
+	/**
+	 * Maximum number of steps performed to refine a level after projection
+	 */
+	protected int refinementSteps = 5;
+
+	/**
+	 * A level is only contracted if it has at most this fraction of
+	 * communities per node
+	 */
+	protected double contraction = 0.8;
+
+	/**
+	 * Number of node computations performed by the last run, on all levels
+	 */
+	protected long computations;
+
+	/**
+	 * Number of nodes of each level of the last run
+	 */
+	protected ArrayList<Integer> levelSizes = new ArrayList<Integer>();
+
+	/**
+	 * New multilevel driver applying the SHARC algorithm to the specified
+	 * graph, using the specified marker for the community attribute.
+	 * 
+	 * @param graph
+	 *            the graph to which the algorithm will be applied
+	 * @param marker
+	 *            String used as marker for the community attribute
+	 */
+	public MultilevelSharc(Graph graph, String marker) {
+		this.graph = graph;
+		this.marker = marker;
+		algorithm = new Sharc(graph, marker);
+	}
+
+	/**
+	 * New multilevel driver applying the SHARC algorithm to the specified
+	 * graph, using the default community marker.
+	 * 
+	 * @param graph
+	 *            the graph to which the algorithm will be applied
+	 */
+	public MultilevelSharc(Graph graph) {
+		this.graph = graph;
+		algorithm = new Sharc(graph);
+		marker = algorithm.getMarker();
+	}
+
+	/**
+	 * Algorithm applied to the graph itself, e.g. to go on with plain steps
+	 * once the multilevel run is over.
+	 * 
+	 * @return the SHARC algorithm of the graph
+	 */
+	public Sharc getAlgorithm() {
+		return algorithm;
+	}
+
+	public void setRandom(Random rng) {
+		this.rng = rng;
+		algorithm.setRandom(rng);
+	}
+
+	public void setWeightMarker(String weightMarker) {
+		this.weightMarker = weightMarker;
+	}
+
+	/**
+	 * Set the number of levels and steps of a run.
+	 * 
+	 * @param levels
+	 *            maximum number of levels, the graph itself included (default
+	 *            4)
+	 * @param coarseningSteps
+	 *            maximum number of steps before contracting a level (default
+	 *            3)
+	 * @param coarsestSteps
+	 *            maximum number of steps on the coarsest level (default 20)
+	 * @param refinementSteps
+	 *            maximum number of steps to refine a level after projection
+	 *            (default 5)
+	 */
+	public void setParameters(int levels, int coarseningSteps,
+			int coarsestSteps, int refinementSteps) {
+		this.levels = levels;
+		this.coarseningSteps = coarseningSteps;
+		this.coarsestSteps = coarsestSteps;
+		this.refinementSteps = refinementSteps;
+	}
+
+	/**
+	 * Number of node computations performed by the last run, on all levels.
+	 * 
+	 * @return the number of calls to computeNode
+	 */
+	public long getComputations() {
+		return computations;
+	}
+
+	/**
+	 * Number of nodes of each level of the last run, starting with the graph
+	 * itself.
+	 * 
+	 * @return the level sizes
+	 */
+	public ArrayList<Integer> getLevelSizes() {
+		return levelSizes;
+	}
+
+	/**
+	 * Compute the community assignment of the graph.
+	 * 
+	 * @complexity O(m) per level and step, where m is the number of links of
+	 *             the level
+	 */
+	public void compute() {
+		computations = 0;
+		levelSizes.clear();
+		run(algorithm, graph, 1);
+	}
+
+	/**
+	 * Process a level: first steps, contraction, recursive processing of the
+	 * coarse graph, projection and refinement.
+	 * 
+	 * @param algo
+	 *            algorithm applied to the level
+	 * @param level
+	 *            graph of the level
+	 * @param depth
+	 *            number of the level, starting at 1 for the graph itself
+	 */
+	protected void run(Sharc algo, Graph level, int depth) {
+		levelSizes.add(level.getNodeCount());
+
+		if (depth >= levels) {
+			steps(algo, level, coarsestSteps);
+			return;
+		}
+		steps(algo, level, coarseningSteps);
+
+		/*
+		 * Supernode of each community
+		 */
+		HashMap<Object, String> supernodes = new HashMap<Object, String>();
+		for (Node u : level) {
+			Object label = u.getAttribute(marker);
+			if (label != null && !supernodes.containsKey(label))
+				supernodes.put(label, Integer.toString(supernodes.size()));
+		}
+		if (supernodes.size() < 2
+				|| supernodes.size() > contraction * level.getNodeCount()) {
+			steps(algo, level, coarsestSteps);
+			return;
+		}
+
+		Graph coarse = contract(level, supernodes);
+		NewSawSharc coarseAlgo = new NewSawSharc(coarse, marker, weightMarker);
+		coarseAlgo.setRandom(rng);
+		run(coarseAlgo, coarse, depth + 1);
+
+		/*
+		 * Projection of the labels of the supernodes on their members, and
+		 * refinement where the labels changed, the nodes having all been
+		 * computed by the first steps
+		 */
+		algo.getActiveSteps().setEnabled(true);
+		algo.getActiveSet().markNone();
+		for (Node u : level) {
+			Object label = u.getAttribute(marker);
+			if (label == null)
+				continue;
+			Object coarseLabel = coarse.getNode(supernodes.get(label))
+					.getAttribute(marker);
+			if (coarseLabel != null && !coarseLabel.equals(label))
+				algo.setCommunity(u, coarseLabel);
+		}
+		coarseAlgo.terminate();
+
+		algo.getConvergence().reset();
+		steps(algo, level, refinementSteps);
+		algo.getActiveSteps().setEnabled(false);
+	}
+
+	/**
+	 * Build the coarse graph of a level, with one node per community and one
+	 * link per pair of adjacent communities, weighted by the total weight of
+	 * the links between them.
+	 * 
+	 * @param level
+	 *            graph of the level
+	 * @param supernodes
+	 *            id of the supernode of each community
+	 * @return the coarse graph
+	 */
+	protected Graph contract(Graph level, HashMap<Object, String> supernodes) {
+		Graph coarse = new DefaultGraph(level.getId() + "-coarse");
+		for (String id : supernodes.values())
+			coarse.addNode(id);
+
+		HashMap<Long, Double> weights = new HashMap<Long, Double>();
+		for (Edge e : level.getEdgeSet()) {
+			Object a = e.getNode0().getAttribute(marker);
+			Object b = e.getNode1().getAttribute(marker);
+			if (a == null || b == null || a.equals(b))
+				continue;
+			long i = Integer.parseInt(supernodes.get(a));
+			long j = Integer.parseInt(supernodes.get(b));
+			Long key = Math.min(i, j) << 32 | Math.max(i, j);
+			Double weight = weights.get(key);
+			weights.put(key, (weight == null ? 0.0 : weight) + weightOf(e));
+		}
+
+		for (Long key : weights.keySet()) {
+			String i = Long.toString(key >>> 32);
+			String j = Long.toString(key & 0xFFFFFFFFL);
+			Edge e = coarse.addEdge(i + "-" + j, i, j);
+			e.addAttribute(weightMarker, weights.get(key));
+		}
+		return coarse;
+	}
+
+	/**
+	 * Weight of a link, 1 if it has no numeric weight.
+	 */
+	protected double weightOf(Edge e) {
+		Object weight = e.getAttribute(weightMarker);
+		return weight instanceof Number ? ((Number) weight).doubleValue()
+				: 1.0;
+	}
+
+	/**
+	 * Perform steps until the assignment converges.
+	 * 
+	 * @param algo
+	 *            algorithm applied to the level
+	 * @param level
+	 *            graph of the level
+	 * @param max
+	 *            maximum number of steps
+	 */
+	protected void steps(Sharc algo, Graph level, int max) {
+		for (int step = 0; step < max && !algo.isConverged(); step++) {
+			algo.compute();
+			computations += algo.getActiveSteps().isEnabled() ? algo.activeNodes
+					.size() : level.getNodeCount();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Neighborhood of the node being computed, gathered in a single pass over its
+ * entering edges: for each neighbor, the node, its number in the
+ * neighborhood index and its community id. Similarities with the neighbors
+ * are computed on first use and then cached, so that each of them is computed
+ * at most once per step whatever the number of phases that use it.
+ * 
+ * The arrays are reused from one node to the next. A scan is only valid
+ * during the computation of its node, as neither the topology nor the
+ * communities of the neighbors change in the meantime.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class NeighborScan {
+
+	/**
+	 * Algorithm computing the similarities
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * Node whose neighborhood is scanned, null if the scan is not valid
+	 */
+	protected Node owner;
+
+	/**
+	 * Neighbors of the node
+	 */
+	protected Node[] nodes = new Node[16];
+
+	/**
+	 * Number of each neighbor in the neighborhood index
+	 */
+	protected int[] numbers = new int[16];
+
+	/**
+	 * Community id of each neighbor, -1 if it has no community
+	 */
+	protected int[] communities = new int[16];
+
+	/**
+	 * Similarity of the node with each neighbor, if already computed
+	 */
+	protected double[] similarities = new double[16];
+
+	/**
+	 * Whether the similarity with each neighbor is already computed
+	 */
+	protected boolean[] known = new boolean[16];
+
+	/**
+	 * Number of neighbors
+	 */
+	protected int size;
+
+	/**
+	 * New empty scan for the specified algorithm.
+	 * 
+	 * @param algorithm
+	 *            algorithm computing the similarities
+	 */
+	public NeighborScan(Sharc algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Gather the neighborhood of a node, unless it is already gathered.
+	 * 
+	 * @param u
+	 *            the node
+	 * @param histograms
+	 *            histograms giving the node numbers and community ids
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void scan(Node u, CommunityHistograms histograms) {
+		if (owner == u)
+			return;
+
+		owner = u;
+		size = 0;
+		for (int i = 0, degree = u.getInDegree(); i < degree; i++) {
+			Node v = u.getEnteringEdge(i).getOpposite(u);
+			if (size == nodes.length)
+				grow();
+			int number = histograms.number(v.getId());
+			nodes[size] = v;
+			numbers[size] = number;
+			communities[size] = histograms.communityOf(number);
+			known[size] = false;
+			size++;
+		}
+	}
+
+	/**
+	 * Gather the neighborhood of a node ahead of its computation, e.g. by a
+	 * parallel step, the communities being read from the specified buffer.
+	 * With an exact index, the similarities are computed right away with
+	 * {@link Sharc#similarityValue(NeighborhoodIndex, int, int)}, which gives
+	 * the same values as the algorithm would. Only the graph, the index and
+	 * the buffer are read, so that several scans may be prepared
+	 * concurrently.
+	 * 
+	 * @param u
+	 *            the node
+	 * @param index
+	 *            neighborhood index giving the node numbers
+	 * @param communities
+	 *            community id of each node number
+	 * @complexity O(DELTA log(DELTA)) where DELTA is the average node degree
+	 *             in the network
+	 */
+	public void prepare(Node u, NeighborhoodIndex index, int[] communities) {
+		owner = u;
+		size = 0;
+		int un = index.indexOf(u.getId());
+		boolean exact = index.isExact();
+		for (int i = 0, degree = u.getInDegree(); i < degree; i++) {
+			Node v = u.getEnteringEdge(i).getOpposite(u);
+			if (size == nodes.length)
+				grow();
+			int number = index.indexOf(v.getId());
+			nodes[size] = v;
+			numbers[size] = number;
+			this.communities[size] = communities[number];
+			known[size] = exact;
+			if (exact)
+				similarities[size] = algorithm.similarityValue(index, un,
+						number);
+			size++;
+		}
+	}
+
+	/**
+	 * Node whose neighborhood is scanned.
+	 * 
+	 * @return the node, or null if the scan is not valid
+	 */
+	public Node getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Invalidate the scan, before the computation of a new node.
+	 */
+	public void clear() {
+		owner = null;
+		Arrays.fill(nodes, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Number of neighbors.
+	 * 
+	 * @return the number of scanned neighbors
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A neighbor.
+	 * 
+	 * @param i
+	 *            position of the neighbor in the scan
+	 * @return the neighbor
+	 */
+	public Node node(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * Number of a neighbor in the neighborhood index.
+	 * 
+	 * @param i
+	 *            position of the neighbor in the scan
+	 * @return the node number of the neighbor
+	 */
+	public int number(int i) {
+		return numbers[i];
+	}
+
+	/**
+	 * Community id of a neighbor.
+	 * 
+	 * @param i
+	 *            position of the neighbor in the scan
+	 * @return the community id of the neighbor, -1 if it has none
+	 */
+	public int community(int i) {
+		return communities[i];
+	}
+
+	/**
+	 * Similarity of the node with a neighbor, computed on first use.
+	 * 
+	 * @param i
+	 *            position of the neighbor in the scan
+	 * @return the similarity between the node and the neighbor
+	 */
+	public double similarity(int i) {
+		if (!known[i]) {
+			similarities[i] = algorithm.similarityValue(owner, nodes[i]);
+			known[i] = true;
+		}
+		return similarities[i];
+	}
+
+	protected void grow() {
+		int capacity = 2 * nodes.length;
+		nodes = Arrays.copyOf(nodes, capacity);
+		numbers = Arrays.copyOf(numbers, capacity);
+		communities = Arrays.copyOf(communities, capacity);
+		similarities = Arrays.copyOf(similarities, capacity);
+		known = Arrays.copyOf(known, capacity);
+	}
+}
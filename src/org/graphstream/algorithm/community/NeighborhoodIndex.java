@@ -0,0 +1,1195 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Incrementally maintained neighborhood index used to answer neighborhood
+ * similarity queries in constant time.
+ * 
+ * Each node is given a dense number, and its neighborhood is kept as a sorted
+ * array of neighbor numbers. Two parallel arrays hold, for each neighbor, the
+ * number of neighbors the two nodes have in common and the weight of the link
+ * between them. These are updated from the events the algorithm receives as
+ * a sink, so that the similarity between two neighbors never has to be
+ * recomputed from scratch, and common neighbors are found by merging two
+ * sorted arrays rather than by looking up node ids.
+ * 
+ * Events are processed idempotently (an edge is identified by its id), so the
+ * index can safely receive the same event from both the graph and its input.
+ * 
+ * The index considers edges as undirected. If a directed edge, a loop or a
+ * parallel edge is ever added, the index is flagged as not exact and users
+ * should fall back to the direct computation on the graph. The parallel edges
+ * of a link are counted, so that the link is only removed with its last
+ * edge.
+ * 
+ * On dense graphs, the index can additionally keep each neighborhood as a
+ * bitset over node numbers. Common neighbors are then found by a word-wise
+ * popcount of the intersection of two bitsets.
+ * 
+ * When link weights are tracked, the weights of the links of each node are
+ * also kept sorted, so that the rank of a link weight among the weights of a
+ * node (used as a cumulative distribution function by weighted similarities)
+ * is found by binary search.
+ * 
+ * On graphs with high degree hubs, the index can be made approximate: once a
+ * node reaches a given degree, the common neighbors of its links are no
+ * longer counted and their similarity is estimated from MinHash signatures of
+ * the neighborhoods. This bounds the cost of each event by the hub degree
+ * threshold, at the price of an error reported by
+ * {@link #similarityErrorBound(double)}. Nodes stop being hubs when their
+ * degree falls under half the threshold.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class NeighborhoodIndex {
+
+	/**
+	 * Dense number of each node
+	 */
+	protected HashMap<String, Integer> numbers;
+
+	/**
+	 * Node id of each number, null for unused numbers
+	 */
+	protected String[] ids;
+
+	/**
+	 * Number of neighbors of each node
+	 */
+	protected int[] degrees;
+
+	/**
+	 * Sorted neighbor numbers of each node
+	 */
+	protected int[][] adjacency;
+
+	/**
+	 * Number of common neighbors between each node and each of its neighbors,
+	 * parallel to the adjacency
+	 */
+	protected int[][] common;
+
+	/**
+	 * Weight of the link between each node and each of its neighbors,
+	 * parallel to the adjacency
+	 */
+	protected double[][] weights;
+
+	/**
+	 * Number of edges of the link between each node and each of its
+	 * neighbors, more than one for parallel edges, parallel to the adjacency
+	 */
+	protected int[][] links;
+
+	/**
+	 * Weights of the links of each node in increasing order, null if weights
+	 * are not tracked
+	 */
+	protected double[][] ranked;
+
+	/**
+	 * Numbers released by removed nodes, reused first
+	 */
+	protected int[] freeNumbers;
+
+	/**
+	 * Number of released numbers
+	 */
+	protected int freeCount;
+
+	/**
+	 * Number of allocated numbers, used or released
+	 */
+	protected int size;
+
+	/**
+	 * Endpoint numbers of each known edge
+	 */
+	protected HashMap<String, int[]> edges;
+
+	/**
+	 * Node id of each known loop, loops not being part of any link
+	 */
+	protected HashMap<String, String> loops;
+
+	/**
+	 * Name of the edge attribute holding the link weights, or null if
+	 * weights are not tracked
+	 */
+	protected String weightMarker;
+
+	/**
+	 * False as soon as an edge that can not be handled (directed, loop or
+	 * parallel edge) has been added to the index
+	 */
+	protected boolean exact = true;
+
+	/**
+	 * Whether neighborhoods are also kept as bitsets
+	 */
+	protected boolean bitsets = false;
+
+	/**
+	 * Neighborhood bitset of each node, indexed by node number
+	 */
+	protected long[][] bits;
+
+	/**
+	 * Number of 64 bits words in each bitset
+	 */
+	protected int words;
+
+	/**
+	 * Degree from which a node is considered as a hub in approximate mode
+	 */
+	protected int hubDegree = Integer.MAX_VALUE;
+
+	/**
+	 * Whether each node is currently considered as a hub, indexed by node
+	 * number
+	 */
+	protected boolean[] hubs;
+
+	/**
+	 * MinHash signatures of the neighborhoods, null if the index is not
+	 * approximate
+	 */
+	protected MinHashSignatures signatures;
+
+	/**
+	 * Number of similarities that have been estimated rather than computed
+	 */
+	protected long estimations = 0;
+
+	/**
+	 * New empty neighborhood index.
+	 */
+	public NeighborhoodIndex() {
+		numbers = new HashMap<String, Integer>();
+		edges = new HashMap<String, int[]>();
+		loops = new HashMap<String, String>();
+		ids = new String[16];
+		degrees = new int[16];
+		adjacency = new int[16][];
+		common = new int[16][];
+		weights = new double[16][];
+		links = new int[16][];
+		hubs = new boolean[16];
+		freeNumbers = new int[16];
+	}
+
+	/**
+	 * New empty neighborhood index, using bitsets or not.
+	 * 
+	 * @param bitsets
+	 *            whether neighborhoods should also be kept as bitsets
+	 */
+	public NeighborhoodIndex(boolean bitsets) {
+		this();
+		setBitsets(bitsets);
+	}
+
+	/**
+	 * New neighborhood index initialized with the edges currently in the
+	 * specified graph.
+	 * 
+	 * @param graph
+	 *            the graph used to populate the index
+	 * @complexity O(m * DELTA) where m is the number of edges and DELTA is the
+	 *             average node degree in the network
+	 */
+	public NeighborhoodIndex(Graph graph) {
+		this(graph, false, null);
+	}
+
+	/**
+	 * New neighborhood index initialized with the edges currently in the
+	 * specified graph, using bitsets or not, and tracking the specified edge
+	 * weight attribute.
+	 * 
+	 * @param graph
+	 *            the graph used to populate the index
+	 * @param bitsets
+	 *            whether neighborhoods should also be kept as bitsets
+	 * @param weightMarker
+	 *            edge weight marker, or null if weights are not needed
+	 * @complexity O(m * DELTA) where m is the number of edges and DELTA is the
+	 *             average node degree in the network
+	 */
+	public NeighborhoodIndex(Graph graph, boolean bitsets, String weightMarker) {
+		this(bitsets);
+		this.weightMarker = weightMarker;
+		if (weightMarker != null)
+			ranked = new double[ids.length][];
+		for (Edge e : graph.getEdgeSet()) {
+			addEdge(e.getId(), e.getNode0().getId(), e.getNode1().getId(),
+					e.isDirected());
+			if (weightMarker != null && e.hasAttribute(weightMarker))
+				setWeight(e.getId(), e.getAttribute(weightMarker));
+		}
+
+		/*
+		 * Number the isolated nodes as well, so that the numbering only
+		 * depends on the graph and not on the order nodes are first used in
+		 */
+		for (Node u : graph.getNodeSet())
+			number(u.getId());
+	}
+
+	/**
+	 * Whether bitsets are worth using for a graph of the specified size, i.e.
+	 * when a bitset holds no more words than a node has neighbors on average,
+	 * and the bitsets of all nodes fit in a reasonable amount of memory.
+	 * 
+	 * @param nodeCount
+	 *            number of nodes of the graph
+	 * @param edgeCount
+	 *            number of edges of the graph
+	 * @return true if bitsets should be used
+	 */
+	public static boolean worthBitsets(int nodeCount, int edgeCount) {
+		if (nodeCount == 0 || nodeCount > (1 << 16))
+			return false;
+		double averageDegree = 2.0 * edgeCount / nodeCount;
+		return averageDegree * 64 >= nodeCount;
+	}
+
+	/**
+	 * Enable or disable the bitset representation of neighborhoods. Enabling
+	 * it builds the bitsets from the current content of the index.
+	 * 
+	 * @param enable
+	 *            whether neighborhoods should also be kept as bitsets
+	 */
+	public void setBitsets(boolean enable) {
+		if (enable == bitsets)
+			return;
+
+		bitsets = enable;
+		bits = null;
+
+		if (enable) {
+			words = Math.max(1, (ids.length + 63) / 64);
+			bits = new long[ids.length][];
+			for (int u = 0; u < size; u++) {
+				if (ids[u] == null)
+					continue;
+				bits[u] = new long[words];
+				for (int i = 0; i < degrees[u]; i++)
+					set(bits[u], adjacency[u][i]);
+			}
+		}
+	}
+
+	/**
+	 * Whether neighborhoods are also kept as bitsets.
+	 * 
+	 * @return true if bitsets are used
+	 */
+	public boolean hasBitsets() {
+		return bitsets;
+	}
+
+	/**
+	 * Make the index approximate for links involving nodes of at least the
+	 * specified degree, or exact again.
+	 * 
+	 * @param hubDegree
+	 *            degree from which a node is considered as a hub, or 0 to
+	 *            make the index exact again
+	 * @param signatureSize
+	 *            number of hash functions of the MinHash signatures
+	 */
+	public void setApproximation(int hubDegree, int signatureSize) {
+		/*
+		 * First count again the common neighbors of all links
+		 */
+		if (signatures != null)
+			for (int u = 0; u < size; u++)
+				if (hubs[u])
+					leaveHub(u);
+
+		if (hubDegree <= 0) {
+			this.hubDegree = Integer.MAX_VALUE;
+			signatures = null;
+			return;
+		}
+
+		this.hubDegree = hubDegree;
+		signatures = new MinHashSignatures(this, signatureSize);
+		for (int u = 0; u < size; u++)
+			if (ids[u] != null && degrees[u] >= hubDegree)
+				hubs[u] = true;
+	}
+
+	/**
+	 * Whether similarities involving hubs are estimated.
+	 * 
+	 * @return true if the index is approximate
+	 */
+	public boolean isApproximate() {
+		return signatures != null;
+	}
+
+	/**
+	 * Bound on the error of the estimated similarities that holds with the
+	 * specified confidence. The Jaccard index J of two neighborhoods is
+	 * estimated within the bound given by
+	 * {@link MinHashSignatures#errorBound(double)}, and the similarity, equal
+	 * to 2J / (1 + J), varies at most twice as fast as J.
+	 * 
+	 * @param confidence
+	 *            probability with which the bound must hold, in ]0, 1[
+	 * @return the maximum absolute error on estimated similarities, 0 if the
+	 *         index is not approximate
+	 */
+	public double similarityErrorBound(double confidence) {
+		if (signatures == null)
+			return 0.0;
+		return Math.min(1.0, 2.0 * signatures.errorBound(confidence));
+	}
+
+	/**
+	 * Number of similarities that have been estimated from signatures rather
+	 * than computed from the common neighbors counters.
+	 * 
+	 * @return the number of estimated similarities
+	 */
+	public long getEstimations() {
+		return estimations;
+	}
+
+	/**
+	 * Name of the edge attribute holding the link weights.
+	 * 
+	 * @return the weight marker, or null if weights are not tracked
+	 */
+	public String getWeightMarker() {
+		return weightMarker;
+	}
+
+	/**
+	 * Whether the index reflects exactly the neighborhoods of the graph.
+	 * 
+	 * @return true if only undirected simple edges were added
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Register a new edge and update the common neighbors counters of all the
+	 * links it closes a triangle with.
+	 * 
+	 * @param edgeId
+	 *            id of the new edge
+	 * @param fromNodeId
+	 *            id of the first endpoint
+	 * @param toNodeId
+	 *            id of the second endpoint
+	 * @param directed
+	 *            whether the edge is directed
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void addEdge(String edgeId, String fromNodeId, String toNodeId,
+			boolean directed) {
+		if (edges.containsKey(edgeId))
+			return;
+
+		if (directed || fromNodeId.equals(toNodeId)) {
+			exact = false;
+			if (fromNodeId.equals(toNodeId)) {
+				loops.put(edgeId, fromNodeId);
+				return;
+			}
+		}
+
+		int a = number(fromNodeId);
+		int b = number(toNodeId);
+		edges.put(edgeId, new int[] { a, b });
+
+		/*
+		 * Parallel edge: nodes were already neighbors, but the degrees
+		 * reported by the graph will no longer match the index
+		 */
+		int i = position(a, b);
+		if (i >= 0) {
+			exact = false;
+			links[a][i]++;
+			links[b][position(b, a)]++;
+			return;
+		}
+
+		/*
+		 * New link: count common neighbors and increase the counters of the
+		 * links towards those common neighbors
+		 */
+		int count = updateCommon(a, b, 1);
+		insert(a, b, count);
+		insert(b, a, count);
+		if (bitsets) {
+			set(bits[a], b);
+			set(bits[b], a);
+		}
+
+		if (signatures != null) {
+			signatures.linkAdded(a, b);
+			if (!hubs[a] && degrees[a] >= hubDegree)
+				hubs[a] = true;
+			if (!hubs[b] && degrees[b] >= hubDegree)
+				hubs[b] = true;
+		}
+	}
+
+	/**
+	 * Unregister an edge and update the common neighbors counters of all the
+	 * links it was closing a triangle with. The link stays as long as other
+	 * parallel edges remain.
+	 * 
+	 * @param edgeId
+	 *            id of the removed edge
+	 * @complexity O(DELTA) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void removeEdge(String edgeId) {
+		int[] ends = edges.remove(edgeId);
+		if (ends == null) {
+			loops.remove(edgeId);
+			return;
+		}
+
+		int i = position(ends[0], ends[1]);
+		if (i < 0)
+			return;
+		if (links[ends[0]][i] > 1) {
+			links[ends[0]][i]--;
+			links[ends[1]][position(ends[1], ends[0])]--;
+			return;
+		}
+
+		removeLink(ends[0], ends[1]);
+	}
+
+	/**
+	 * Set the weight of the link corresponding to an edge.
+	 * 
+	 * @param edgeId
+	 *            id of the edge
+	 * @param weight
+	 *            new weight value, as stored in the edge attribute, or null
+	 *            if the edge has no weight
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public void setWeight(String edgeId, Object weight) {
+		int[] ends = edges.get(edgeId);
+		if (ends == null)
+			return;
+
+		int i = position(ends[0], ends[1]);
+		int j = position(ends[1], ends[0]);
+		if (i < 0 || j < 0)
+			return;
+
+		double value = 0.0;
+		if (weight instanceof Number)
+			value = ((Number) weight).doubleValue();
+		if (ranked != null) {
+			unrank(ends[0], weights[ends[0]][i], degrees[ends[0]]);
+			unrank(ends[1], weights[ends[1]][j], degrees[ends[1]]);
+			rank(ends[0], value, degrees[ends[0]] - 1);
+			rank(ends[1], value, degrees[ends[1]] - 1);
+		}
+		weights[ends[0]][i] = value;
+		weights[ends[1]][j] = value;
+	}
+
+	/**
+	 * Unregister a node and all the links it still has.
+	 * 
+	 * @param nodeId
+	 *            id of the removed node
+	 */
+	public void removeNode(String nodeId) {
+		int u = indexOf(nodeId);
+		if (u < 0)
+			return;
+
+		/*
+		 * Edges are normally removed before their nodes. If some are left,
+		 * forget them as well so that their ids can be reused.
+		 */
+		if (degrees[u] > 0) {
+			while (degrees[u] > 0)
+				removeLink(u, adjacency[u][degrees[u] - 1]);
+			Iterator<int[]> i = edges.values().iterator();
+			while (i.hasNext()) {
+				int[] ends = i.next();
+				if (ends[0] == u || ends[1] == u)
+					i.remove();
+			}
+		}
+		loops.values().removeAll(Collections.singleton(nodeId));
+
+		numbers.remove(nodeId);
+		if (signatures != null)
+			signatures.nodeRemoved(u);
+		hubs[u] = false;
+		ids[u] = null;
+		adjacency[u] = null;
+		common[u] = null;
+		weights[u] = null;
+		links[u] = null;
+		if (ranked != null)
+			ranked[u] = null;
+		if (bitsets)
+			bits[u] = null;
+		if (freeCount == freeNumbers.length)
+			freeNumbers = Arrays.copyOf(freeNumbers, 2 * freeCount);
+		freeNumbers[freeCount++] = u;
+	}
+
+	/**
+	 * Remove all nodes and edges from the index.
+	 */
+	public void clear() {
+		numbers.clear();
+		edges.clear();
+		loops.clear();
+		Arrays.fill(ids, null);
+		Arrays.fill(degrees, 0);
+		Arrays.fill(adjacency, null);
+		Arrays.fill(common, null);
+		Arrays.fill(weights, null);
+		Arrays.fill(links, null);
+		if (ranked != null)
+			Arrays.fill(ranked, null);
+		Arrays.fill(hubs, false);
+		freeCount = 0;
+		size = 0;
+		exact = true;
+		if (signatures != null)
+			signatures = new MinHashSignatures(this, signatures.size());
+		if (bitsets) {
+			bitsets = false;
+			setBitsets(true);
+		}
+	}
+
+	/**
+	 * Whether an edge is known by the index.
+	 * 
+	 * @param edgeId
+	 *            id of the edge
+	 * @return true if the edge has been added and not yet removed
+	 */
+	public boolean hasEdge(String edgeId) {
+		return edges.containsKey(edgeId) || loops.containsKey(edgeId);
+	}
+
+	/**
+	 * Number of edges known by the index, loops and parallel edges included,
+	 * i.e. the number of edges of the graph if the index received all its
+	 * events.
+	 * 
+	 * @return the number of edges
+	 */
+	public int getEdgeCount() {
+		return edges.size() + loops.size();
+	}
+
+	/**
+	 * Ids of the edges known by the index, loops included.
+	 * 
+	 * @return a new array of edge ids
+	 */
+	public String[] getEdgeIds() {
+		String[] edgeIds = new String[getEdgeCount()];
+		int i = 0;
+		for (String edgeId : edges.keySet())
+			edgeIds[i++] = edgeId;
+		for (String edgeId : loops.keySet())
+			edgeIds[i++] = edgeId;
+		return edgeIds;
+	}
+
+	/**
+	 * Endpoints of an edge known by the index.
+	 * 
+	 * @param edgeId
+	 *            id of the edge
+	 * @return the numbers of the two endpoints, or null if the edge is unknown
+	 */
+	public int[] endpoints(String edgeId) {
+		return edges.get(edgeId);
+	}
+
+	/**
+	 * Number of a node, allocating a new one if the node is not yet known.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @return the node number
+	 */
+	public int number(String nodeId) {
+		Integer n = numbers.get(nodeId);
+		if (n != null)
+			return n;
+
+		int u = freeCount > 0 ? freeNumbers[--freeCount] : size++;
+		if (u >= ids.length)
+			grow(2 * ids.length);
+
+		numbers.put(nodeId, u);
+		ids[u] = nodeId;
+		degrees[u] = 0;
+		adjacency[u] = new int[4];
+		common[u] = new int[4];
+		weights[u] = new double[4];
+		links[u] = new int[4];
+		if (ranked != null)
+			ranked[u] = new double[4];
+		if (bitsets)
+			bits[u] = new long[words];
+		return u;
+	}
+
+	/**
+	 * Number of a node, without allocating it.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @return the node number, or -1 if the node is not known
+	 */
+	public int indexOf(String nodeId) {
+		Integer n = numbers.get(nodeId);
+		return n == null ? -1 : n;
+	}
+
+	/**
+	 * Id of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the node id, or null if the number is not used
+	 */
+	public String idOf(int u) {
+		return u < size ? ids[u] : null;
+	}
+
+	/**
+	 * Upper bound of the node numbers currently allocated.
+	 * 
+	 * @return the number of allocated numbers, used or released
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sorted neighbor numbers of a node. Only the first {@link #degree(int)}
+	 * entries are meaningful, and the array must not be modified.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the adjacency array of the node
+	 */
+	public int[] neighbors(int u) {
+		return adjacency[u];
+	}
+
+	/**
+	 * Number of distinct neighbors of a node.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @return the node degree, as known by the index
+	 */
+	public int degree(String nodeId) {
+		int u = indexOf(nodeId);
+		return u < 0 ? 0 : degrees[u];
+	}
+
+	/**
+	 * Number of distinct neighbors of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the node degree, as known by the index
+	 */
+	public int degree(int u) {
+		return degrees[u];
+	}
+
+	/**
+	 * Number of neighbors two nodes have in common.
+	 * 
+	 * @param aId
+	 *            id of the first node
+	 * @param bId
+	 *            id of the second node
+	 * @return the number of common neighbors
+	 */
+	public int commonNeighbors(String aId, String bId) {
+		int a = indexOf(aId);
+		int b = indexOf(bId);
+		if (a < 0 || b < 0)
+			return 0;
+		return commonNeighbors(a, b);
+	}
+
+	/**
+	 * Number of neighbors two nodes have in common.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 * @return the number of common neighbors
+	 * @complexity O(log(DELTA)) if the nodes are neighbors, O(n / 64) with
+	 *             bitsets where n is the number of nodes, O(DELTA) otherwise
+	 */
+	public int commonNeighbors(int a, int b) {
+		int i = position(a, b);
+		if (i >= 0 && !(hubs[a] || hubs[b]))
+			return common[a][i];
+
+		return countCommon(a, b);
+	}
+
+	/**
+	 * Neighborhood similarity between two nodes, i.e. one minus the size of
+	 * the symmetric difference of their neighborhoods over the sum of their
+	 * degrees.
+	 * 
+	 * @param aId
+	 *            id of the first node
+	 * @param bId
+	 *            id of the second node
+	 * @return The similarity value between the two nodes
+	 */
+	public double similarity(String aId, String bId) {
+		int a = indexOf(aId);
+		int b = indexOf(bId);
+		if (a < 0 || b < 0)
+			return 0.0;
+		return similarity(a, b);
+	}
+
+	/**
+	 * Neighborhood similarity between two nodes, i.e. one minus the size of
+	 * the symmetric difference of their neighborhoods over the sum of their
+	 * degrees.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 * @return The similarity value between the two nodes
+	 * @complexity O(log(DELTA)) if the nodes are neighbors
+	 */
+	public double similarity(int a, int b) {
+		int sum = degrees[a] + degrees[b];
+		if (sum == 0)
+			return 0.0;
+
+		/*
+		 * Hubs in approximate mode: estimate the similarity from the Jaccard
+		 * index J of the neighborhoods, as the number of common neighbors c
+		 * is J * sum / (1 + J)
+		 */
+		if (hubs[a] || hubs[b]) {
+			estimations++;
+			double jaccard = signatures.jaccard(a, b);
+			return 2.0 * jaccard / (1.0 + jaccard);
+		}
+
+		/*
+		 * Non-neighbors with bitsets: the symmetric difference is directly
+		 * the popcount of the exclusive or of the two neighborhoods
+		 */
+		double difference;
+		if (bitsets && position(a, b) < 0) {
+			long[] x = bits[a];
+			long[] y = bits[b];
+			int count = 0;
+			for (int k = 0; k < words; k++)
+				count += Long.bitCount(x[k] ^ y[k]);
+			difference = count;
+		}
+
+		/*
+		 * Symmetric difference of the two neighborhoods, computed the same
+		 * way as the direct count to get exactly the same value
+		 */
+		else
+			difference = sum - 2 * commonNeighbors(a, b);
+
+		return 1 - (difference / sum);
+	}
+
+	/**
+	 * Weight of the link between two nodes.
+	 * 
+	 * @param aId
+	 *            id of the first node
+	 * @param bId
+	 *            id of the second node
+	 * @return the link weight, or 0 if the nodes are not neighbors or the link
+	 *         has no weight
+	 */
+	public double weight(String aId, String bId) {
+		int a = indexOf(aId);
+		int b = indexOf(bId);
+		if (a < 0 || b < 0)
+			return 0.0;
+		return weight(a, b);
+	}
+
+	/**
+	 * Weight of the link between two nodes.
+	 * 
+	 * @param a
+	 *            number of the first node
+	 * @param b
+	 *            number of the second node
+	 * @return the link weight, or 0 if the nodes are not neighbors or the link
+	 *         has no weight
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public double weight(int a, int b) {
+		int i = position(a, b);
+		return i < 0 ? 0.0 : weights[a][i];
+	}
+
+	/**
+	 * Number of links of a node whose weight is strictly greater than the
+	 * specified weight.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param weight
+	 *            the reference weight
+	 * @return the number of heavier links, 0 if weights are not tracked
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	public int heavierLinks(int u, double weight) {
+		if (ranked == null)
+			return 0;
+
+		/*
+		 * Search for the first weight greater than the reference one
+		 */
+		double[] r = ranked[u];
+		int low = 0, high = degrees[u];
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (r[middle] > weight)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return degrees[u] - low;
+	}
+
+	/**
+	 * Greatest weight of the links of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the greatest link weight, NaN if the node has no link or if
+	 *         weights are not tracked
+	 */
+	public double maxWeight(int u) {
+		if (ranked == null || degrees[u] == 0)
+			return Double.NaN;
+		return ranked[u][degrees[u] - 1];
+	}
+
+	/**
+	 * Position of a neighbor in the adjacency of a node.
+	 * 
+	 * @return the position, or a negative value if the nodes are not
+	 *         neighbors
+	 */
+	protected int position(int u, int v) {
+		return Arrays.binarySearch(adjacency[u], 0, degrees[u], v);
+	}
+
+	/**
+	 * Insert a new neighbor in the sorted adjacency of a node.
+	 */
+	protected void insert(int u, int v, int count) {
+		int i = -position(u, v) - 1;
+		int d = degrees[u];
+		if (d == adjacency[u].length) {
+			adjacency[u] = Arrays.copyOf(adjacency[u], 2 * d);
+			common[u] = Arrays.copyOf(common[u], 2 * d);
+			weights[u] = Arrays.copyOf(weights[u], 2 * d);
+			links[u] = Arrays.copyOf(links[u], 2 * d);
+		}
+		System.arraycopy(adjacency[u], i, adjacency[u], i + 1, d - i);
+		System.arraycopy(common[u], i, common[u], i + 1, d - i);
+		System.arraycopy(weights[u], i, weights[u], i + 1, d - i);
+		System.arraycopy(links[u], i, links[u], i + 1, d - i);
+		if (ranked != null)
+			rank(u, 0.0, d);
+		adjacency[u][i] = v;
+		common[u][i] = count;
+		weights[u][i] = 0.0;
+		links[u][i] = 1;
+		degrees[u]++;
+	}
+
+	/**
+	 * Remove a neighbor from the sorted adjacency of a node.
+	 */
+	protected void delete(int u, int v) {
+		int i = position(u, v);
+		if (ranked != null)
+			unrank(u, weights[u][i], degrees[u]);
+		int d = --degrees[u];
+		System.arraycopy(adjacency[u], i + 1, adjacency[u], i, d - i);
+		System.arraycopy(common[u], i + 1, common[u], i, d - i);
+		System.arraycopy(weights[u], i + 1, weights[u], i, d - i);
+		System.arraycopy(links[u], i + 1, links[u], i, d - i);
+	}
+
+	/**
+	 * Insert a weight in the sorted weights of a node, currently holding the
+	 * specified number of weights.
+	 */
+	protected void rank(int u, double weight, int d) {
+		double[] r = ranked[u];
+		if (d == r.length) {
+			r = Arrays.copyOf(r, 2 * Math.max(1, d));
+			ranked[u] = r;
+		}
+		int i = Arrays.binarySearch(r, 0, d, weight);
+		if (i < 0)
+			i = -i - 1;
+		System.arraycopy(r, i, r, i + 1, d - i);
+		r[i] = weight;
+	}
+
+	/**
+	 * Remove a weight from the sorted weights of a node, currently holding
+	 * the specified number of weights.
+	 */
+	protected void unrank(int u, double weight, int d) {
+		double[] r = ranked[u];
+		int i = Arrays.binarySearch(r, 0, d, weight);
+		if (i < 0)
+			return;
+		System.arraycopy(r, i + 1, r, i, d - i - 1);
+	}
+
+	protected void removeLink(int a, int b) {
+		delete(a, b);
+		delete(b, a);
+		if (bitsets) {
+			clear(bits[a], b);
+			clear(bits[b], a);
+		}
+
+		updateCommon(a, b, -1);
+
+		if (signatures != null) {
+			signatures.linkRemoved(a, b);
+			if (hubs[a] && degrees[a] < hubDegree / 2)
+				leaveHub(a);
+			if (hubs[b] && degrees[b] < hubDegree / 2)
+				leaveHub(b);
+		}
+	}
+
+	/**
+	 * Stop considering a node as a hub, and count again the common neighbors
+	 * of its links that are no longer approximate.
+	 */
+	protected void leaveHub(int u) {
+		hubs[u] = false;
+		for (int i = 0; i < degrees[u]; i++) {
+			int w = adjacency[u][i];
+			if (!hubs[w]) {
+				int count = countCommon(u, w);
+				common[u][i] = count;
+				common[w][position(w, u)] = count;
+			}
+		}
+	}
+
+	/**
+	 * Number of common neighbors of two nodes, counted by merging the two
+	 * sorted adjacencies (or intersecting the two bitsets).
+	 */
+	protected int countCommon(int a, int b) {
+		int count = 0;
+
+		if (bitsets) {
+			long[] x = bits[a];
+			long[] y = bits[b];
+			for (int k = 0; k < words; k++)
+				count += Long.bitCount(x[k] & y[k]);
+			return count;
+		}
+
+		int[] x = adjacency[a];
+		int[] y = adjacency[b];
+		int i = 0, j = 0;
+		while (i < degrees[a] && j < degrees[b]) {
+			if (x[i] < y[j])
+				i++;
+			else if (x[i] > y[j])
+				j++;
+			else {
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Add the specified delta to the counters of the links between each of the
+	 * two nodes and each of their common neighbors, which are found by merging
+	 * the two sorted adjacencies (or intersecting the two bitsets). Counters
+	 * of links involving hubs are not maintained.
+	 * 
+	 * @return the number of common neighbors, meaningless if one of the nodes
+	 *         is a hub
+	 */
+	protected int updateCommon(int a, int b, int delta) {
+		int count = 0;
+
+		/*
+		 * Both nodes are hubs: all the links of the triangles they are part
+		 * of are approximate
+		 */
+		if (hubs[a] && hubs[b])
+			return count;
+
+		/*
+		 * One of the nodes is a hub: only the links between the other node
+		 * and the common neighbors that are not hubs are updated, and they
+		 * are found from the neighbors of the other node, whose degree is
+		 * bounded by the hub degree
+		 */
+		if (hubs[a] || hubs[b]) {
+			int s = hubs[a] ? b : a;
+			int h = hubs[a] ? a : b;
+			for (int i = 0; i < degrees[s]; i++) {
+				int w = adjacency[s][i];
+				if (!hubs[w] && position(h, w) >= 0) {
+					common[s][i] += delta;
+					common[w][position(w, s)] += delta;
+					count++;
+				}
+			}
+			return count;
+		}
+
+		if (bitsets) {
+			long[] x = bits[a];
+			long[] y = bits[b];
+			for (int k = 0; k < words; k++) {
+				long word = x[k] & y[k];
+				while (word != 0) {
+					int w = (k << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					if (!hubs[w]) {
+						common[a][position(a, w)] += delta;
+						common[b][position(b, w)] += delta;
+						common[w][position(w, a)] += delta;
+						common[w][position(w, b)] += delta;
+					}
+					count++;
+				}
+			}
+			return count;
+		}
+
+		int[] x = adjacency[a];
+		int[] y = adjacency[b];
+		int i = 0, j = 0;
+		while (i < degrees[a] && j < degrees[b]) {
+			if (x[i] < y[j])
+				i++;
+			else if (x[i] > y[j])
+				j++;
+			else {
+				int w = x[i];
+				if (!hubs[w]) {
+					common[a][i] += delta;
+					common[b][j] += delta;
+					common[w][position(w, a)] += delta;
+					common[w][position(w, b)] += delta;
+				}
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	protected void grow(int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+		degrees = Arrays.copyOf(degrees, capacity);
+		adjacency = Arrays.copyOf(adjacency, capacity);
+		common = Arrays.copyOf(common, capacity);
+		weights = Arrays.copyOf(weights, capacity);
+		links = Arrays.copyOf(links, capacity);
+		if (ranked != null)
+			ranked = Arrays.copyOf(ranked, capacity);
+		hubs = Arrays.copyOf(hubs, capacity);
+
+		if (bitsets) {
+			bits = Arrays.copyOf(bits, capacity);
+			if (capacity > words * 64) {
+				words = (capacity + 63) / 64;
+				for (int u = 0; u < bits.length; u++)
+					if (bits[u] != null)
+						bits[u] = Arrays.copyOf(bits[u], words);
+			}
+		}
+	}
+
+	protected static void set(long[] b, int n) {
+		b[n >> 6] |= 1L << (n & 63);
+	}
+
+	protected static void clear(long[] b, int n) {
+		b[n >> 6] &= ~(1L << (n & 63));
+	}
+}
@@ -40,7 +40,7 @@ public class NewSawSharc extends Sharc {
 	/**
 	 * Maximum weight on all incoming links
 	 */
-	protected Double maxWeight = Double.NEGATIVE_INFINITY;
+	protected double maxWeight = Double.NEGATIVE_INFINITY;
 
 	/**
 	 * New instance of the SAw-SHARC community detection algorithm, not attached
@@ -118,33 +118,89 @@ public class NewSawSharc extends Sharc {
 	 *             network
 	 */
 	@Override
-	protected Double similarity(Node a, Node b) {
-		Double sim;
+	protected double similarityValue(Node a, Node b) {
+		double sim;
 
 		if (maxWeight == Double.NEGATIVE_INFINITY || maxWeight == 0.0)
-			sim = super.similarity(a, b);
+			sim = super.similarityValue(a, b);
 		else
-			sim = super.similarity(a, b)
-					* (getWeightInLinkFrom(a, b) / maxWeight);
+			sim = super.similarityValue(a, b)
+					* (weightInLinkFrom(a, b) / maxWeight);
 
 		// System.out.println(a.getId() + " " + b.getId() + " " + "sim: "
-		// + super.similarity(a, b) + " wsim: " + sim);
+		// + super.similarityValue(a, b) + " wsim: " + sim);
 		return sim;
 	}
 
+	/**
+	 * Neighborhood weighted similarity between two nodes given by number, the
+	 * maximum weight of the links of the first node being read from the
+	 * index.
+	 */
+	@Override
+	protected double similarityValue(NeighborhoodIndex index, int a, int b) {
+		double max = index.maxWeight(a);
+		if (Double.isNaN(max) || max == 0.0)
+			return super.similarityValue(index, a, b);
+		return super.similarityValue(index, a, b) * (index.weight(a, b) / max);
+	}
+
+	/**
+	 * Link weights are kept by the neighborhood index.
+	 */
+	@Override
+	protected String getIndexedWeightMarker() {
+		return weightMarker;
+	}
+
+	/**
+	 * Weighted similarity can not be read from the community histograms.
+	 */
+	@Override
+	protected boolean usesPlainSimilarity() {
+		return false;
+	}
+
 	protected void setMaxWeight(Node u) {
 
 		maxWeight = Double.NEGATIVE_INFINITY;
 		for (Edge e : u.getEnteringEdgeSet()) {
-			Double weight = getWeightInLinkFrom(u, e.getOpposite(u));
+			double weight = weightInLinkFrom(u, e.getOpposite(u));
 			if (weight > maxWeight) {
 				maxWeight = weight;
 			}
 		}
 	}
 
+	/**
+	 * Weight of the link from b to a, boxed.
+	 * 
+	 * @see #weightInLinkFrom(Node, Node)
+	 */
 	protected Double getWeightInLinkFrom(Node a, Node b) {
-		Double weight = 0.0;
+		return weightInLinkFrom(a, b);
+	}
+
+	/**
+	 * Weight of the link from b to a.
+	 * 
+	 * @param a
+	 *            The node receiving the link
+	 * @param b
+	 *            The node emitting the link
+	 * @return The weight of the link, 0 if there is no such link or if it has
+	 *         no weight
+	 */
+	protected double weightInLinkFrom(Node a, Node b) {
+		/*
+		 * Use the weights kept by the neighborhood index whenever it reflects
+		 * the graph exactly
+		 */
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		if (index.isExact())
+			return index.weight(a.getId(), b.getId());
+
+		double weight = 0.0;
 		if (a.hasEdgeFrom(b.getId())
 				&& a.<Edge>getEdgeFrom(b.getId()).hasAttribute(weightMarker)) {
 			weight = (Double) a.<Edge>getEdgeFrom(b.getId()).getAttribute(
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Random;
+
+/**
+ * Counter-based random stream of a node at a step. The values drawn are a
+ * hash of the seed, the step, the node number and the rank of the draw, so
+ * that they do not depend on the order the nodes are computed in, nor on the
+ * draws of the other nodes, and no state is shared between the streams.
+ * 
+ * The stream is positioned on a node before its computation, and passed to
+ * the code drawing the random values of the node, the random generator of
+ * the algorithm being left untouched. The internal seed of {@link Random} is
+ * never used, so that the draws do not contend on it.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class NodeRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Seed of all the streams
+	 */
+	protected long base;
+
+	/**
+	 * Step and node number of the current stream, and its key
+	 */
+	protected int step;
+
+	protected int node;
+
+	protected long key;
+
+	/**
+	 * Number of values drawn from the current stream
+	 */
+	protected long counter;
+
+	/**
+	 * New node streams with the specified seed, positioned on the stream of
+	 * node 0 at step 0.
+	 * 
+	 * @param seed
+	 *            seed of all the streams
+	 */
+	public NodeRandom(long seed) {
+		super(seed);
+		position(0, 0);
+	}
+
+	/**
+	 * Position the stream on a node at a step, starting its draws over unless
+	 * it is already positioned there.
+	 * 
+	 * @param step
+	 *            the step
+	 * @param node
+	 *            number of the node
+	 */
+	public void position(int step, int node) {
+		if (counter > 0 && step == this.step && node == this.node)
+			return;
+		this.step = step;
+		this.node = node;
+		key = mix(base ^ mix(((long) step << 32) | (node & 0xFFFFFFFFL)));
+		counter = 0;
+	}
+
+	/**
+	 * Change the seed of all the streams, the current stream starting its
+	 * draws over.
+	 */
+	@Override
+	public void setSeed(long seed) {
+		base = seed;
+		key = mix(base ^ mix(((long) step << 32) | (node & 0xFFFFFFFFL)));
+		counter = 0;
+	}
+
+	@Override
+	protected int next(int bits) {
+		long z = mix(key + (++counter) * 0x9E3779B97F4A7C15L);
+		return (int) (z >>> (64 - bits));
+	}
+
+	/**
+	 * Finalizer of SplitMix64.
+	 */
+	protected static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Side table holding the per-node state of {@link DynSharc} and
+ * {@link SandSharc} as a structure of arrays indexed by the node numbers of a
+ * {@link NeighborhoodIndex}, rather than as node attributes.
+ * 
+ * Reading or writing a field is an array access, and does not fire any
+ * attribute event. Fields modified since the last publication are tracked,
+ * and written back to the graph as the attributes the algorithms used to
+ * maintain (the field suffix appended to the community marker) when
+ * {@link #publish(Graph)} is called, typically at the end of each step.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class NodeStateTable {
+
+	/**
+	 * Score of the node, mirrored from the attribute written by the
+	 * assignment and never published
+	 */
+	public static final int SCORE = 0;
+
+	/**
+	 * Score of the node before its last computation
+	 */
+	public static final int OLD_SCORE = 1;
+
+	/**
+	 * Freshness counter of the node community
+	 */
+	public static final int FRESHNESS = 2;
+
+	/**
+	 * Number of steps without freshness increase
+	 */
+	public static final int STALLING = 3;
+
+	/**
+	 * Similarity threshold of the valid links of the node
+	 */
+	public static final int THRESHOLD = 4;
+
+	/**
+	 * Whether the node holds the originator token of its community
+	 */
+	public static final int ORIGINATOR = 5;
+
+	/**
+	 * Whether the node received the originator token during this step
+	 */
+	public static final int NEW_ORIGINATOR = 6;
+
+	/**
+	 * Remaining lifetime of the node break mode
+	 */
+	public static final int BREAK = 7;
+
+	/**
+	 * Whether the node already left its community in break mode
+	 */
+	public static final int BREAK_DONE = 8;
+
+	/**
+	 * Community the node broke from (object field)
+	 */
+	public static final int BROKEN_COMMUNITY = 9;
+
+	/**
+	 * Id of the node the originator token came from (object field)
+	 */
+	public static final int ORIGINATOR_FROM = 10;
+
+	/**
+	 * Suffix of the attribute of each field
+	 */
+	protected static final String[] SUFFIXES = { ".score", ".old_score",
+			".freshness", ".stalling", ".threshold", ".originator",
+			".new_originator", ".break", ".break_done", ".broken_community",
+			".originator_from" };
+
+	/**
+	 * Fields published as integer attributes
+	 */
+	protected static final int INTEGERS = (1 << FRESHNESS) | (1 << STALLING)
+			| (1 << BREAK);
+
+	/**
+	 * Fields published as boolean attributes
+	 */
+	protected static final int FLAGS = (1 << ORIGINATOR)
+			| (1 << NEW_ORIGINATOR) | (1 << BREAK_DONE);
+
+	/**
+	 * Fields holding objects rather than numbers
+	 */
+	protected static final int OBJECTS = (1 << BROKEN_COMMUNITY)
+			| (1 << ORIGINATOR_FROM);
+
+	/**
+	 * Fields that are not published
+	 */
+	protected static final int PRIVATE = 1 << SCORE;
+
+	/**
+	 * Index giving the node numbers
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Community attribute marker, prefix of the published attributes
+	 */
+	protected String marker;
+
+	/**
+	 * Bit mask of the fields set for each node
+	 */
+	protected int[] present;
+
+	/**
+	 * Bit mask of the fields modified since the last publication for each
+	 * node
+	 */
+	protected int[] dirty;
+
+	/**
+	 * Value of each numeric field, indexed by field then node number
+	 */
+	protected double[][] values;
+
+	/**
+	 * Value of each object field, indexed by field then node number
+	 */
+	protected Object[][] objects;
+
+	/**
+	 * Index notified when originator tokens are given or taken, or null
+	 */
+	protected OriginatorIndex originators;
+
+	/**
+	 * Numbers of the nodes having modified fields
+	 */
+	protected int[] dirtyNodes;
+
+	/**
+	 * Number of nodes having modified fields
+	 */
+	protected int dirtyCount;
+
+	/**
+	 * New state table for the specified graph, loading the state currently
+	 * stored in its attributes.
+	 * 
+	 * @param graph
+	 *            the graph used to populate the table
+	 * @param marker
+	 *            community attribute marker
+	 * @param index
+	 *            neighborhood index of the graph, giving the node numbers
+	 * @complexity O(n) where n is the number of nodes
+	 */
+	public NodeStateTable(Graph graph, String marker, NeighborhoodIndex index) {
+		this.index = index;
+		this.marker = marker;
+		int capacity = Math.max(16, index.size());
+		present = new int[capacity];
+		dirty = new int[capacity];
+		values = new double[SUFFIXES.length][];
+		objects = new Object[SUFFIXES.length][];
+		for (int f = 0; f < SUFFIXES.length; f++) {
+			if ((OBJECTS & (1 << f)) != 0)
+				objects[f] = new Object[capacity];
+			else
+				values[f] = new double[capacity];
+		}
+		dirtyNodes = new int[16];
+
+		for (Node n : graph.getNodeSet())
+			load(n);
+	}
+
+	/**
+	 * Copy of the fields of a table, with no modified field and no
+	 * originator index.
+	 */
+	protected NodeStateTable(NodeStateTable table) {
+		index = table.index;
+		marker = table.marker;
+		present = table.present.clone();
+		dirty = new int[present.length];
+		values = new double[SUFFIXES.length][];
+		objects = new Object[SUFFIXES.length][];
+		for (int f = 0; f < SUFFIXES.length; f++) {
+			if (table.objects[f] != null)
+				objects[f] = table.objects[f].clone();
+			else
+				values[f] = table.values[f].clone();
+		}
+		dirtyNodes = new int[16];
+	}
+
+	/**
+	 * Copy of the current fields of all nodes, e.g. to read the state of the
+	 * neighbors at the beginning of a synchronous step while the nodes
+	 * update their own. The copy is not kept up to date, and its
+	 * modifications are never published.
+	 * 
+	 * @return the copy
+	 * @complexity O(n) where n is the number of nodes
+	 */
+	public NodeStateTable snapshot() {
+		return new NodeStateTable(this);
+	}
+
+	/**
+	 * Keep the specified originator index up to date with the originator
+	 * tokens given and taken through this table, starting with the tokens
+	 * currently held.
+	 * 
+	 * @param originators
+	 *            the originator index, or null
+	 */
+	public void setOriginatorIndex(OriginatorIndex originators) {
+		this.originators = originators;
+		if (originators != null)
+			for (int u = 0; u < present.length; u++)
+				if (has(u, ORIGINATOR) && index.idOf(u) != null)
+					originators.tokenAdded(index.idOf(u));
+	}
+
+	/**
+	 * Number of a node, making room for it in the table.
+	 * 
+	 * @param n
+	 *            the node
+	 * @return the number of the node
+	 */
+	public int number(Node n) {
+		int u = index.number(n.getId());
+		if (u >= present.length) {
+			int capacity = Math.max(2 * present.length, u + 1);
+			present = Arrays.copyOf(present, capacity);
+			dirty = Arrays.copyOf(dirty, capacity);
+			for (int f = 0; f < SUFFIXES.length; f++) {
+				if (objects[f] != null)
+					objects[f] = Arrays.copyOf(objects[f], capacity);
+				else
+					values[f] = Arrays.copyOf(values[f], capacity);
+			}
+		}
+		return u;
+	}
+
+	/**
+	 * Whether a field is set for a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 * @return true if the field is set
+	 */
+	public boolean has(int u, int field) {
+		return u < present.length && (present[u] & (1 << field)) != 0;
+	}
+
+	/**
+	 * Value of a numeric field of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 * @return the value of the field, NaN if it is not set
+	 */
+	public double get(int u, int field) {
+		return has(u, field) ? values[field][u] : Double.NaN;
+	}
+
+	/**
+	 * Value of an object field of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 * @return the value of the field, null if it is not set
+	 */
+	public Object getObject(int u, int field) {
+		return has(u, field) ? objects[field][u] : null;
+	}
+
+	/**
+	 * Set a numeric field of a node. Flags are set with any value.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 * @param value
+	 *            the new value
+	 */
+	public void set(int u, int field, double value) {
+		boolean given = field == ORIGINATOR && !has(u, field);
+		values[field][u] = value;
+		present[u] |= 1 << field;
+		touch(u, field);
+		if (given && originators != null)
+			originators.tokenAdded(index.idOf(u));
+	}
+
+	/**
+	 * Set an object field of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 * @param value
+	 *            the new value
+	 */
+	public void setObject(int u, int field, Object value) {
+		objects[field][u] = value;
+		present[u] |= 1 << field;
+		touch(u, field);
+	}
+
+	/**
+	 * Unset a field of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param field
+	 *            the field
+	 */
+	public void remove(int u, int field) {
+		if (!has(u, field))
+			return;
+		present[u] &= ~(1 << field);
+		if (objects[field] != null)
+			objects[field][u] = null;
+		touch(u, field);
+		if (field == ORIGINATOR && originators != null)
+			originators.tokenRemoved(index.idOf(u));
+	}
+
+	/**
+	 * Forget all the fields of a removed node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void reset(int u) {
+		if (u < 0 || u >= present.length)
+			return;
+		present[u] = 0;
+		dirty[u] = 0;
+		for (int f = 0; f < SUFFIXES.length; f++)
+			if (objects[f] != null)
+				objects[f][u] = null;
+	}
+
+	/**
+	 * Forget the fields of all nodes.
+	 */
+	public void clear() {
+		Arrays.fill(present, 0);
+		Arrays.fill(dirty, 0);
+		for (int f = 0; f < SUFFIXES.length; f++)
+			if (objects[f] != null)
+				Arrays.fill(objects[f], null);
+		dirtyCount = 0;
+	}
+
+	/**
+	 * Write the fields modified since the last publication to the attributes
+	 * of the nodes of the specified graph.
+	 * 
+	 * @param graph
+	 *            the graph whose node attributes are updated
+	 * @complexity O(d) where d is the number of nodes modified since the last
+	 *             publication
+	 */
+	public void publish(Graph graph) {
+		for (int i = 0; i < dirtyCount; i++) {
+			int u = dirtyNodes[i];
+			if (dirty[u] == 0)
+				continue;
+			String id = index.idOf(u);
+			Node n = id == null ? null : graph.getNode(id);
+			if (n != null)
+				publish(n, u);
+			dirty[u] = 0;
+		}
+		dirtyCount = 0;
+	}
+
+	/**
+	 * Write the modified fields of a single node to its attributes.
+	 * 
+	 * @param n
+	 *            the node
+	 */
+	public void publish(Node n) {
+		int u = index.indexOf(n.getId());
+		if (u >= 0 && u < present.length && dirty[u] != 0) {
+			publish(n, u);
+			dirty[u] = 0;
+		}
+	}
+
+	protected void publish(Node n, int u) {
+		for (int f = 0; f < SUFFIXES.length; f++) {
+			int bit = 1 << f;
+			if ((dirty[u] & bit) == 0 || (PRIVATE & bit) != 0)
+				continue;
+
+			String key = marker + SUFFIXES[f];
+			if ((present[u] & bit) == 0)
+				n.removeAttribute(key);
+			else if ((OBJECTS & bit) != 0)
+				n.setAttribute(key, objects[f][u]);
+			else if ((FLAGS & bit) != 0)
+				n.setAttribute(key, true);
+			else if ((INTEGERS & bit) != 0)
+				n.setAttribute(key, (int) values[f][u]);
+			else
+				n.setAttribute(key, values[f][u]);
+		}
+	}
+
+	/**
+	 * Load the fields of a node from its attributes.
+	 */
+	protected void load(Node n) {
+		int u = number(n);
+		for (int f = 0; f < SUFFIXES.length; f++) {
+			String key = marker + SUFFIXES[f];
+			if (!n.hasAttribute(key))
+				continue;
+			present[u] |= 1 << f;
+			if (objects[f] != null)
+				objects[f][u] = n.getAttribute(key);
+			else if ((FLAGS & (1 << f)) != 0)
+				values[f][u] = 1.0;
+			else
+				values[f][u] = n.getNumber(key);
+		}
+	}
+
+	protected void touch(int u, int field) {
+		if (dirty[u] == 0) {
+			if (dirtyCount == dirtyNodes.length)
+				dirtyNodes = Arrays.copyOf(dirtyNodes, 2 * dirtyCount);
+			dirtyNodes[dirtyCount++] = u;
+		}
+		dirty[u] |= 1 << field;
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Index of the nodes holding the originator token of each community,
+ * maintained by the algorithm as tokens move, so that the originator of a
+ * community is found in constant time rather than by scanning the node
+ * attributes of the whole graph.
+ * 
+ * Registered {@link OriginatorListener}s are notified each time the
+ * originator of a community changes. When a token is passed, the new holder
+ * is registered before the previous one is released, so that a move within a
+ * community is notified as a single change.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class OriginatorIndex {
+
+	/**
+	 * Graph giving the community of the nodes
+	 */
+	protected Graph graph;
+
+	/**
+	 * Community attribute marker
+	 */
+	protected String marker;
+
+	/**
+	 * Originator of each community
+	 */
+	protected HashMap<Object, String> originators;
+
+	/**
+	 * Community of each token holder
+	 */
+	protected HashMap<String, Object> tokens;
+
+	/**
+	 * Listeners notified of originator changes
+	 */
+	protected ArrayList<OriginatorListener> listeners;
+
+	/**
+	 * New empty index for the specified graph.
+	 * 
+	 * @param graph
+	 *            the graph whose nodes hold the tokens
+	 * @param marker
+	 *            community attribute marker
+	 */
+	public OriginatorIndex(Graph graph, String marker) {
+		this.graph = graph;
+		this.marker = marker;
+		originators = new HashMap<Object, String>();
+		tokens = new HashMap<String, Object>();
+		listeners = new ArrayList<OriginatorListener>();
+	}
+
+	/**
+	 * Register a listener notified of originator changes.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addOriginatorListener(OriginatorListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregister a listener.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeOriginatorListener(OriginatorListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Originator of a community.
+	 * 
+	 * @param community
+	 *            the community label
+	 * @return the id of the node holding the originator token of the
+	 *         community, or null if it has none
+	 * @complexity O(1)
+	 */
+	public String originatorOf(Object community) {
+		return originators.get(community);
+	}
+
+	/**
+	 * Whether a node holds an originator token.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @return true if the node is an originator
+	 * @complexity O(1)
+	 */
+	public boolean isOriginator(String nodeId) {
+		return tokens.containsKey(nodeId);
+	}
+
+	/**
+	 * Number of token holders.
+	 * 
+	 * @return the number of originators
+	 */
+	public int size() {
+		return tokens.size();
+	}
+
+	/**
+	 * Register a node receiving an originator token.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 */
+	public void tokenAdded(String nodeId) {
+		Object community = communityOf(nodeId);
+		if (tokens.containsKey(nodeId)) {
+			Object held = tokens.get(nodeId);
+			if (held == null ? community == null : held.equals(community))
+				return;
+			tokenRemoved(nodeId);
+		}
+
+		tokens.put(nodeId, community);
+		if (community != null) {
+			String previous = originators.put(community, nodeId);
+			if (!nodeId.equals(previous))
+				fire(community, previous, nodeId);
+		}
+	}
+
+	/**
+	 * Unregister a node losing its originator token.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 */
+	public void tokenRemoved(String nodeId) {
+		if (!tokens.containsKey(nodeId))
+			return;
+
+		Object community = tokens.remove(nodeId);
+		if (community == null || !nodeId.equals(originators.get(community)))
+			return;
+
+		/*
+		 * Hand the community over to another holder of a token for it, if any
+		 */
+		String other = null;
+		for (Map.Entry<String, Object> token : tokens.entrySet())
+			if (community.equals(token.getValue())) {
+				other = token.getKey();
+				break;
+			}
+
+		if (other == null)
+			originators.remove(community);
+		else
+			originators.put(community, other);
+		fire(community, nodeId, other);
+	}
+
+	/**
+	 * Update the index after a node changed community, in case it holds a
+	 * token.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 */
+	public void communityChanged(String nodeId) {
+		if (!tokens.containsKey(nodeId))
+			return;
+		tokenRemoved(nodeId);
+		tokenAdded(nodeId);
+	}
+
+	/**
+	 * Forget all tokens, without notifying the listeners.
+	 */
+	public void clear() {
+		originators.clear();
+		tokens.clear();
+	}
+
+	protected Object communityOf(String nodeId) {
+		Node n = graph.getNode(nodeId);
+		return n == null ? null : n.getAttribute(marker);
+	}
+
+	protected void fire(Object community, String previousNodeId, String nodeId) {
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).originatorChanged(community, previousNodeId,
+					nodeId);
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+/**
+ * Listener notified when the originator of a community changes.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public interface OriginatorListener {
+
+	/**
+	 * The originator token of a community moved, appeared or disappeared.
+	 * 
+	 * @param community
+	 *            the community label
+	 * @param previousNodeId
+	 *            id of the previous originator, or null if the community had
+	 *            none
+	 * @param nodeId
+	 *            id of the new originator, or null if the community has none
+	 *            anymore
+	 */
+	void originatorChanged(Object community, String previousNodeId,
+			String nodeId);
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Driver of the parallel steps of {@link Sharc}: synchronous, colored,
+ * asynchronous or sharded. It owns the buffers and threads of the steps, and
+ * the distance-2 coloring and connected components they rely on, which it
+ * keeps up to date from the topology changes reported by the algorithm. The
+ * communities chosen by a step are written to the nodes through the
+ * algorithm, one node after the other.
+ * 
+ * The variants keeping a state per node are computed by the algorithm itself,
+ * one node after the other in the order of the step, only their
+ * neighborhoods being gathered in parallel (see {@link SynchronousStep}).
+ * The ids of the communities that become empty are held until the end of
+ * the step, so that the ids gathered beforehand can still be compared with
+ * the current ones.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ParallelSteps {
+
+	/**
+	 * Algorithm whose steps are computed
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * Number of threads of the steps
+	 */
+	protected int parallelism;
+
+	/**
+	 * Whether the steps compute the color classes of a distance-2 coloring
+	 * one after the other, rather than all the nodes at once
+	 */
+	protected boolean coloredScheduling;
+
+	/**
+	 * Whether the steps compute the connected components of the graph
+	 * independently from each other
+	 */
+	protected boolean componentSharding;
+
+	/**
+	 * Number of sweeps of each thread per asynchronous step, 0 if the steps
+	 * are not asynchronous
+	 */
+	protected int asynchronousSweeps;
+
+	/**
+	 * Maximum number of sweeps a thread of the asynchronous steps may be
+	 * ahead of the slowest one
+	 */
+	protected int asynchronousStaleness;
+
+	/**
+	 * Frozen and next buffers of the steps, built on first use
+	 */
+	protected SynchronousStep step;
+
+	/**
+	 * Distance-2 coloring of the colored steps, built on first use and then
+	 * kept up to date from the graph events
+	 */
+	protected DistanceTwoColoring coloring;
+
+	/**
+	 * Connected components of the sharded steps, built on first use and then
+	 * kept up to date from the graph events
+	 */
+	protected ComponentIndex components;
+
+	/**
+	 * New synchronous steps of an algorithm, on the specified number of
+	 * threads.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 * @param parallelism
+	 *            number of threads
+	 */
+	public ParallelSteps(Sharc algorithm, int parallelism) {
+		this.algorithm = algorithm;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Compute the classes of a distance-2 coloring one after the other.
+	 */
+	public void setColoredScheduling() {
+		shutdown();
+		coloredScheduling = true;
+	}
+
+	/**
+	 * Compute the connected components of the graph independently.
+	 */
+	public void setComponentSharding() {
+		shutdown();
+		componentSharding = true;
+	}
+
+	/**
+	 * Compute the steps asynchronously.
+	 * 
+	 * @param staleness
+	 *            maximum number of sweeps a thread may be ahead of the
+	 *            slowest one
+	 * @param sweeps
+	 *            maximum number of sweeps of each thread per step
+	 */
+	public void setAsynchronous(int staleness, int sweeps) {
+		shutdown();
+		asynchronousStaleness = Math.max(0, staleness);
+		asynchronousSweeps = Math.max(1, sweeps);
+	}
+
+	/**
+	 * Number of threads of the steps.
+	 * 
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Perform one step, as configured. As for the complete steps, the steps
+	 * of a static graph are always computed, while the steps of a dynamic one
+	 * are skipped if the graph did not change.
+	 */
+	public void compute() {
+		if (!algorithm.staticMode && !algorithm.graphChanged)
+			return;
+
+		boolean stateful = algorithm.keepsNodeState();
+		CommunityIds ids = algorithm.getCommunityHistograms()
+				.getCommunityIds();
+		if (stateful)
+			ids.hold();
+		try {
+			if (asynchronousSweeps > 0)
+				computeAsynchronous();
+			else if (componentSharding)
+				computeSharded();
+			else if (coloredScheduling)
+				computeColored(1);
+			else
+				computeSynchronous();
+		} finally {
+			if (stateful)
+				ids.releaseHeld();
+		}
+		algorithm.graphChanged = algorithm.staticMode;
+	}
+
+	/**
+	 * Perform one synchronous step: all the nodes choose their community from
+	 * the communities of the previous step in parallel, then the choices are
+	 * applied one node after the other in node number order, so that the
+	 * communities originated during the step are created in the same order
+	 * whatever the number of threads. The variants keeping a state per node
+	 * read the state of their neighbors from a copy taken at the beginning
+	 * of the step.
+	 * 
+	 * @complexity O(n DELTA / p + c DELTA) where n is the number of nodes,
+	 *             DELTA the average node degree, p the number of threads and
+	 *             c the number of nodes that change community
+	 */
+	protected void computeSynchronous() {
+		CommunityHistograms histograms = algorithm.getCommunityHistograms();
+		SynchronousStep step = getStep();
+		if (!step.isStateful()) {
+			step.compute(histograms);
+			applyChoices(step, null, step.size());
+			return;
+		}
+
+		algorithm.freezeNeighborState();
+		try {
+			step.compute(histograms);
+		} finally {
+			algorithm.thawNeighborState();
+		}
+	}
+
+	/**
+	 * Perform one colored step: the classes of a distance-2 coloring are
+	 * computed one after the other in random order, the nodes of a class in
+	 * parallel, then their choices are applied before the next class is
+	 * computed. As the nodes of a class are not neighbors, the step is
+	 * equivalent to an in place step computing the classes one after the
+	 * other, and keeps its faster convergence. The step may be made of
+	 * several such sweeps, until one changes no community.
+	 * 
+	 * @param sweeps
+	 *            maximum number of sweeps
+	 * @complexity O(s (n DELTA / p + c DELTA + k)) where s is the number of
+	 *             sweeps, n the number of nodes, DELTA the average node
+	 *             degree, p the number of threads, c the number of nodes that
+	 *             change community and k the number of colors
+	 */
+	protected void computeColored(int sweeps) {
+		algorithm.getNeighborhoodIndex();
+		CommunityHistograms histograms = algorithm.getCommunityHistograms();
+		DistanceTwoColoring coloring = getColoring();
+		coloring.synchronize();
+		SynchronousStep step = getStep();
+
+		for (int sweep = 0; sweep < sweeps; sweep++) {
+			step.freeze(histograms);
+
+			ArrayList<Integer> order = new ArrayList<Integer>();
+			for (int c = 0; c < coloring.getColorCount(); c++)
+				if (coloring.size(c) > 0)
+					order.add(c);
+			Collections.shuffle(order, algorithm.rng);
+
+			int changed = 0;
+			for (int c : order) {
+				int[] nodes = coloring.members(c);
+				int count = coloring.size(c);
+				step.computeNodes(nodes, count);
+				if (!step.isStateful())
+					applyChoices(step, nodes, count);
+				changed += step.update(histograms, nodes, count);
+			}
+			step.endStep();
+			if (changed == 0)
+				break;
+		}
+	}
+
+	/**
+	 * Perform one asynchronous step: the threads sweep their blocks of nodes
+	 * concurrently, with no barrier between the sweeps, until each did the
+	 * configured number of sweeps or the last sweep of every thread changed
+	 * nothing. The communities are then written to the nodes one after the
+	 * other in node number order. The variants keeping a state per node are
+	 * computed by as many colored sweeps instead.
+	 * 
+	 * @complexity O(s n DELTA / p + c) where s is the number of sweeps, n the
+	 *             number of nodes, DELTA the average node degree, p the number
+	 *             of threads and c the number of nodes that change community
+	 */
+	protected void computeAsynchronous() {
+		if (algorithm.keepsNodeState()) {
+			computeColored(asynchronousSweeps);
+			return;
+		}
+		AsynchronousStep step = (AsynchronousStep) getStep();
+		step.compute(algorithm.getCommunityHistograms(), asynchronousSweeps);
+		applyLabels(step);
+	}
+
+	/**
+	 * Perform one sharded step: the connected components of the graph are
+	 * computed in place as independent tasks, the small ones being batched
+	 * together and the giant ones computed by color classes, then the
+	 * communities are written to the nodes one after the other in node
+	 * number order. As no community spreads across components, the step is
+	 * equivalent to an in place step, and the assignment does not depend on
+	 * the number of threads.
+	 * 
+	 * @complexity O(n DELTA / p + c) where n is the number of nodes, DELTA the
+	 *             average node degree, p the number of threads and c the
+	 *             number of nodes that change community, plus the size of the
+	 *             components split since the last step
+	 */
+	protected void computeSharded() {
+		algorithm.getNeighborhoodIndex();
+		CommunityHistograms histograms = algorithm.getCommunityHistograms();
+		ComponentIndex components = getComponents();
+		components.synchronize();
+		DistanceTwoColoring coloring = getColoring();
+		coloring.synchronize();
+		ShardedStep step = (ShardedStep) getStep();
+		step.compute(histograms, components, coloring);
+		if (!step.isStateful())
+			applyLabels(step);
+	}
+
+	/**
+	 * Write the communities resulting from a step to the nodes, one after the
+	 * other in node number order.
+	 * 
+	 * @param step
+	 *            a step originating communities under ids above the frozen
+	 *            ones
+	 */
+	protected void applyLabels(SynchronousStep step) {
+		NeighborhoodIndex index = algorithm.getNeighborhoodIndex();
+		for (int u = 0; u < step.size(); u++) {
+			String id = index.idOf(u);
+			Node n = id == null ? null : algorithm.graph.<Node> getNode(id);
+			Object label = step.labelOf(u);
+			if (n == null || label == null)
+				continue;
+
+			algorithm.setCommunity(n, label);
+			algorithm.setScore(n, step.scoreOf(u));
+			algorithm.updateDisplayClass(n);
+		}
+	}
+
+	/**
+	 * Apply the choices of the last computation, one node after the other in
+	 * the specified order.
+	 * 
+	 * @param step
+	 *            the step
+	 * @param nodes
+	 *            numbers of the nodes, or null for all the node numbers
+	 * @param count
+	 *            number of nodes
+	 */
+	protected void applyChoices(SynchronousStep step, int[] nodes, int count) {
+		NeighborhoodIndex index = algorithm.getNeighborhoodIndex();
+
+		/*
+		 * Resolve the labels of the chosen communities before applying any
+		 * choice, as applying them releases the ids of the communities that
+		 * become empty
+		 */
+		CommunityIds ids = algorithm.getCommunityHistograms()
+				.getCommunityIds();
+		Object[] labels = new Object[count];
+		for (int i = 0; i < count; i++) {
+			int u = nodes == null ? i : nodes[i];
+			if (step.choiceOf(u) >= 0)
+				labels[i] = ids.labelOf(step.choiceOf(u));
+		}
+
+		for (int i = 0; i < count; i++) {
+			int u = nodes == null ? i : nodes[i];
+			String id = index.idOf(u);
+			Node n = id == null ? null : algorithm.graph.<Node> getNode(id);
+			if (n == null)
+				continue;
+
+			if (step.choiceOf(u) == SynchronousStep.ORIGINATE)
+				algorithm.originateCommunity(n);
+			else if (labels[i] != null) {
+				algorithm.setCommunity(n, labels[i]);
+				algorithm.setScore(n, step.scoreOf(u));
+			}
+			algorithm.updateDisplayClass(n);
+		}
+	}
+
+	/**
+	 * Get the distance-2 coloring of the graph, building it if needed.
+	 * 
+	 * @return the coloring
+	 */
+	protected DistanceTwoColoring getColoring() {
+		if (coloring == null)
+			coloring = new DistanceTwoColoring(algorithm.getNeighborhoodIndex());
+		return coloring;
+	}
+
+	/**
+	 * Get the connected components of the graph, building them if needed.
+	 * 
+	 * @return the components
+	 */
+	protected ComponentIndex getComponents() {
+		if (components == null)
+			components = new ComponentIndex(algorithm.getNeighborhoodIndex());
+		return components;
+	}
+
+	/**
+	 * Get the buffers of the steps, creating them with a seed drawn from the
+	 * random generator of the algorithm if needed.
+	 * 
+	 * @return the step
+	 */
+	public SynchronousStep getStep() {
+		if (step == null && asynchronousSweeps > 0
+				&& !algorithm.keepsNodeState())
+			step = new AsynchronousStep(algorithm, parallelism,
+					asynchronousStaleness, algorithm.rng.nextLong());
+		else if (step == null && componentSharding)
+			step = new ShardedStep(algorithm, parallelism, algorithm.rng
+					.nextLong());
+		else if (step == null)
+			step = new SynchronousStep(algorithm, parallelism, algorithm.rng
+					.nextLong());
+		step.setNodeStreams(algorithm.nodeStreams);
+		return step;
+	}
+
+	/**
+	 * Get the asynchronous step, e.g. to read its staleness counters.
+	 * 
+	 * @return the asynchronous step, or null if the steps are not
+	 *         asynchronous, are made of colored sweeps as the algorithm keeps
+	 *         a state per node, or none was computed yet
+	 */
+	public AsynchronousStep getAsynchronousStep() {
+		if (step instanceof AsynchronousStep)
+			return (AsynchronousStep) step;
+		return null;
+	}
+
+	/**
+	 * Record that an edge was added to the neighborhood index.
+	 * 
+	 * @param u
+	 *            number of an endpoint
+	 * @param v
+	 *            number of the other endpoint
+	 */
+	public void edgeAdded(int u, int v) {
+		if (coloring != null)
+			coloring.edgeAdded(u, v);
+		if (components != null)
+			components.edgeAdded(u, v);
+	}
+
+	/**
+	 * Record that the neighborhood of a node changed, so that its component
+	 * may have been disconnected.
+	 * 
+	 * @param u
+	 *            number of the node, ignored if negative
+	 */
+	public void neighborhoodChanged(int u) {
+		if (components != null)
+			components.neighborhoodChanged(u);
+	}
+
+	/**
+	 * Whether the endpoints of the removed edges have to be reported, i.e.
+	 * the components are maintained.
+	 * 
+	 * @return true if {@link #neighborhoodChanged(int)} needs the endpoints
+	 */
+	public boolean needsEndpoints() {
+		return components != null;
+	}
+
+	/**
+	 * Forget a node that is about to be removed from the neighborhood index.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void remove(int u) {
+		if (coloring != null)
+			coloring.remove(u);
+		if (components != null)
+			components.remove(u);
+	}
+
+	/**
+	 * Forget the coloring and the components, once the graph is cleared.
+	 */
+	public void clear() {
+		coloring = null;
+		components = null;
+	}
+
+	/**
+	 * Stop the threads of the steps and forget the coloring and the
+	 * components, the configuration being kept for the next step.
+	 */
+	public void shutdown() {
+		if (step != null)
+			step.shutdown();
+		step = null;
+		clear();
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+
+/**
+ * Residual-priority scheduler for the asynchronous computation of the nodes,
+ * in the spirit of delta-based PageRank. The residual of a node bounds how
+ * much the margin of its current community over the best other community
+ * changed since the node was last evaluated. A node is only queued once its
+ * residual reaches its margin, i.e. once its best community may have
+ * changed, and the queued nodes are served by decreasing residual.
+ * 
+ * Nodes are identified by their number in the neighborhood index. The queue
+ * is an indexed binary heap, so that increasing the residual of a queued
+ * node costs O(log n).
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ResidualScheduler {
+
+	/**
+	 * Residual of each node
+	 */
+	protected double[] residuals = new double[16];
+
+	/**
+	 * Margin of the community of each node at its last evaluation
+	 */
+	protected double[] margins = new double[16];
+
+	/**
+	 * Position of each node in the heap, -1 if the node is not queued
+	 */
+	protected int[] positions = new int[16];
+
+	/**
+	 * Heap of the queued nodes, by decreasing residual
+	 */
+	protected int[] heap = new int[16];
+
+	/**
+	 * Number of queued nodes
+	 */
+	protected int size;
+
+	/**
+	 * New empty scheduler.
+	 */
+	public ResidualScheduler() {
+		clear();
+	}
+
+	/**
+	 * Remove all the nodes and forget their residuals and margins.
+	 */
+	public void clear() {
+		Arrays.fill(residuals, 0.0);
+		Arrays.fill(margins, 0.0);
+		Arrays.fill(positions, -1);
+		size = 0;
+	}
+
+	/**
+	 * Number of queued nodes.
+	 * 
+	 * @return the queue size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Residual of a node.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the residual of the node, 0 if it is up to date
+	 */
+	public double residual(int u) {
+		return u < residuals.length ? residuals[u] : 0.0;
+	}
+
+	/**
+	 * Whether a node is queued.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return true if the node has to be evaluated
+	 */
+	public boolean contains(int u) {
+		return u >= 0 && u < positions.length && positions[u] >= 0;
+	}
+
+	/**
+	 * Increase the residual of a node, queuing it if the residual reaches the
+	 * margin of its community.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param delta
+	 *            bound on the variation of the margin, non negative
+	 * @complexity O(log n) where n is the number of queued nodes
+	 */
+	public void push(int u, double delta) {
+		if (u < 0)
+			return;
+		ensure(u);
+		residuals[u] += delta;
+		if (positions[u] >= 0)
+			up(positions[u]);
+		else if (residuals[u] >= margins[u]) {
+			if (size == heap.length)
+				heap = Arrays.copyOf(heap, 2 * size);
+			heap[size] = u;
+			positions[u] = size;
+			up(size++);
+		}
+	}
+
+	/**
+	 * Queue a node whatever its margin, with an infinite residual, e.g.
+	 * because its neighborhood changed or it was never evaluated.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void invalidate(int u) {
+		push(u, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Remove the node with the highest residual from the queue.
+	 * 
+	 * @return the number of the node, -1 if the queue is empty
+	 * @complexity O(log n) where n is the number of queued nodes
+	 */
+	public int poll() {
+		if (size == 0)
+			return -1;
+		int u = heap[0];
+		remove(u);
+		return u;
+	}
+
+	/**
+	 * Record the evaluation of a node, resetting its residual.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @param margin
+	 *            score of the community of the node minus the score of the
+	 *            best other community, 0 to queue the node on any change
+	 */
+	public void evaluated(int u, double margin) {
+		ensure(u);
+		remove(u);
+		residuals[u] = 0.0;
+		margins[u] = margin;
+	}
+
+	/**
+	 * Forget a removed node, whose number may be reused.
+	 * 
+	 * @param u
+	 *            number of the node
+	 */
+	public void forget(int u) {
+		if (u < 0 || u >= positions.length)
+			return;
+		remove(u);
+		residuals[u] = 0.0;
+		margins[u] = 0.0;
+	}
+
+	protected void remove(int u) {
+		int i = positions[u];
+		if (i < 0)
+			return;
+		positions[u] = -1;
+		size--;
+		if (i < size) {
+			int last = heap[size];
+			heap[i] = last;
+			positions[last] = i;
+			up(i);
+			down(positions[last]);
+		}
+	}
+
+	protected void up(int i) {
+		int u = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (residuals[heap[parent]] >= residuals[u])
+				break;
+			heap[i] = heap[parent];
+			positions[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = u;
+		positions[u] = i;
+	}
+
+	protected void down(int i) {
+		int u = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size
+					&& residuals[heap[child + 1]] > residuals[heap[child]])
+				child++;
+			if (residuals[heap[child]] <= residuals[u])
+				break;
+			heap[i] = heap[child];
+			positions[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = u;
+		positions[u] = i;
+	}
+
+	protected void ensure(int u) {
+		if (u >= positions.length) {
+			int length = positions.length;
+			int capacity = Math.max(2 * length, u + 1);
+			residuals = Arrays.copyOf(residuals, capacity);
+			margins = Arrays.copyOf(margins, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			Arrays.fill(positions, length, capacity, -1);
+		}
+	}
+}
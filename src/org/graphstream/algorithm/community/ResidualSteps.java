@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Driver of the residual steps of {@link Sharc}, computing the nodes
+ * asynchronously by decreasing residual rather than all of them at each step.
+ * The residual of a node grows by twice its similarity with each neighbor
+ * that changes community, which bounds the variation of the margin of its
+ * community over the best other one, and a node is only computed once its
+ * residual reaches that margin. The queue of the nodes is kept by the
+ * algorithm, which raises the residuals as the graph and label events arrive.
+ * The driver of an algorithm is given by {@link Sharc#getResidualSteps()}.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ResidualSteps {
+
+	/**
+	 * Algorithm whose nodes are computed
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * New residual steps of an algorithm.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 */
+	public ResidualSteps(Sharc algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Compute the nodes by decreasing residual, until no node may change
+	 * community anymore or the budget is exhausted. Nodes whose neighborhood
+	 * changed are computed whatever their margin.
+	 * 
+	 * The first call computes all the nodes, in random order. A call counts
+	 * as one step for the convergence monitor.
+	 * 
+	 * @param budget
+	 *            maximum number of node computations, 0 for no limit
+	 * @return the number of node computations performed
+	 * @complexity O(c (DELTA + log n)) where c is the number of node
+	 *             computations, DELTA is the average node degree and n the
+	 *             number of nodes in the network
+	 */
+	public int compute(int budget) {
+		final Sharc algo = algorithm;
+		NeighborhoodIndex index = algo.getNeighborhoodIndex();
+		CommunityHistograms histograms = algo.getCommunityHistograms();
+		ResidualScheduler scheduler = getScheduler();
+		ConvergenceMonitor monitor = algo.getConvergence();
+		String scoreMarker = algo.getScoreMarker();
+
+		int computed = 0;
+		monitor.beginStep();
+		while (budget <= 0 || computed < budget) {
+			int un = scheduler.poll();
+			if (un < 0)
+				break;
+			String id = index.idOf(un);
+			Node u = id == null ? null : algo.graph.<Node> getNode(id);
+			if (u == null) {
+				scheduler.forget(un);
+				continue;
+			}
+
+			algo.computeNode(u);
+			algo.updateDisplayClass(u);
+			scheduler.evaluated(un, margin(u));
+			computed++;
+
+			Object score = u.getAttribute(scoreMarker);
+			monitor.observe(un, histograms.communityOf(un),
+					score instanceof Number ? ((Number) score).doubleValue()
+							: Double.NaN);
+		}
+		monitor.endStep();
+		algo.stepCompleted();
+		return computed;
+	}
+
+	/**
+	 * Number of nodes waiting to be computed by {@link #compute(int)}.
+	 * 
+	 * @return the number of queued nodes, 0 once the assignment is stable
+	 */
+	public int getPendingNodes() {
+		return getScheduler().size();
+	}
+
+	/**
+	 * Get the residual scheduler of the algorithm, creating it if needed with
+	 * all the nodes queued in random order.
+	 * 
+	 * @return the residual scheduler
+	 */
+	protected ResidualScheduler getScheduler() {
+		final Sharc algo = algorithm;
+		if (algo.residuals == null) {
+			NeighborhoodIndex index = algo.getNeighborhoodIndex();
+			ArrayList<Node> nodes = algo.activeNodes;
+			algo.residuals = new ResidualScheduler();
+			nodes.clear();
+			for (Node u : algo.graph)
+				nodes.add(u);
+			Collections.shuffle(nodes, algo.rng);
+			for (Node u : nodes)
+				algo.residuals.invalidate(index.number(u.getId()));
+		}
+		return algo.residuals;
+	}
+
+	/**
+	 * Margin of the community of a node that has just been computed over the
+	 * best other community, from the scores of the assignment. Weighted
+	 * similarities and the fallback to the counts are not bounded by the
+	 * residuals, in which case the margin is 0.
+	 * 
+	 * @param u
+	 *            the node
+	 * @return the score of the community of the node minus the best score of
+	 *         the other communities, 0 if unknown
+	 */
+	protected double margin(Node u) {
+		if (!algorithm.usesPlainSimilarity())
+			return 0.0;
+
+		CommunityBuckets scores = algorithm.communityBuckets(u);
+		int community = algorithm.community(u);
+		if (community < 0 || !scores.contains(community))
+			return 0.0;
+
+		double other = 0.0;
+		for (int slot = 0; slot < scores.slots(); slot++)
+			if (scores.key(slot) >= 0 && scores.key(slot) != community
+					&& scores.sumAt(slot) > other)
+				other = scores.sumAt(slot);
+		return Math.max(0.0, scores.sum(community) - other);
+	}
+}
@@ -3,9 +3,9 @@
  */
 package org.graphstream.algorithm.community;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Random;
 
-import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 
@@ -15,6 +15,17 @@ import org.graphstream.graph.Node;
  */
 public class SandSharc extends DynSharc {
 
+	/**
+	 * Positions in the neighborhood scan of the candidates of the originator
+	 * token random walk, reused from one node to the next
+	 */
+	protected int[] walkCandidates = new int[16];
+
+	/**
+	 * Prefix sums of the scores of the candidates of the random walk
+	 */
+	protected double[] walkPrefixes = new double[16];
+
 	/**
 	 * 
 	 */
@@ -61,40 +72,57 @@ public class SandSharc extends DynSharc {
 		super(graph, stallingThreshold, breakPeriod);
 	}
 
-	protected void updateOriginator(Node u, Object previousCommunity) {
+	protected void updateOriginator(Node u, int previousCommunity) {
+		NodeStateTable state = getNodeStates();
+		int un = state.number(u);
+
 		/*
 		 * Current node has originator token
 		 */
-		if (u.hasAttribute(marker + ".originator")
-				&& !u.hasAttribute(marker + ".new_originator")) {
+		if (state.has(un, NodeStateTable.ORIGINATOR)
+				&& !state.has(un, NodeStateTable.NEW_ORIGINATOR)) {
 
 			/*
 			 * Originator stayed in the same community: Make the originator
 			 * token wander using a "local optimum favored" weighted random
 			 * walk.
 			 */
-			if (previousCommunity != null
-					&& previousCommunity.equals(u.getAttribute(marker))) {
+			int community = community(u);
+			if (previousCommunity >= 0 && previousCommunity == community) {
 
-				double score = u.getNumber(marker + ".score");
+				double score = state.get(un, NodeStateTable.SCORE);
 				double max = Double.NEGATIVE_INFINITY;
-				HashMap<Node, Double> scores = new HashMap<Node, Double>();
+				int candidates = 0;
 				double total = 0;
+				Object originatorFrom = state.getObject(un,
+						NodeStateTable.ORIGINATOR_FROM);
+				NodeStateTable peers = getPeerStates();
 
 				/*
 				 * Search for the maximum neighboring score in the same
-				 * community update total at the same time
+				 * community update total at the same time, and record the
+				 * candidates with the prefix sums of their scores in neighbor
+				 * order
 				 */
-				for (Edge e : u.getEnteringEdgeSet()) {
-					Node v = e.getOpposite(u);
-					if (v.hasAttribute(marker)
-							&& v.<Object> getAttribute(marker).equals(
-									u.<Object> getAttribute(marker))
-							&& v.getId() != u.getAttribute(marker + ".originator_from")) {
-						scores.put(v, v.getNumber(marker + ".score"));
-						total += v.getNumber(marker + ".score");
-						if (v.getNumber(marker + ".score") > max)
-							max = v.getNumber(marker + ".score");
+				NeighborScan neighbors = scanNeighbors(u);
+				for (int i = 0; i < neighbors.size(); i++) {
+					if (neighbors.community(i) == community
+							&& !neighbors.node(i).getId().equals(
+									originatorFrom)) {
+						double vScore = peers.get(neighbors.number(i),
+								NodeStateTable.SCORE);
+						total += vScore;
+						if (candidates == walkCandidates.length) {
+							walkCandidates = Arrays.copyOf(walkCandidates,
+									2 * candidates);
+							walkPrefixes = Arrays.copyOf(walkPrefixes,
+									2 * candidates);
+						}
+						walkCandidates[candidates] = i;
+						walkPrefixes[candidates] = total;
+						candidates++;
+						if (vScore > max)
+							max = vScore;
 					}
 				}
 
@@ -103,27 +131,36 @@ public class SandSharc extends DynSharc {
 				 * only with a given probability. Otherwise token is passed
 				 * using weighted random walk
 				 */
-				if (max > score || rng.nextDouble() < (max / score)) {
+				Random walk = nodeRandom(u);
+				if (max > score || walk.nextDouble() < (max / score)) {
 
-					double random = rng.nextDouble() * total;
+					double random = walk.nextDouble() * total;
 					Node originator = null;
-					for (Node v : scores.keySet()) {
-						if (random <= scores.get(v) &&
-							v.getId() != u.getAttribute(marker + ".originator_from")) {
-								originator = v;
-						} else {
-							random -= scores.get(v);
+					if (candidates > 0) {
+						/*
+						 * First candidate whose prefix sum reaches the random
+						 * value
+						 */
+						int low = 0, high = candidates - 1;
+						while (low < high) {
+							int middle = (low + high) >>> 1;
+							if (walkPrefixes[middle] >= random)
+								high = middle;
+							else
+								low = middle + 1;
 						}
+						originator = neighbors.node(walkCandidates[low]);
 					}
 
 					if (originator != null) {
-						u.removeAttribute(marker + ".originator");
-						u.removeAttribute(marker + ".originator_from");
-						
-						originator.setAttribute(marker + ".originator", true);
-						originator.setAttribute(marker + ".new_originator",
-								true);
-						originator.setAttribute(marker + ".originator_from", u.getId());
+						int on = state.number(originator);
+						state.set(on, NodeStateTable.ORIGINATOR, 1);
+						state.set(on, NodeStateTable.NEW_ORIGINATOR, 1);
+						state.setObject(on, NodeStateTable.ORIGINATOR_FROM, u
+								.getId());
+
+						state.remove(un, NodeStateTable.ORIGINATOR);
+						state.remove(un, NodeStateTable.ORIGINATOR_FROM);
 					}
 				}
 			}
@@ -134,20 +171,21 @@ public class SandSharc extends DynSharc {
 			 * score
 			 */
 			else {
-				u.removeAttribute(marker + ".originator");
-				u.removeAttribute(marker + ".originator_from");
+				state.remove(un, NodeStateTable.ORIGINATOR);
+				state.remove(un, NodeStateTable.ORIGINATOR_FROM);
 
 				double score = Double.NEGATIVE_INFINITY;
 				Node originator = null;
-				for (Edge e : u.getEnteringEdgeSet()) {
-					Node v = e.getOpposite(u);
-					if (v.hasAttribute(marker)
-							&& v.<Object> getAttribute(marker).equals(
-									previousCommunity)
-							&& v.hasAttribute(marker + ".score")
-							&& v.getNumber(marker + ".score") > score) {
-						score = v.getNumber(marker + ".score");
-						originator = v;
+				NodeStateTable peers = getPeerStates();
+				NeighborScan neighbors = scanNeighbors(u);
+				for (int i = 0; i < neighbors.size(); i++) {
+					int vn = neighbors.number(i);
+					if (previousCommunity >= 0
+							&& neighbors.community(i) == previousCommunity
+							&& peers.has(vn, NodeStateTable.SCORE)
+							&& peers.get(vn, NodeStateTable.SCORE) > score) {
+						score = peers.get(vn, NodeStateTable.SCORE);
+						originator = neighbors.node(i);
 					}
 				}
 
@@ -155,8 +193,9 @@ public class SandSharc extends DynSharc {
 				 * A neighbor is found
 				 */
 				if (originator != null) {
-					originator.setAttribute(marker + ".originator", true);
-					originator.setAttribute(marker + ".new_originator", true);
+					int on = state.number(originator);
+					state.set(on, NodeStateTable.ORIGINATOR, 1);
+					state.set(on, NodeStateTable.NEW_ORIGINATOR, 1);
 				}
 			}
 		}
@@ -164,8 +203,7 @@ public class SandSharc extends DynSharc {
 		/*
 		 * The node has been processed, so it can't be a new originator
 		 */
-		if (u.hasAttribute(marker + ".new_originator"))
-			u.removeAttribute(marker + ".new_originator");
+		state.remove(un, NodeStateTable.NEW_ORIGINATOR);
 	}
 
 }
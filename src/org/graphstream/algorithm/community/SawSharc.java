@@ -17,9 +17,7 @@
  */
 package org.graphstream.algorithm.community;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
@@ -44,9 +42,23 @@ public class SawSharc extends Sharc {
 	protected String weightMarker = "weight";
 
 	/**
-	 * Cumulative distribution function of the links stability estimates.
+	 * Cumulative distribution function of the links stability estimates: the
+	 * weights of the links of the current node, in increasing order. The
+	 * array is reused from one node to the next.
 	 */
-	protected ArrayList<Double> cdf;
+	protected double[] cdf = new double[16];
+
+	/**
+	 * Number of weights in the cumulative distribution function
+	 */
+	protected int cdfSize = 0;
+
+	/**
+	 * Number of the current node in the neighborhood index when its
+	 * cumulative distribution function is read from the sorted weights kept
+	 * by the index, -1 when it is built by {@link #constructCdf(Node)}
+	 */
+	protected int cdfNode = -1;
 
 	/**
 	 * New instance of the SAw-SHARC community detection algorithm, not attached
@@ -102,9 +114,16 @@ public class SawSharc extends Sharc {
 	@Override
 	public void computeNode(Node u) {
 		/*
-		 * First construct the cdf based on link weights
+		 * First construct the cdf based on link weights, unless the
+		 * neighborhood index keeps them sorted
 		 */
-		constructCdf(u);
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		if (index.isExact())
+			cdfNode = index.number(u.getId());
+		else {
+			cdfNode = -1;
+			constructCdf(u);
+		}
 
 		/*
 		 * Then perform the assignment
@@ -124,31 +143,65 @@ public class SawSharc extends Sharc {
 	 *             network
 	 */
 	@Override
-	protected Double similarity(Node a, Node b) {
-		Double sim;
+	protected double similarityValue(Node a, Node b) {
+		double sim;
 
 		// Linear to "forced-NO"
 		if (!forcedYes) {
-			sim = Math.pow(super.similarity(a, b), (1.0 / cdfValue(a, b)));
+			sim = Math.pow(super.similarityValue(a, b),
+					(1.0 / cdfPosition(a, b)));
 		}
 		// "Forced-YES" to "forced-NO"
 		else {
-			sim = Math
-					.pow(super.similarity(a, b), (1.0 / cdfValue(a, b)) - 1.0);
+			sim = Math.pow(super.similarityValue(a, b),
+					(1.0 / cdfPosition(a, b)) - 1.0);
 		}
 
 //		System.out.println(a.getId() + " " + b.getId() + " " + "sim: "
-//				+ super.similarity(a, b) + " wsim: " + sim);
+//				+ super.similarityValue(a, b) + " wsim: " + sim);
 		return sim;
 	}
 
+	/**
+	 * Neighborhood weighted similarity between two nodes given by number, the
+	 * position of their link being read from the sorted weights kept by the
+	 * index.
+	 */
+	@Override
+	protected double similarityValue(NeighborhoodIndex index, int a, int b) {
+		if (!forcedYes)
+			return Math.pow(super.similarityValue(index, a, b),
+					(1.0 / cdfPosition(index, a, b)));
+		else
+			return Math.pow(super.similarityValue(index, a, b),
+					(1.0 / cdfPosition(index, a, b)) - 1.0);
+	}
+
+	/**
+	 * Link weights are kept by the neighborhood index.
+	 */
+	@Override
+	protected String getIndexedWeightMarker() {
+		return weightMarker;
+	}
+
+	/**
+	 * Weighted similarity can not be read from the community histograms.
+	 */
+	@Override
+	protected boolean usesPlainSimilarity() {
+		return false;
+	}
+
 	protected void constructCdf(Node u) {
-		cdf = new ArrayList<Double>();
+		cdfSize = 0;
 
-		Double maxWeight = 0.0;
+		double maxWeight = 0.0;
 		for (Edge e : u.getEnteringEdgeSet()) {
-			Double weight = getWeightInLinkFrom(u, e.getOpposite(u));
-			cdf.add(weight);
+			double weight = weightInLinkFrom(u, e.getOpposite(u));
+			if (cdfSize == cdf.length)
+				cdf = Arrays.copyOf(cdf, 2 * cdfSize);
+			cdf[cdfSize++] = weight;
 			if (weight > maxWeight) {
 				maxWeight = weight;
 			}
@@ -156,38 +209,133 @@ public class SawSharc extends Sharc {
 
 		// Do this only if Forced-YES method is used in similarity
 		if (maxWeight == 0.0 && forcedYes) {
-			cdf.clear();
-			cdf.add(1.0);
-			cdf.add(0.0);
+			cdf[0] = 1.0;
+			cdf[1] = 0.0;
+			cdfSize = 2;
 		}
 
-		Collections.sort(cdf);
-		Collections.reverse(cdf);
+		Arrays.sort(cdf, 0, cdfSize);
 
-		//System.out.println(u.getId() + " " + cdf.toString());
+		//System.out.println(u.getId() + " " + Arrays.toString(cdf));
 	}
 
+	/**
+	 * Position of the link from b to a on the cumulative distribution function
+	 * of the links of a, boxed.
+	 * 
+	 * @see #cdfPosition(Node, Node)
+	 */
 	protected Double cdfValue(Node a, Node b) {
+		return cdfPosition(a, b);
+	}
+
+	/**
+	 * Position of the link from b to a on the cumulative distribution function
+	 * of the links of a, read from the index or built by
+	 * {@link #constructCdf(Node)}.
+	 * 
+	 * @param a
+	 *            The node receiving the link
+	 * @param b
+	 *            The node emitting the link
+	 * @return the fraction of the links of a that are not heavier than the
+	 *         link from b
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	protected double cdfPosition(Node a, Node b) {
+		if (cdfNode >= 0) {
+			NeighborhoodIndex index = getNeighborhoodIndex();
+			return cdfPosition(index, cdfNode, index.indexOf(b.getId()));
+		}
+
 		/*
-		 * Search for the number of links of lower value
+		 * Search for the number of links of lower value, i.e. the first
+		 * weight above the link weight
 		 */
-		int lighterLinks = 0;
-		Iterator<Double> i = cdf.iterator();
-		while (i.hasNext() && i.next() > getWeightInLinkFrom(a, b)) {
-			lighterLinks++;
+		double weight = weightInLinkFrom(a, b);
+		int low = 0, high = cdfSize;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cdf[middle] > weight)
+				high = middle;
+			else
+				low = middle + 1;
 		}
+		int size = cdfSize;
+		int lighterLinks = cdfSize - low;
 
 		/*
 		 * CDF value based on the position on the CDF
 		 */
-		Double val = (new Double(cdf.size()) - new Double(lighterLinks))
-				/ (new Double(cdf.size()));
+		double val = ((double) (size - lighterLinks)) / size;
 		//System.out.println(a.getId() + " " + b.getId() + " " + "val: " + val);
 		return val;
 	}
 
+	/**
+	 * Position of the link from b to a on the cumulative distribution function
+	 * of the links of a, read from the sorted weights kept by the index.
+	 * 
+	 * @param index
+	 *            exact neighborhood index keeping the link weights
+	 * @param a
+	 *            number of the node receiving the link
+	 * @param b
+	 *            number of the node emitting the link
+	 * @return the fraction of the links of a that are not heavier than the
+	 *         link from b
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	protected double cdfPosition(NeighborhoodIndex index, int a, int b) {
+		double weight = index.weight(a, b);
+		int size;
+		int lighterLinks;
+
+		/*
+		 * Rank of the weight among the sorted weights kept by the index,
+		 * unless Forced-YES replaces a cdf of null weights
+		 */
+		if (forcedYes && !(index.maxWeight(a) > 0.0)) {
+			size = 2;
+			lighterLinks = (1.0 > weight ? 1 : 0) + (0.0 > weight ? 1 : 0);
+		} else {
+			size = index.degree(a);
+			lighterLinks = index.heavierLinks(a, weight);
+		}
+		return ((double) (size - lighterLinks)) / size;
+	}
+
+	/**
+	 * Weight of the link from b to a, boxed.
+	 * 
+	 * @see #weightInLinkFrom(Node, Node)
+	 */
 	protected Double getWeightInLinkFrom(Node a, Node b) {
-		Double weight = 0.0;
+		return weightInLinkFrom(a, b);
+	}
+
+	/**
+	 * Weight of the link from b to a.
+	 * 
+	 * @param a
+	 *            The node receiving the link
+	 * @param b
+	 *            The node emitting the link
+	 * @return The weight of the link, 0 if there is no such link or if it has
+	 *         no weight
+	 */
+	protected double weightInLinkFrom(Node a, Node b) {
+		/*
+		 * Use the weights kept by the neighborhood index whenever it reflects
+		 * the graph exactly
+		 */
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		if (index.isExact())
+			return index.weight(a.getId(), b.getId());
+
+		double weight = 0.0;
 		if (a.hasEdgeFrom(b.getId())
 				&& a.<Edge>getEdgeFrom(b.getId()).hasAttribute(weightMarker)) {
 			weight = (Double) a.<Edge>getEdgeFrom(b.getId()).getAttribute(
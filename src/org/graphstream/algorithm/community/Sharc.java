@@ -30,11 +30,165 @@ import org.graphstream.graph.*;
  *            <i>IEEE WoWMoM 2010 (IEEE WoWMoM 2010)</i>, Montreal, Canada, 6
  *            2010.
  * 
+ * The similarities are read from an index of the graph structure, kept up
+ * to date from the graph events the algorithm receives. The algorithm must
+ * therefore be a sink of the graph it runs on, i.e.
+ * <code>graph.addSink(algorithm)</code>, so that it receives each addition
+ * once the element is in the graph, and each removal before the element
+ * leaves it. At each step, an index that missed some events, as told by a
+ * number of edges that differs from the one of the graph, is brought up to
+ * date from the graph.
+ * 
  * @author Guillaume-Jean Herbiet
  * 
  */
 public class Sharc extends EpidemicCommunityAlgorithm {
-	protected HashMap<Object, Double> communityCounts;
+
+	/**
+	 * Buckets reused to accumulate the weighted scores of the current node by
+	 * community id
+	 */
+	protected CommunityBuckets scratch = new CommunityBuckets();
+
+	/**
+	 * Neighborhood of the node being computed, gathered once per step
+	 */
+	protected NeighborScan scan = new NeighborScan(this);
+
+	/**
+	 * Neighborhood of the node being computed when it was gathered ahead of
+	 * the computation by a parallel step, null otherwise
+	 */
+	protected NeighborScan prepared;
+
+	/**
+	 * Name of the score attribute, and the community marker it was built
+	 * from, so that it is not concatenated again for each node
+	 */
+	protected String scoreMarker;
+	protected String scoreMarkerBase;
+
+	/**
+	 * Incremental index of common neighbors, used to compute the similarity
+	 * between neighbors in constant time. Built on first use and then kept up
+	 * to date from the graph events.
+	 */
+	protected NeighborhoodIndex neighborhood;
+
+	/**
+	 * Live histograms of the communities heard by each node, built on first
+	 * use on top of the neighborhood index.
+	 */
+	protected CommunityHistograms histograms;
+
+	/**
+	 * Group of runs sharing the neighborhood index with this one, or null if
+	 * the index belongs to this run
+	 */
+	protected SharcLanes lanes;
+
+	/**
+	 * Listeners notified of the community changes at the end of each step
+	 */
+	protected ArrayList<CommunityChangeListener> changeListeners =
+			new ArrayList<CommunityChangeListener>();
+
+	/**
+	 * Community changes of the step in progress, recorded once a listener
+	 * is registered
+	 */
+	protected CommunityChangeSet changes;
+
+	/**
+	 * Whether the per-node state is only written to the node attributes on
+	 * request, consumers relying on the change sets instead
+	 */
+	protected boolean batchedNotification;
+
+	/**
+	 * Driver of the synchronous, colored, asynchronous or sharded steps, null
+	 * to compute the nodes one after the other in place (default)
+	 */
+	protected ParallelSteps parallel;
+
+	/**
+	 * Whether the random draws of each node come from its own stream, keyed
+	 * by the node and the step, rather than from the shared generator
+	 */
+	protected boolean nodeStreams;
+
+	/**
+	 * Streams of the nodes, seeded from the shared generator on first use
+	 */
+	protected NodeRandom nodeRandom;
+
+	/**
+	 * Number of steps completed so far
+	 */
+	protected int stepCount;
+
+	/**
+	 * Whether the neighborhood index keeps bitsets of the neighborhoods: true
+	 * or false to force the representation, null to choose it from the graph
+	 * density when the index is built.
+	 */
+	protected Boolean denseNeighborhoods;
+
+	/**
+	 * Degree from which similarities are estimated from MinHash signatures,
+	 * 0 to always compute them exactly (default)
+	 */
+	protected int hubDegree;
+
+	/**
+	 * Number of hash functions of the MinHash signatures
+	 */
+	protected int signatureSize;
+
+	/**
+	 * Label changes and score variations observed at each step, built on
+	 * first use
+	 */
+	protected ConvergenceMonitor convergence;
+
+	/**
+	 * Number of steps without change (or repeating the same period) after
+	 * which the assignment is considered as converged
+	 */
+	protected int convergenceSteps = 5;
+
+	/**
+	 * Maximum oscillation period that is detected
+	 */
+	protected int convergencePeriod = 4;
+
+	/**
+	 * Nodes to compute at the next step when active scheduling is enabled,
+	 * built on first use
+	 */
+	protected ActiveSet frontier;
+
+	/**
+	 * Nodes computed during the last step, reused from one step to the next
+	 */
+	protected ArrayList<Node> activeNodes = new ArrayList<Node>();
+
+	/**
+	 * Queue of the nodes to compute by decreasing residual, built on the
+	 * first residual step
+	 */
+	protected ResidualScheduler residuals;
+
+	/**
+	 * Driver of the active steps, with their deadline and micro-batches,
+	 * built on first use
+	 */
+	protected ActiveSteps active;
+
+	/**
+	 * Driver of the residual steps, built on first use
+	 */
+	protected ResidualSteps residualSteps;
 
 	/**
 	 * New instance of the SHARC community detection algorithm, not attached to
@@ -69,85 +223,793 @@ public class Sharc extends EpidemicCommunityAlgorithm {
 		super(graph);
 	}
 
+	@Override
+	public void init(Graph graph) {
+		super.init(graph);
+		stopSynchronous();
+		neighborhood = null;
+		histograms = null;
+		convergence = null;
+		frontier = null;
+		residuals = null;
+	}
+
+	@Override
+	public void terminate() {
+		super.terminate();
+		stopSynchronous();
+		neighborhood = null;
+		histograms = null;
+		convergence = null;
+		frontier = null;
+		residuals = null;
+	}
+
+	@Override
+	public void compute() {
+		checkNeighborhoodIndex();
+		if (parallel != null) {
+			parallel.compute();
+			observeConvergence(graph);
+		} else if (active != null && active.isEnabled()) {
+			getActiveSteps().compute();
+			observeConvergence(activeNodes);
+		} else {
+			super.compute();
+			observeConvergence(graph);
+		}
+		stepCompleted();
+	}
+
+	/**
+	 * End of a step: notify the listeners of the community changes of the
+	 * step.
+	 */
+	protected void stepCompleted() {
+		stepCount++;
+		if (changes == null)
+			return;
+		changes.compact();
+		for (CommunityChangeListener listener : changeListeners)
+			listener.communitiesChanged(changes);
+		changes.nextStep();
+	}
+
+	/**
+	 * Register a listener notified at the end of each step of the nodes whose
+	 * community changed during the step.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addCommunityChangeListener(CommunityChangeListener listener) {
+		if (changes == null)
+			changes = new CommunityChangeSet();
+		changeListeners.add(listener);
+	}
+
+	/**
+	 * Unregister a listener.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeCommunityChangeListener(CommunityChangeListener listener) {
+		changeListeners.remove(listener);
+		if (changeListeners.isEmpty())
+			changes = null;
+	}
+
+	/**
+	 * Stop writing the per-node state of the algorithm (freshness, stalling,
+	 * originator...) to the node attributes at each step, each write firing
+	 * an attribute event to every sink of the graph. Consumers are notified
+	 * of the community changes once per step through the
+	 * {@link CommunityChangeListener}s instead, and the state is written on
+	 * {@link #terminate()} or on request. The community and score
+	 * attributes are still written as nodes are computed.
+	 * 
+	 * @param batched
+	 *            true to write the state on request only, false to write it
+	 *            at each step (default)
+	 */
+	public void setBatchedNotification(boolean batched) {
+		batchedNotification = batched;
+	}
+
+	/**
+	 * Get the asynchronous step, e.g. to read its staleness counters.
+	 * 
+	 * @return the asynchronous step, or null if the steps are not
+	 *         asynchronous or none was computed yet
+	 */
+	public AsynchronousStep getAsynchronousStep() {
+		return parallel == null ? null : parallel.getAsynchronousStep();
+	}
+
+	/**
+	 * Compute the steps synchronously (Jacobi style) on the specified number
+	 * of threads: each node reads the communities of its neighbors at the
+	 * end of the previous step, instead of their communities as already
+	 * updated during the step. The assignment only depends on the seed of
+	 * the algorithm, not on the number of threads. The nodes choose their
+	 * community as {@link #computeNode(Node)} does, from the similarities
+	 * given by {@link #similarityValue(NeighborhoodIndex, int, int)}.
+	 * 
+	 * The variants keeping a state per node (see {@link #keepsNodeState()})
+	 * read the state of their neighbors at the end of the previous step as
+	 * well: the neighborhoods are gathered in parallel, then the nodes are
+	 * computed one after the other in node number order, each one updating
+	 * its own state and handing its tokens over to its neighbors.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 0 to compute the nodes one after the
+	 *            other in place (default)
+	 */
+	public void setSynchronous(int parallelism) {
+		stopSynchronous();
+		parallel = parallelism > 0 ? new ParallelSteps(this, parallelism)
+				: null;
+	}
+
+	/**
+	 * Compute the steps on the specified number of threads, the classes of a
+	 * distance-2 coloring of the graph one after the other: the nodes of a
+	 * class neither are neighbors nor share a neighbor, so that they are
+	 * computed in parallel while each class reads the communities chosen by
+	 * the previous ones, as in place steps do. The coloring is maintained
+	 * incrementally from the graph events. As with
+	 * {@link #setSynchronous(int)}, the assignment does not depend on the
+	 * number of threads.
+	 * 
+	 * For the variants keeping a state per node, the neighborhoods of the
+	 * nodes of a class are gathered in parallel, then the nodes are computed
+	 * one after the other. As the nodes of a class share no neighbor, the
+	 * tokens they hand over never reach a node read by another node of the
+	 * class, and the order of the nodes within the class does not matter.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 0 to compute the nodes one after the
+	 *            other in place (default)
+	 */
+	public void setColoredScheduling(int parallelism) {
+		setSynchronous(parallelism);
+		if (parallel != null)
+			parallel.setColoredScheduling();
+	}
+
+	/**
+	 * Compute the steps asynchronously on the specified number of threads:
+	 * each thread repeatedly sweeps its own block of nodes, reading the
+	 * communities of the neighbors as the other threads write them, with no
+	 * lock and no barrier until the end of the step. A thread may be at most
+	 * the specified number of sweeps ahead of the slowest one, which bounds
+	 * how stale the communities it reads are. This gives the highest
+	 * throughput on large static graphs, at the cost of an assignment that
+	 * depends on the scheduling of the threads.
+	 * 
+	 * The variants keeping a state per node can not update it concurrently:
+	 * their steps are made of sweeps of colored steps instead (see
+	 * {@link #setColoredScheduling(int)}), up to the specified number of
+	 * sweeps and until a sweep changes no community, which read the
+	 * communities with no staleness at all.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 0 to compute the nodes one after the
+	 *            other in place (default)
+	 * @param staleness
+	 *            maximum number of sweeps a thread may be ahead of the
+	 *            slowest one
+	 * @param sweeps
+	 *            maximum number of sweeps of each thread per step
+	 */
+	public void setAsynchronous(int parallelism, int staleness, int sweeps) {
+		setSynchronous(parallelism);
+		if (parallel != null)
+			parallel.setAsynchronous(staleness, sweeps);
+	}
+
+	/**
+	 * Compute the steps on the specified number of threads, the connected
+	 * components of the graph as independent tasks: no community spreads
+	 * across components, so that each component is computed in place with
+	 * no synchronization with the others. The small components are batched
+	 * together, and a giant component holding a large share of the nodes is
+	 * computed by the classes of a distance-2 coloring, as with
+	 * {@link #setColoredScheduling(int)}. The components are maintained
+	 * incrementally from the graph events, which suits fragmented contact
+	 * traces. As with {@link #setSynchronous(int)}, the assignment does not
+	 * depend on the number of threads.
+	 * 
+	 * For the variants keeping a state per node, the small components are
+	 * computed one after the other, and the giant ones by color classes as
+	 * with {@link #setColoredScheduling(int)}.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 0 to compute the nodes one after the
+	 *            other in place (default)
+	 */
+	public void setComponentSharding(int parallelism) {
+		setSynchronous(parallelism);
+		if (parallel != null)
+			parallel.setComponentSharding();
+	}
+
+	/**
+	 * Whether the computation of a node reads and writes a state of the node
+	 * and of its neighbors besides their communities, e.g. the freshness and
+	 * originator tokens of {@link DynSharc}. The parallel steps then only
+	 * gather the neighborhoods in parallel, and compute the nodes one after
+	 * the other. The SHARC assignment has no such state.
+	 * 
+	 * @return false, as the community of a node only depends on the
+	 *         communities of its neighbors
+	 */
+	protected boolean keepsNodeState() {
+		return false;
+	}
+
+	/**
+	 * Read the state of the neighbors from a copy taken now, rather than from
+	 * the live state, until {@link #thawNeighborState()} is called, e.g.
+	 * during a synchronous step. The SHARC assignment has no such state.
+	 */
+	protected void freezeNeighborState() {
+	}
+
+	/**
+	 * Read the live state of the neighbors again.
+	 */
+	protected void thawNeighborState() {
+	}
+
+	/**
+	 * Stop the threads of the parallel steps, keeping their configuration.
+	 */
+	protected void stopSynchronous() {
+		if (parallel != null)
+			parallel.shutdown();
+	}
+
+	/**
+	 * Record that a node of the step was not computed before the deadline.
+	 * Its timers are not advanced for this step, as if it had been asleep.
+	 * The SHARC assignment has no timers.
+	 * 
+	 * @param un
+	 *            number of the node
+	 */
+	protected void deferNode(int un) {
+		frontier.defer(un);
+	}
+
+	/**
+	 * Mark a node that has just been computed for the next step if it has to
+	 * be computed again even if its neighborhood does not change, i.e. if it
+	 * is isolated or has no community.
+	 * 
+	 * @param u
+	 *            the node
+	 * @param un
+	 *            number of the node in the neighborhood index
+	 */
+	protected void schedule(Node u, int un) {
+		if (u.getDegree() == 0 || getCommunityHistograms().communityOf(un) < 0)
+			frontier.mark(un);
+	}
+
+	/**
+	 * Mark a node and all its neighbors for the next step, if active
+	 * scheduling is in progress.
+	 * 
+	 * @param u
+	 *            number of the node in the neighborhood index, ignored if
+	 *            negative
+	 */
+	protected void markNeighborhood(int u) {
+		if (frontier == null || neighborhood == null || u < 0)
+			return;
+		frontier.mark(u);
+		int[] neighbors = neighborhood.neighbors(u);
+		for (int j = 0; j < neighborhood.degree(u); j++)
+			frontier.mark(neighbors[j]);
+	}
+
+	/**
+	 * Record that the similarities of a node with all its neighbors changed,
+	 * so that they are all computed again by both the active and the residual
+	 * schedulers, and that its component may have been disconnected.
+	 * 
+	 * @param u
+	 *            number of the node in the neighborhood index, ignored if
+	 *            negative
+	 */
+	protected void neighborhoodChanged(int u) {
+		markNeighborhood(u);
+		if (parallel != null)
+			parallel.neighborhoodChanged(u);
+		if (residuals == null || neighborhood == null || u < 0)
+			return;
+		residuals.invalidate(u);
+		int[] neighbors = neighborhood.neighbors(u);
+		for (int j = 0; j < neighborhood.degree(u); j++)
+			residuals.invalidate(neighbors[j]);
+	}
+
+	/**
+	 * Record that a node changed community, marking its neighborhood for the
+	 * active scheduler and raising the residuals of its neighbors by twice
+	 * their similarity with it.
+	 * 
+	 * @param v
+	 *            number of the node in the neighborhood index, ignored if
+	 *            negative
+	 */
+	protected void labelChanged(int v) {
+		markNeighborhood(v);
+		if (residuals == null || neighborhood == null || v < 0)
+			return;
+		int[] neighbors = neighborhood.neighbors(v);
+		for (int j = 0; j < neighborhood.degree(v); j++)
+			residuals.push(neighbors[j], 2.0 * neighborhood.similarity(
+					neighbors[j], v));
+	}
+
+	/**
+	 * Write the community of a node, keeping the histograms up to date.
+	 * 
+	 * @param u
+	 *            the node
+	 * @param label
+	 *            new community of the node
+	 */
+	protected void setCommunity(Node u, Object label) {
+		Object previous = u.getAttribute(marker);
+		if (!label.equals(previous))
+			u.setAttribute(marker, label);
+		labelWritten(u.getId(), previous, label);
+	}
+
+	/**
+	 * Bring the community histograms up to date with the community written to
+	 * a node and, if it changed, record the change for the listeners, mark
+	 * its neighborhood for the active scheduler and raise the residuals of
+	 * its neighbors. The algorithm calls it wherever it writes a label, as it is
+	 * not necessarily a sink of the graph it writes to (e.g. when the graph
+	 * and the algorithm both listen to a file source), and the attribute
+	 * events of the label call it again when it is a sink, the second call
+	 * finding the histograms up to date.
+	 * 
+	 * @param nodeId
+	 *            id of the node
+	 * @param previous
+	 *            community of the node before the write, only used when the
+	 *            histograms are not built
+	 * @param label
+	 *            new community of the node, or null if it has none
+	 * @return true if the community of the node changed
+	 */
+	protected boolean labelWritten(String nodeId, Object previous, Object label) {
+		if (histograms != null) {
+			previous = histograms.getCommunityIds().labelOf(
+					histograms.communityOf(nodeId));
+			if (label == null ? previous == null : label.equals(previous))
+				return false;
+			histograms.setLabel(nodeId, label);
+		} else if (label == null ? previous == null : label.equals(previous))
+			return false;
+
+		if (changes != null)
+			changes.record(nodeId, previous, label);
+		if (neighborhood != null)
+			labelChanged(neighborhood.indexOf(nodeId));
+		return true;
+	}
+
+	/**
+	 * Get the active set, creating it if needed, in which case all the nodes
+	 * are computed at the next step.
+	 * 
+	 * @return the active set
+	 */
+	protected ActiveSet getActiveSet() {
+		if (frontier == null)
+			frontier = new ActiveSet();
+		return frontier;
+	}
+
+	/**
+	 * Get the driver of the active steps, creating it if needed, e.g. to
+	 * enable active scheduling, compute steps that stop at a deadline or
+	 * compute the nodes in micro-batches as the graph events arrive.
+	 * 
+	 * @return the active steps
+	 */
+	public ActiveSteps getActiveSteps() {
+		if (active == null)
+			active = new ActiveSteps(this);
+		return active;
+	}
+
+	/**
+	 * Compute the pending nodes if the size or time limit of a micro-batch is
+	 * reached, and if the graph and the neighborhood index agree, i.e. if the
+	 * graph holds the edge of the event being received.
+	 * 
+	 * @param edgeId
+	 *            id of the edge of the event
+	 */
+	protected void flushIfDue(String edgeId) {
+		if (active != null && graph.getEdge(edgeId) != null)
+			active.flushIfDue();
+	}
+
+	/**
+	 * Compute the pending nodes if the size or time limit of a micro-batch is
+	 * reached, and if the graph holds the node of the event being received.
+	 * 
+	 * @param nodeId
+	 *            id of the node of the event
+	 * @see #flushIfDue(String)
+	 */
+	protected void flushNodeIfDue(String nodeId) {
+		if (active != null && graph.getNode(nodeId) != null)
+			active.flushIfDue();
+	}
+
+	/**
+	 * Bring the state of the nodes skipped by active scheduling up to date,
+	 * as if they had been computed at each step. The SHARC assignment has no
+	 * such state.
+	 */
+	protected void synchronizeTimers() {
+	}
+
+	/**
+	 * Report the community and score of the nodes computed during the step to
+	 * the convergence monitor, at the end of the step.
+	 * 
+	 * @param nodes
+	 *            nodes computed during the step
+	 * @complexity O(a) where a is the number of computed nodes
+	 */
+	protected void observeConvergence(Iterable<? extends Node> nodes) {
+		ConvergenceMonitor monitor = getConvergence();
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		CommunityHistograms histograms = getCommunityHistograms();
+		String scoreMarker = getScoreMarker();
+
+		monitor.beginStep();
+		for (Node u : nodes) {
+			int un = index.number(u.getId());
+			Object score = u.getAttribute(scoreMarker);
+			monitor.observe(un, histograms.communityOf(un),
+					score instanceof Number ? ((Number) score).doubleValue()
+							: Double.NaN);
+		}
+		monitor.endStep();
+	}
+
+	/**
+	 * Get the driver of the residual steps, which compute the nodes
+	 * asynchronously by decreasing residual rather than all of them at each
+	 * step.
+	 * 
+	 * @return the residual steps
+	 */
+	public ResidualSteps getResidualSteps() {
+		if (residualSteps == null)
+			residualSteps = new ResidualSteps(this);
+		return residualSteps;
+	}
+
+	/**
+	 * Get the convergence monitor, giving the label changes and score
+	 * variation of the last step, and whether the assignment is stable or
+	 * oscillating.
+	 * 
+	 * @return the convergence monitor
+	 */
+	public ConvergenceMonitor getConvergence() {
+		if (convergence == null)
+			convergence = new ConvergenceMonitor(convergenceSteps,
+					convergencePeriod);
+		return convergence;
+	}
+
+	/**
+	 * Whether the assignment is stable or oscillating, according to the
+	 * convergence criteria.
+	 * 
+	 * @return true if the computation can be stopped
+	 * @see #setConvergenceCriteria(int, int)
+	 */
+	public boolean isConverged() {
+		return getConvergence().isConverged();
+	}
+
+	/**
+	 * Set the convergence criteria, forgetting the steps observed so far.
+	 * 
+	 * @param stableSteps
+	 *            number of steps without change, or repeating the same period,
+	 *            after which the assignment is converged (default 5)
+	 * @param maxPeriod
+	 *            maximum oscillation period that is detected (default 4)
+	 */
+	public void setConvergenceCriteria(int stableSteps, int maxPeriod) {
+		convergenceSteps = stableSteps;
+		convergencePeriod = maxPeriod;
+		convergence = null;
+	}
+
+	/**
+	 * Current assignment of the nodes, e.g. to seed another run on the same
+	 * network with {@link AssignmentSeeding#seed(Map)}.
+	 * 
+	 * @return the community label of each node that has one, by node id
+	 */
+	public HashMap<String, Object> getAssignment() {
+		HashMap<String, Object> labels = new HashMap<String, Object>();
+		for (Node u : graph)
+			if (u.getAttribute(marker) != null)
+				labels.put(u.getId(), u.getAttribute(marker));
+		return labels;
+	}
+
+	/**
+	 * Seeding of the assignment, so that the next steps start from a given
+	 * assignment rather than from self-communities.
+	 * 
+	 * @return the seeding of the assignment
+	 */
+	public AssignmentSeeding getSeeding() {
+		return new AssignmentSeeding(this);
+	}
+
+	/**
+	 * Set up the state of the algorithm after the assignment has been seeded.
+	 * The SHARC assignment has no such state.
+	 */
+	protected void seedState() {
+	}
+
+	/**
+	 * Compute the community of a node as the SHARC assignment does: the
+	 * neighboring community with the highest sum of similarities, ties going
+	 * to the oldest community. As in the original implementation, whose
+	 * fallback to the number of neighbors scored the communities by their
+	 * similarities again, a node with no similar neighbor joins the oldest
+	 * community it hears of. The communities are scored by id in the buckets
+	 * of {@link #communityBuckets(Node)}, and only the chosen one is resolved
+	 * to its label, so that nothing is allocated per node.
+	 */
 	@Override
 	public void computeNode(Node u) {
+		scan.clear();
+		CommunityBuckets scores = communityBuckets(u);
+		CommunityIds ids = getCommunityHistograms().getCommunityIds();
+
 		/*
-		 * Perform standard Sharc assignment
+		 * Ties go to the oldest community, unless the node draws them from
+		 * its own stream
 		 */
-		super.computeNode(u);
+		int slot = nodeStreams ? scores.best(nodeRandom(u)) : scores
+				.best(ids);
 
 		/*
-		 * If the node final score is 0, i.e. there were no preferred community,
-		 * fall back to the "simple" epidemic assignment
+		 * Nothing heard: the node originates its own community
 		 */
-		if (((Double) u.getAttribute(marker + ".score")) == 0.0) {
-			//System.out.println(u.getId() + " Falling back to epidemic.");
-			communityScores.clear();
-			communityScores = communityCounts;
-			super.computeNode(u);
+		if (slot < 0) {
+			originateCommunity(u);
+			setScore(u, 0.0);
+			return;
 		}
 
+		setCommunity(u, ids.labelOf(scores.key(slot)));
+		setScore(u, scores.sumAt(slot));
 	}
 
 	/**
-	 * Compute the scores for all relevant communities for the selected node
-	 * using the SHARC algorithm
+	 * Write the score of a node in its community, unless it is unchanged.
 	 * 
 	 * @param u
-	 *            Node for which the computation is performed
-	 * @complexity O(DELTA^2) where DELTA is the average node degree in the
-	 *             network
+	 *            the node
+	 * @param score
+	 *            its score
+	 */
+	protected void setScore(Node u, double score) {
+		String scoreMarker = getScoreMarker();
+		Object previous = u.getAttribute(scoreMarker);
+		if (!(previous instanceof Number)
+				|| ((Number) previous).doubleValue() != score)
+			u.setAttribute(scoreMarker, score);
+	}
+
+	/**
+	 * Name of the attribute holding the score of the nodes, i.e. the
+	 * community marker followed by ".score".
+	 * 
+	 * @return the score marker
+	 */
+	protected String getScoreMarker() {
+		if (scoreMarkerBase != marker) {
+			scoreMarkerBase = marker;
+			scoreMarker = marker + ".score";
+		}
+		return scoreMarker;
+	}
+
+	/**
+	 * Originate a new community, interning it right away.
 	 */
 	@Override
-	protected void communityScores(Node u) {
-		/*
-		 * Compute the "simple" count of received messages for each community.
-		 * This will be used as a fallback metric if the maximum "Sharc" score
-		 * is 0, meaning there is no preferred community.
-		 */
-		super.communityScores(u);
-		communityCounts = communityScores;
+	protected void originateCommunity(Node u) {
+		getCommunityHistograms();
+		Object previous = u.getAttribute(marker);
+		super.originateCommunity(u);
+		labelWritten(u.getId(), previous, u.getAttribute(marker));
+	}
 
-		/*
-		 * Reset the scores for each communities
-		 */
-		communityScores = new HashMap<Object, Double>();
+	/**
+	 * Random generator of the draws made while computing a node: its own
+	 * stream at the current step if node streams are enabled, the shared
+	 * generator otherwise.
+	 * 
+	 * @param u
+	 *            the node being computed
+	 * @return the generator to draw from
+	 */
+	protected Random nodeRandom(Node u) {
+		if (!nodeStreams)
+			return rng;
+		if (nodeRandom == null)
+			nodeRandom = new NodeRandom(rng.nextLong());
+		nodeRandom.position(stepCount, getNeighborhoodIndex().number(
+				u.getId()));
+		return nodeRandom;
+	}
+
+	/**
+	 * Draw the random values of each node from its own stream, derived from a
+	 * seed, the step and the node number, rather than from the shared
+	 * generator set by {@link #setRandom(Random)}. The draws of a node then
+	 * neither depend on the order the nodes are computed in nor on the draws
+	 * of the other nodes, so that reordered or parallel executions keep the
+	 * same draws. The ties between equally scored communities, which
+	 * otherwise go to the oldest community as in the original assignment,
+	 * are then broken from the stream of the node as well. The seed of the
+	 * streams is drawn from the shared generator, which still gives the order
+	 * of the nodes.
+	 * 
+	 * @param streams
+	 *            true to draw from node streams, false to draw from the
+	 *            shared generator (default)
+	 */
+	public void setNodeStreams(boolean streams) {
+		nodeStreams = streams;
+		nodeRandom = null;
+	}
+
+	@Override
+	public void setRandom(Random rng) {
+		super.setRandom(rng);
+		nodeRandom = null;
+	}
+
+	/**
+	 * Score the communities heard by a node for the SHARC assignment: the
+	 * number of neighbors in each community and the sum of the similarities
+	 * with them. The live histogram of the node is returned as is when the
+	 * similarity is plain and the index exact, otherwise the scores are
+	 * gathered into reused buckets.
+	 * 
+	 * @param u
+	 *            Node for which the computation is performed
+	 * @return the scores by community id, valid until the next node is
+	 *         computed
+	 * @complexity O(1), O(DELTA^2) where DELTA is the average node degree in
+	 *             the network for weighted similarities
+	 */
+	protected CommunityBuckets communityBuckets(Node u) {
+		CommunityHistograms histograms = getCommunityHistograms();
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		if (usesPlainSimilarity() && index.isExact())
+			return histograms.histogram(index.number(u.getId()));
 
 		/*
-		 * Iterate over the nodes that this node "hears"
+		 * Iterate over the nodes that this node "hears", gathered once with
+		 * their community, updating the count and score of their community
 		 */
-		for (Edge e : u.getEnteringEdgeSet()) {
-			Node v = e.getOpposite(u);
-
-			/*
-			 * Update the count for this community
-			 */
-			if (v.hasAttribute(marker)) {
-				// Update score
-				if (communityScores.get(v.getAttribute(marker)) == null)
-					communityScores.put(v.getAttribute(marker),
-							similarity(u, v));
-				else
-					communityScores.put(v.getAttribute(marker),
-							communityScores.get(v.getAttribute(marker))
-									+ similarity(u, v));
-			}
+		scratch.reset(histograms.getCommunityIds().capacity());
+		NeighborScan neighbors = scanNeighbors(u);
+		for (int i = 0; i < neighbors.size(); i++) {
+			int community = neighbors.community(i);
+			if (community >= 0)
+				scratch.add(community, 1.0, neighbors.similarity(i));
 		}
+		return scratch;
 	}
 
 	/**
-	 * Neighborhood similarity between two nodes
+	 * Gather the neighborhood of the node being computed, with the community
+	 * of each neighbor and the similarities computed on demand and cached.
+	 * The scan is done once per node and step, and shared by all the phases
+	 * of the computation. A scan prepared by a parallel step for the node is
+	 * used as is.
+	 * 
+	 * @param u
+	 *            the node being computed
+	 * @return the neighborhood scan of the node
+	 */
+	protected NeighborScan scanNeighbors(Node u) {
+		if (prepared != null && prepared.getOwner() == u)
+			return prepared;
+		scan.scan(u, getCommunityHistograms());
+		return scan;
+	}
+
+	/**
+	 * Community id of a node, as interned by the community histograms.
+	 * Comparing the ids of two nodes is equivalent to comparing their
+	 * community labels.
+	 * 
+	 * @param u
+	 *            the node
+	 * @return the community id of the node, -1 if it has no community
+	 */
+	protected int community(Node u) {
+		return getCommunityHistograms().communityOf(u.getId());
+	}
+
+	/**
+	 * Whether {@link #similarityValue(Node, Node)} is the plain neighborhood
+	 * similarity, in which case community scores can be read directly from the
+	 * live histograms. Subclasses using a weighted similarity must return
+	 * false.
+	 * 
+	 * @return true if the similarity is not overridden
+	 */
+	protected boolean usesPlainSimilarity() {
+		return true;
+	}
+
+	/**
+	 * Neighborhood similarity between two nodes, boxed.
 	 * 
 	 * @param a
 	 *            The first node
 	 * @param b
 	 *            The second node
 	 * @return The similarity value between the two nodes
-	 * @complexity O(DELTA) where DELTA is the average node degree in the
-	 *             network
+	 * @see #similarityValue(Node, Node)
 	 */
 	protected Double similarity(Node a, Node b) {
-		Double similarity = 0.0;
+		return similarityValue(a, b);
+	}
+
+	/**
+	 * Neighborhood similarity between two nodes. Subclasses redefining the
+	 * similarity override this method rather than the boxed
+	 * {@link #similarity(Node, Node)}.
+	 * 
+	 * @param a
+	 *            The first node
+	 * @param b
+	 *            The second node
+	 * @return The similarity value between the two nodes
+	 * @complexity O(1) when the neighborhood index is exact, O(DELTA) where
+	 *             DELTA is the average node degree in the network otherwise
+	 */
+	protected double similarityValue(Node a, Node b) {
+		/*
+		 * Use the incremental index whenever it reflects the graph exactly
+		 */
+		NeighborhoodIndex index = getNeighborhoodIndex();
+		if (index.isExact())
+			return index.similarity(a.getId(), b.getId());
+
+		double similarity = 0.0;
 
 		for (Edge e : a.getEnteringEdgeSet()) {
 			Node v = e.getOpposite(a);
@@ -166,4 +1028,411 @@ public class Sharc extends EpidemicCommunityAlgorithm {
 		else
 			return 1 - (similarity / (a.getDegree() + b.getDegree()));
 	}
+
+	/**
+	 * Similarity between two nodes given by number, as
+	 * {@link #similarityValue(Node, Node)} computes it when the neighborhood
+	 * index is exact, read from the index only. It neither reads nor writes
+	 * the state of the node being computed, so that the parallel steps may
+	 * call it from several threads. Subclasses redefining the similarity
+	 * override both methods.
+	 * 
+	 * @param index
+	 *            neighborhood index of the graph
+	 * @param a
+	 *            number of the node being computed
+	 * @param b
+	 *            number of one of its neighbors
+	 * @return The similarity value between the two nodes
+	 * @complexity O(log(DELTA)) where DELTA is the average node degree in the
+	 *             network
+	 */
+	protected double similarityValue(NeighborhoodIndex index, int a, int b) {
+		return index.similarity(a, b);
+	}
+
+	/**
+	 * Get the neighborhood index of the graph, building it from the current
+	 * graph structure if needed.
+	 * 
+	 * @return the neighborhood index
+	 */
+	protected NeighborhoodIndex getNeighborhoodIndex() {
+		if (neighborhood == null)
+			neighborhood = lanes != null ? lanes.getNeighborhoodIndex()
+					: buildNeighborhoodIndex();
+		return neighborhood;
+	}
+
+	/**
+	 * Bring the neighborhood index up to date if it missed some of the graph
+	 * events, e.g. when the algorithm is not a sink of the graph: the edges
+	 * the graph no longer has are removed from the index, and the edges it
+	 * does not know are added, as if the events had been received, the graph
+	 * being considered as changed. Only the numbers of edges are compared, so
+	 * that an index that missed as many additions as removals is not
+	 * detected. The lanes sharing the index are updated as well.
+	 * 
+	 * @complexity O(1) if the index is up to date, O(m DELTA) otherwise, where
+	 *             m is the number of edges and DELTA the average node degree
+	 *             in the network
+	 */
+	protected void checkNeighborhoodIndex() {
+		if (neighborhood == null
+				|| neighborhood.getEdgeCount() == graph.getEdgeCount())
+			return;
+
+		graphChanged = true;
+		List<Sharc> group = lanes != null ? lanes.lanes : Collections
+				.singletonList(this);
+		for (String edgeId : neighborhood.getEdgeIds())
+			if (graph.getEdge(edgeId) == null)
+				for (Sharc lane : group)
+					lane.unindexEdge(edgeId);
+
+		String weightMarker = neighborhood.getWeightMarker();
+		for (Edge e : graph.getEdgeSet()) {
+			if (neighborhood.hasEdge(e.getId()))
+				continue;
+			for (Sharc lane : group)
+				lane.indexEdge(e.getId(), e.getNode0().getId(), e.getNode1()
+						.getId(), e.isDirected());
+			if (weightMarker != null && e.hasAttribute(weightMarker)) {
+				neighborhood.setWeight(e.getId(), e.getAttribute(weightMarker));
+				for (Sharc lane : group)
+					lane.markEndpoints(e.getId());
+			}
+		}
+	}
+
+	/**
+	 * Build a neighborhood index of the current graph structure with the
+	 * settings of this algorithm.
+	 * 
+	 * @return the new neighborhood index
+	 */
+	protected NeighborhoodIndex buildNeighborhoodIndex() {
+		boolean dense;
+		if (denseNeighborhoods == null)
+			dense = NeighborhoodIndex.worthBitsets(graph.getNodeCount(), graph
+					.getEdgeCount());
+		else
+			dense = denseNeighborhoods;
+		NeighborhoodIndex index = new NeighborhoodIndex(graph, dense,
+				getIndexedWeightMarker());
+		if (hubDegree > 0)
+			index.setApproximation(hubDegree, signatureSize);
+		return index;
+	}
+
+	/**
+	 * Name of the edge attribute whose values the neighborhood index keeps as
+	 * link weights.
+	 * 
+	 * @return null, as the plain similarity does not use link weights
+	 */
+	protected String getIndexedWeightMarker() {
+		return null;
+	}
+
+	/**
+	 * Choose the representation of neighborhoods in the index: bitsets for
+	 * dense graphs (e.g. dense mobility traces), hash sets otherwise.
+	 * 
+	 * @param dense
+	 *            true or false to force the use of bitsets or not, null to
+	 *            choose from the graph density (default)
+	 */
+	public void setDenseNeighborhoods(Boolean dense) {
+		denseNeighborhoods = dense;
+		if (neighborhood != null)
+			neighborhood.setBitsets(dense == null ? NeighborhoodIndex
+					.worthBitsets(graph.getNodeCount(), graph.getEdgeCount())
+					: dense);
+	}
+
+	/**
+	 * Estimate the similarities involving high degree nodes (hubs) from
+	 * MinHash signatures of their neighborhoods, so that the cost of
+	 * processing a topology change no longer depends on the hub degrees.
+	 * Similarities between nodes below the threshold are still computed
+	 * exactly.
+	 * 
+	 * @param hubDegree
+	 *            degree from which a node is considered as a hub, or 0 to
+	 *            compute all similarities exactly (default)
+	 * @param signatureSize
+	 *            number of hash functions of the signatures, the error on
+	 *            estimated similarities decreasing as its square root
+	 */
+	public void setApproximateSimilarity(int hubDegree, int signatureSize) {
+		this.hubDegree = hubDegree;
+		this.signatureSize = signatureSize;
+		if (lanes != null)
+			lanes.setApproximateSimilarity(hubDegree, signatureSize);
+		else if (neighborhood != null) {
+			neighborhood.setApproximation(hubDegree, signatureSize);
+			similarityChanged();
+		}
+	}
+
+	/**
+	 * Drop everything computed from the similarities once the index changed
+	 * the way it computes them.
+	 */
+	protected void similarityChanged() {
+		histograms = null;
+		if (frontier != null)
+			frontier.markAll();
+		residuals = null;
+	}
+
+	/**
+	 * Bound on the error of the estimated similarities that holds with the
+	 * specified confidence, as achieved with the current signature size.
+	 * 
+	 * @param confidence
+	 *            probability with which the bound must hold, in ]0, 1[
+	 * @return the maximum absolute error on estimated similarities, 0 if all
+	 *         similarities are computed exactly
+	 * @see NeighborhoodIndex#similarityErrorBound(double)
+	 */
+	public double getSimilarityErrorBound(double confidence) {
+		return getNeighborhoodIndex().similarityErrorBound(confidence);
+	}
+
+	/**
+	 * Get the live community histograms of the graph, building them from the
+	 * current graph structure and assignment if needed.
+	 * 
+	 * @return the community histograms
+	 */
+	protected CommunityHistograms getCommunityHistograms() {
+		if (histograms == null)
+			histograms = new CommunityHistograms(graph, marker,
+					getNeighborhoodIndex());
+		return histograms;
+	}
+
+	@Override
+	public void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		super.edgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId,
+				directed);
+		indexEdge(edgeId, fromNodeId, toNodeId, directed);
+		flushIfDue(edgeId);
+	}
+
+	/**
+	 * Add an edge to the neighborhood index, updating the histograms and the
+	 * schedulers.
+	 */
+	protected void indexEdge(String edgeId, String fromNodeId,
+			String toNodeId, boolean directed) {
+		if (lanes != null)
+			lanes.addEdge(edgeId, fromNodeId, toNodeId, directed);
+		else if (histograms != null)
+			histograms.addEdge(edgeId, fromNodeId, toNodeId, directed);
+		else if (neighborhood != null)
+			neighborhood.addEdge(edgeId, fromNodeId, toNodeId, directed);
+
+		if (parallel != null && neighborhood != null)
+			parallel.edgeAdded(neighborhood.indexOf(fromNodeId), neighborhood
+					.indexOf(toNodeId));
+
+		/*
+		 * The similarities of both endpoints with all their neighbors changed
+		 */
+		if (frontier != null || residuals != null) {
+			neighborhoodChanged(neighborhood.indexOf(fromNodeId));
+			neighborhoodChanged(neighborhood.indexOf(toNodeId));
+		}
+	}
+
+	@Override
+	public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+		super.edgeRemoved(sourceId, timeId, edgeId);
+		flushIfDue(edgeId);
+		unindexEdge(edgeId);
+	}
+
+	/**
+	 * Remove an edge from the neighborhood index, updating the histograms and
+	 * the schedulers.
+	 */
+	protected void unindexEdge(String edgeId) {
+		if (lanes != null) {
+			lanes.removeEdge(edgeId);
+			return;
+		}
+
+		int[] endpoints = frontier != null || residuals != null
+				|| (parallel != null && parallel.needsEndpoints())
+				? neighborhood.endpoints(edgeId) : null;
+		int from = endpoints != null ? endpoints[0] : -1;
+		int to = endpoints != null ? endpoints[1] : -1;
+
+		if (histograms != null)
+			histograms.removeEdge(edgeId);
+		else if (neighborhood != null)
+			neighborhood.removeEdge(edgeId);
+
+		neighborhoodChanged(from);
+		neighborhoodChanged(to);
+	}
+
+	@Override
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		super.nodeAdded(sourceId, timeId, nodeId);
+
+		/*
+		 * Number the node as soon as it appears, as the index does for the
+		 * nodes of the graph it is built from
+		 */
+		if (neighborhood != null) {
+			int u = neighborhood.number(nodeId);
+			if (frontier != null)
+				frontier.mark(u);
+			if (residuals != null)
+				residuals.invalidate(u);
+		}
+		flushNodeIfDue(nodeId);
+	}
+
+	@Override
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		super.nodeRemoved(sourceId, timeId, nodeId);
+		flushNodeIfDue(nodeId);
+		if (lanes != null) {
+			lanes.removeNode(nodeId);
+			return;
+		}
+
+		if (neighborhood != null)
+			forgetNode(neighborhood.indexOf(nodeId));
+		if (histograms != null)
+			histograms.removeNode(nodeId);
+		else if (neighborhood != null)
+			neighborhood.removeNode(nodeId);
+	}
+
+	@Override
+	public void graphCleared(String sourceId, long timeId) {
+		super.graphCleared(sourceId, timeId);
+		if (convergence != null)
+			convergence.reset();
+		if (frontier != null)
+			frontier.clear();
+		residuals = null;
+		if (parallel != null)
+			parallel.clear();
+		if (lanes != null)
+			lanes.clear();
+		else if (histograms != null)
+			histograms.clear();
+		else if (neighborhood != null)
+			neighborhood.clear();
+	}
+
+	/**
+	 * Forget the state kept about a node that is about to be removed from the
+	 * neighborhood index, marking its neighborhood for the schedulers.
+	 * 
+	 * @param u
+	 *            number of the node in the neighborhood index, ignored if
+	 *            negative
+	 */
+	protected void forgetNode(int u) {
+		if (u < 0)
+			return;
+		if (convergence != null)
+			convergence.forget(u);
+		neighborhoodChanged(u);
+		if (frontier != null)
+			frontier.forget(u);
+		if (residuals != null)
+			residuals.forget(u);
+		if (parallel != null)
+			parallel.remove(u);
+	}
+
+	@Override
+	public void edgeAttributeAdded(String sourceId, long timeId,
+			String edgeId, String attribute, Object value) {
+		super.edgeAttributeAdded(sourceId, timeId, edgeId, attribute, value);
+		if (neighborhood != null
+				&& attribute.equals(neighborhood.getWeightMarker())) {
+			neighborhood.setWeight(edgeId, value);
+			markEndpoints(edgeId);
+			flushIfDue(edgeId);
+		}
+	}
+
+	@Override
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		super.edgeAttributeChanged(sourceId, timeId, edgeId, attribute,
+				oldValue, newValue);
+		if (neighborhood != null
+				&& attribute.equals(neighborhood.getWeightMarker())) {
+			neighborhood.setWeight(edgeId, newValue);
+			markEndpoints(edgeId);
+			flushIfDue(edgeId);
+		}
+	}
+
+	@Override
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			String edgeId, String attribute) {
+		super.edgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+		if (neighborhood != null
+				&& attribute.equals(neighborhood.getWeightMarker())) {
+			neighborhood.setWeight(edgeId, null);
+			markEndpoints(edgeId);
+			flushIfDue(edgeId);
+		}
+	}
+
+	/**
+	 * Mark the endpoints of an edge whose weight changed for the active and
+	 * residual schedulers.
+	 */
+	protected void markEndpoints(String edgeId) {
+		int[] endpoints = neighborhood.endpoints(edgeId);
+		if (endpoints == null)
+			return;
+		if (frontier != null) {
+			frontier.mark(endpoints[0]);
+			frontier.mark(endpoints[1]);
+		}
+		if (residuals != null) {
+			residuals.invalidate(endpoints[0]);
+			residuals.invalidate(endpoints[1]);
+		}
+	}
+
+	@Override
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			String nodeId, String attribute, Object value) {
+		super.nodeAttributeAdded(sourceId, timeId, nodeId, attribute, value);
+		if (attribute.equals(marker))
+			labelWritten(nodeId, null, value);
+	}
+
+	@Override
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		super.nodeAttributeChanged(sourceId, timeId, nodeId, attribute,
+				oldValue, newValue);
+		if (attribute.equals(marker))
+			labelWritten(nodeId, oldValue, newValue);
+	}
+
+	@Override
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		super.nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+		if (attribute.equals(marker))
+			labelWritten(nodeId, null, null);
+	}
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+
+import org.graphstream.graph.Graph;
+
+/**
+ * Group of runs of SHARC (lanes) over the same graph, e.g. with different
+ * seeds or parameters, sharing a single neighborhood index. The network is
+ * parsed and its topology indexed once for all the lanes: each topology change
+ * updates the index once, the histograms of all the lanes being detached
+ * before and attached after the change. Each lane keeps its own marker,
+ * random generator, assignment and state, so that its results are exactly
+ * the ones of a run on its own.
+ * 
+ * Only the indexing is shared: the steps of the lanes are computed one after
+ * the other, each lane visiting the nodes in its own order, rather than in a
+ * single pass over the nodes computing all the lanes, which would change the
+ * order of the nodes of each lane and so its results. With the plain
+ * similarity and an exact index, a node is computed from the histogram of the
+ * lane without walking its adjacency, which each lane only walks to update
+ * its histograms when the node changes community. The weighted similarities
+ * walk the adjacency of each node once per lane.
+ * 
+ * Lanes must be built on the graph of the group, with distinct markers, and
+ * added before the first step. They must index the graph the same way, i.e.
+ * use the same weight marker, neighborhood representation and similarity
+ * approximation, the settings of the first lane being used for the shared
+ * index.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class SharcLanes {
+
+	/**
+	 * Graph of the lanes
+	 */
+	protected Graph graph;
+
+	/**
+	 * Runs sharing the neighborhood index
+	 */
+	protected ArrayList<Sharc> lanes = new ArrayList<Sharc>();
+
+	/**
+	 * Shared neighborhood index, built on first use
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * New empty group of lanes over the specified graph.
+	 * 
+	 * @param graph
+	 *            graph of the lanes
+	 */
+	public SharcLanes(Graph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Add a lane to the group.
+	 * 
+	 * @param lane
+	 *            algorithm initialized on the graph of the group
+	 * @throws IllegalArgumentException
+	 *             if the lane runs on another graph, or does not index the
+	 *             graph as the other lanes
+	 * @throws IllegalStateException
+	 *             if the lanes already started
+	 */
+	public void addLane(Sharc lane) {
+		if (lane.graph != graph)
+			throw new IllegalArgumentException("lane runs on another graph");
+		if (index != null)
+			throw new IllegalStateException("lanes already started");
+		if (!lanes.isEmpty() && !sameIndex(lanes.get(0), lane))
+			throw new IllegalArgumentException(
+					"lane does not index the graph as the other lanes");
+		lane.lanes = this;
+		lane.neighborhood = null;
+		lane.histograms = null;
+		lanes.add(lane);
+	}
+
+	/**
+	 * Number of lanes of the group.
+	 * 
+	 * @return the number of lanes
+	 */
+	public int getLaneCount() {
+		return lanes.size();
+	}
+
+	/**
+	 * Lane of the group.
+	 * 
+	 * @param k
+	 *            position of the lane, in the order lanes were added
+	 * @return the lane
+	 */
+	public Sharc getLane(int k) {
+		return lanes.get(k);
+	}
+
+	/**
+	 * Compute a step of all the lanes, in the order they were added.
+	 * 
+	 * @complexity as many steps of SHARC as there are lanes, the topology
+	 *             being indexed once for all
+	 */
+	public void compute() {
+		getNeighborhoodIndex();
+		for (Sharc lane : lanes)
+			lane.compute();
+	}
+
+	/**
+	 * Whether all the lanes converged.
+	 * 
+	 * @return true if the assignments of all the lanes are stable or
+	 *         oscillating
+	 */
+	public boolean isConverged() {
+		for (Sharc lane : lanes)
+			if (!lane.isConverged())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Terminate all the lanes, which leave the group.
+	 */
+	public void terminate() {
+		for (Sharc lane : lanes) {
+			lane.terminate();
+			lane.lanes = null;
+		}
+		lanes.clear();
+		index = null;
+	}
+
+	/**
+	 * Get the shared neighborhood index, building it from the current graph
+	 * structure with the settings of the first lane if needed.
+	 * 
+	 * @return the neighborhood index
+	 */
+	protected NeighborhoodIndex getNeighborhoodIndex() {
+		if (index == null && !lanes.isEmpty())
+			index = lanes.get(0).buildNeighborhoodIndex();
+		return index;
+	}
+
+	/**
+	 * Whether two lanes index the graph the same way.
+	 */
+	protected boolean sameIndex(Sharc a, Sharc b) {
+		String wa = a.getIndexedWeightMarker();
+		String wb = b.getIndexedWeightMarker();
+		return (wa == null ? wb == null : wa.equals(wb))
+				&& (a.denseNeighborhoods == null ? b.denseNeighborhoods == null
+						: a.denseNeighborhoods.equals(b.denseNeighborhoods))
+				&& a.hubDegree == b.hubDegree
+				&& a.signatureSize == b.signatureSize;
+	}
+
+	/**
+	 * Add an edge to the shared index, updating the histograms of all the
+	 * lanes. Edges already known are ignored, as every lane receives the
+	 * event.
+	 */
+	protected void addEdge(String edgeId, String fromNodeId, String toNodeId,
+			boolean directed) {
+		if (index == null || index.hasEdge(edgeId))
+			return;
+
+		int[] ends = new int[] { index.number(fromNodeId),
+				index.number(toNodeId) };
+		for (Sharc lane : lanes)
+			if (lane.histograms != null)
+				lane.histograms.detach(ends);
+		index.addEdge(edgeId, fromNodeId, toNodeId, directed);
+		for (Sharc lane : lanes)
+			if (lane.histograms != null)
+				lane.histograms.attach(ends);
+	}
+
+	/**
+	 * Remove an edge from the shared index, updating the histograms and
+	 * schedulers of all the lanes.
+	 */
+	protected void removeEdge(String edgeId) {
+		int[] ends = index == null ? null : index.endpoints(edgeId);
+		if (ends == null)
+			return;
+
+		/*
+		 * Lanes with pending events compute them on the graph they were
+		 * received on, as they would on their own
+		 */
+		for (Sharc lane : lanes)
+			lane.flushIfDue(edgeId);
+
+		ends = ends.clone();
+		for (Sharc lane : lanes)
+			if (lane.histograms != null)
+				lane.histograms.detach(ends);
+		index.removeEdge(edgeId);
+		for (Sharc lane : lanes) {
+			if (lane.histograms != null)
+				lane.histograms.attach(ends);
+			lane.neighborhoodChanged(ends[0]);
+			lane.neighborhoodChanged(ends[1]);
+		}
+	}
+
+	/**
+	 * Remove a node from the shared index, updating the histograms and
+	 * schedulers of all the lanes.
+	 */
+	protected void removeNode(String nodeId) {
+		int u = index == null ? -1 : index.indexOf(nodeId);
+		if (u < 0)
+			return;
+
+		for (Sharc lane : lanes)
+			lane.flushNodeIfDue(nodeId);
+		for (Sharc lane : lanes)
+			lane.forgetNode(u);
+
+		int[] nodes = new int[index.degree(u) + 1];
+		nodes[0] = u;
+		System.arraycopy(index.neighbors(u), 0, nodes, 1, index.degree(u));
+
+		for (Sharc lane : lanes)
+			if (lane.histograms != null)
+				lane.histograms.detach(nodes);
+		index.removeNode(nodeId);
+		nodes[0] = -1;
+		for (Sharc lane : lanes)
+			if (lane.histograms != null) {
+				lane.histograms.forget(u);
+				lane.histograms.attach(nodes);
+			}
+	}
+
+	/**
+	 * Remove all nodes from the shared index and from the histograms of all
+	 * the lanes.
+	 */
+	protected void clear() {
+		if (index == null)
+			return;
+		index.clear();
+		for (Sharc lane : lanes)
+			if (lane.histograms != null)
+				lane.histograms.reset();
+	}
+
+	/**
+	 * Change the similarity approximation of the shared index, for all the
+	 * lanes.
+	 */
+	protected void setApproximateSimilarity(int hubDegree, int signatureSize) {
+		for (Sharc lane : lanes) {
+			lane.hubDegree = hubDegree;
+			lane.signatureSize = signatureSize;
+		}
+		if (index == null)
+			return;
+		index.setApproximation(hubDegree, signatureSize);
+		for (Sharc lane : lanes)
+			lane.similarityChanged();
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In place step of the SHARC assignment computed by connected components.
+ * The assignment of a node only depends on its neighbors, so that the
+ * components are independent: each one is computed in place by a single
+ * task, its nodes in an order drawn from the seed, the step and the
+ * component, with no synchronization with the other tasks. The small
+ * components are batched into tasks of at least GRAIN nodes, and the tasks
+ * are balanced by the work-stealing pool.
+ * 
+ * A giant component, holding more than a sixteenth of the nodes, would leave
+ * the other threads idle. It is computed instead by the classes of a
+ * {@link DistanceTwoColoring}, the nodes of a class in parallel, which is
+ * still equivalent to an in place step. The choice does not depend on the
+ * number of threads, nor does the result.
+ * 
+ * The communities are updated in the frozen buffer as the nodes are
+ * computed. A node originating a community uses the id following the frozen
+ * ids by its number, so that the result does not depend on the number of
+ * threads.
+ * 
+ * For an algorithm keeping a state per node, the small components are
+ * computed one after the other by the algorithm, in the same orders, and the
+ * giant ones by color classes, their neighborhoods only being gathered in
+ * parallel. The communities are then written as the nodes are computed.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class ShardedStep extends SynchronousStep {
+
+	/**
+	 * Number of nodes below which a component is never computed by color
+	 * classes
+	 */
+	protected static final int GIANT = 4 * GRAIN;
+
+	/**
+	 * Upper bound of the frozen community ids, the ids of the communities
+	 * originated during the step following it
+	 */
+	protected int frozenRange;
+
+	/**
+	 * Components of the graph
+	 */
+	protected ComponentIndex components;
+
+	/**
+	 * Components computed by the sharded tasks, and the cumulated number of
+	 * nodes of the components up to each one
+	 */
+	protected int[] shards = new int[16];
+
+	protected int[] weights = new int[17];
+
+	/**
+	 * Number of components computed by the sharded tasks, and number of
+	 * components computed by color classes
+	 */
+	protected int shardCount;
+
+	protected int giantCount;
+
+	/**
+	 * Current communities of the nodes, during the step
+	 */
+	protected CommunityHistograms histograms;
+
+	/**
+	 * New sharded step of an algorithm, over its neighborhood index.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 * @param parallelism
+	 *            number of threads computing the components
+	 * @param seed
+	 *            seed of the node orders
+	 */
+	public ShardedStep(Sharc algorithm, int parallelism, long seed) {
+		super(algorithm, parallelism, seed);
+	}
+
+	/**
+	 * Compute all the nodes in place, component by component. The histograms
+	 * are only read, before the tasks start.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @param components
+	 *            synchronized components of the graph
+	 * @param coloring
+	 *            synchronized distance-2 coloring of the graph, or null to
+	 *            compute the largest components by a single task as well
+	 * @complexity O(n DELTA / p + k) where n is the number of nodes, DELTA the
+	 *             average node degree, p the number of threads and k the
+	 *             number of colors
+	 */
+	public void compute(CommunityHistograms histograms,
+			ComponentIndex components, DistanceTwoColoring coloring) {
+		freeze(histograms);
+		this.histograms = histograms;
+		this.components = components;
+
+		int giant = Math.max(GIANT, size / 16);
+		ArrayList<Integer> giants = new ArrayList<Integer>();
+		shardCount = 0;
+		for (int c = 0; c < components.getComponentCount(); c++) {
+			int s = components.size(c);
+			if (s == 0)
+				continue;
+			if (coloring != null && s > giant) {
+				giants.add(c);
+				continue;
+			}
+			if (shardCount == shards.length) {
+				shards = Arrays.copyOf(shards, 2 * shardCount);
+				weights = Arrays.copyOf(weights, 2 * shardCount + 1);
+			}
+			shards[shardCount] = c;
+			weights[shardCount + 1] = weights[shardCount] + s;
+			shardCount++;
+		}
+		giantCount = giants.size();
+
+		try {
+			if (stateful)
+				for (int i = 0; i < shardCount; i++)
+					computeComponent(shards[i], null);
+			else if (shardCount > 0)
+				pool.invoke(new Shard(0, shardCount));
+			for (int c : giants)
+				computeColored(c, coloring);
+		} finally {
+			this.histograms = null;
+			this.components = null;
+		}
+		endStep();
+	}
+
+	@Override
+	public void freeze(CommunityHistograms histograms) {
+		super.freeze(histograms);
+		frozenRange = range;
+		range += size;
+	}
+
+	/**
+	 * Community of a node at the end of the last step.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the community id, -1 if the node has none
+	 */
+	@Override
+	public int choiceOf(int u) {
+		return u < size && communities[u] >= 0 ? communities[u] : -1;
+	}
+
+	/**
+	 * Number of components computed by sharded tasks at the last step.
+	 * 
+	 * @return the number of components
+	 */
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Number of components computed by color classes at the last step.
+	 * 
+	 * @return the number of components
+	 */
+	public int getGiantCount() {
+		return giantCount;
+	}
+
+	/**
+	 * Compute a node and update its community in place, with the algorithm
+	 * if it keeps a state per node.
+	 */
+	@Override
+	protected void computeNode(int u, CommunityBuckets h) {
+		if (communities[u] == ABSENT)
+			return;
+		if (stateful) {
+			commitNode(node(u), null);
+			communities[u] = histograms.communityOf(u);
+			return;
+		}
+		choose(u, h);
+		communities[u] = choices[u] == ORIGINATE ? frozenRange + u
+				: choices[u];
+	}
+
+	/**
+	 * Compute the nodes of a component one after the other.
+	 */
+	protected void computeComponent(int c, CommunityBuckets h) {
+		int[] nodes = Arrays.copyOf(components.members(c), components.size(c));
+		Random random = new Random(hash(-1, c));
+		for (int i = nodes.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int u = nodes[i];
+			nodes[i] = nodes[j];
+			nodes[j] = u;
+		}
+		for (int u : nodes)
+			computeNode(u, h);
+	}
+
+	/**
+	 * Compute the nodes of a component by color classes in an order drawn
+	 * from the seed, the nodes of a class in parallel.
+	 */
+	protected void computeColored(int c, DistanceTwoColoring coloring) {
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int color = 0; color < coloring.getColorCount(); color++)
+			if (coloring.size(color) > 0)
+				order.add(color);
+		Collections.shuffle(order, new Random(hash(-1, c)));
+
+		int[] nodes = new int[16];
+		for (int color : order) {
+			int[] members = coloring.members(color);
+			int count = 0;
+			for (int i = 0; i < coloring.size(color); i++)
+				if (components.componentOf(members[i]) == c) {
+					if (count == nodes.length)
+						nodes = Arrays.copyOf(nodes, 2 * count);
+					nodes[count++] = members[i];
+				}
+			if (count > 0)
+				computeNodes(nodes, count);
+			if (stateful)
+				update(histograms, nodes, count);
+		}
+	}
+
+	/**
+	 * Task computing a range of the sharded components, split until it holds
+	 * a single component or GRAIN nodes at most.
+	 */
+	@SuppressWarnings("serial")
+	protected class Shard extends RecursiveAction {
+
+		protected int from;
+
+		protected int to;
+
+		protected Shard(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1 || weights[to] - weights[from] <= GRAIN) {
+				CommunityBuckets h = buckets.get();
+				for (int i = from; i < to; i++)
+					computeComponent(shards[i], h);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Shard(from, middle), new Shard(middle, to));
+			}
+		}
+	}
+}
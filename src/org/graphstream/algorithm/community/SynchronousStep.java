@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) 2010 Guillaume-Jean Herbiet
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.graphstream.algorithm.community;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Synchronous (Jacobi) step of the SHARC assignment. Every node chooses its
+ * community from the communities its neighbors had at the end of the previous
+ * step, read from a frozen buffer, and the choices are written to a separate
+ * buffer that the algorithm applies once all the nodes are computed.
+ * 
+ * Nodes are computed in parallel on a fork/join pool. As the choice of a node
+ * only depends on the frozen buffer, the node and the step, the result does
+ * not depend on the number of threads nor on their scheduling. The choice is
+ * the one of {@link Sharc#computeNode(Node)}, from the similarities given by
+ * {@link Sharc#similarityValue(NeighborhoodIndex, int, int)}, the ties
+ * between equally scored communities going to the oldest one, or being
+ * broken from the {@link NodeRandom} stream of the node at the step when the
+ * algorithm uses node streams, rather than from a shared random generator.
+ * 
+ * The nodes may also be computed by subsets whose nodes do not read each
+ * other's community, e.g. the classes of a {@link DistanceTwoColoring}, the
+ * frozen communities of each subset being updated once its choices are
+ * applied. The step is then equivalent to an in place step computing the
+ * subsets one after the other.
+ * 
+ * Algorithms keeping a state per node (see {@link Sharc#keepsNodeState()})
+ * read and write the state of the neighbors as they compute a node, which
+ * can not be done concurrently. For them, only the neighborhoods of the
+ * nodes are gathered in parallel, from the frozen buffer, by chunks of
+ * nodes. The nodes of each chunk are then computed by the algorithm one
+ * after the other, in the order of the subset, and their communities are
+ * written right away.
+ * 
+ * @author Guillaume-Jean Herbiet
+ * 
+ */
+public class SynchronousStep {
+
+	/**
+	 * Choice of a node that must originate a new community
+	 */
+	public static final int ORIGINATE = -2;
+
+	/**
+	 * Frozen community of a number not used by any node
+	 */
+	protected static final int ABSENT = -3;
+
+	/**
+	 * Number of nodes below which a range is computed by a single task
+	 */
+	protected static final int GRAIN = 256;
+
+	/**
+	 * Number of nodes whose neighborhoods are gathered before they are
+	 * computed, for the algorithms keeping a state per node
+	 */
+	protected static final int CHUNK = 16 * GRAIN;
+
+	/**
+	 * Algorithm whose assignment is computed
+	 */
+	protected Sharc algorithm;
+
+	/**
+	 * Whether the algorithm keeps a state per node, so that its nodes are
+	 * computed one after the other
+	 */
+	protected boolean stateful;
+
+	/**
+	 * Neighborhood index of the graph, read concurrently by the tasks
+	 */
+	protected NeighborhoodIndex index;
+
+	/**
+	 * Pool running the tasks
+	 */
+	protected ForkJoinPool pool;
+
+	/**
+	 * Seed of the tie breaks
+	 */
+	protected long seed;
+
+	/**
+	 * Whether the tie breaks are drawn from the node streams, rather than
+	 * going to the oldest community
+	 */
+	protected boolean nodeStreams;
+
+	/**
+	 * Node streams of each thread, drawing the tie breaks
+	 */
+	protected ThreadLocal<NodeRandom> streams = new ThreadLocal<NodeRandom>() {
+		@Override
+		protected NodeRandom initialValue() {
+			return new NodeRandom(seed);
+		}
+	};
+
+	/**
+	 * Number of steps computed so far
+	 */
+	protected int step;
+
+	/**
+	 * Community id of each node at the end of the previous step (frozen
+	 * buffer), -1 if it has none
+	 */
+	protected int[] communities = new int[16];
+
+	/**
+	 * Community id chosen by each node (next buffer), or ORIGINATE
+	 */
+	protected int[] choices = new int[16];
+
+	/**
+	 * Score of each node in its chosen community
+	 */
+	protected double[] scores = new double[16];
+
+	/**
+	 * Number of node numbers of the step
+	 */
+	protected int size;
+
+	/**
+	 * Upper bound of the community ids of the step
+	 */
+	protected int range;
+
+	/**
+	 * Community ids of the histograms, only read while the nodes are computed
+	 */
+	protected CommunityIds ids;
+
+	/**
+	 * Labels of the community ids of the histograms when the step was frozen
+	 */
+	protected Object[] labels = new Object[0];
+
+	/**
+	 * Labels of the communities originated under ids above the frozen ones
+	 */
+	protected HashMap<Integer, Object> originated = new HashMap<Integer, Object>();
+
+	/**
+	 * Nodes computed by the running tasks, null for all the node numbers
+	 */
+	protected int[] subset;
+
+	/**
+	 * Whether the running tasks gather the neighborhoods of the nodes rather
+	 * than computing them, and the position of the first node gathered
+	 */
+	protected boolean scanning;
+
+	protected int first;
+
+	/**
+	 * Neighborhoods gathered for the chunk of nodes being computed, by
+	 * position in the chunk
+	 */
+	protected NeighborScan[] scans = new NeighborScan[0];
+
+	/**
+	 * Score accumulator of each thread
+	 */
+	protected ThreadLocal<CommunityBuckets> buckets =
+			new ThreadLocal<CommunityBuckets>() {
+		@Override
+		protected CommunityBuckets initialValue() {
+			return new CommunityBuckets();
+		}
+	};
+
+	/**
+	 * New synchronous step of an algorithm, over its neighborhood index.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 * @param parallelism
+	 *            number of threads computing the nodes
+	 * @param seed
+	 *            seed of the tie breaks
+	 */
+	public SynchronousStep(Sharc algorithm, int parallelism, long seed) {
+		this.algorithm = algorithm;
+		this.index = algorithm.getNeighborhoodIndex();
+		this.seed = seed;
+		stateful = algorithm.keepsNodeState();
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	/**
+	 * Draw the tie breaks from the node streams rather than giving them to
+	 * the oldest community, as {@link Sharc#setNodeStreams(boolean)} does.
+	 * 
+	 * @param on
+	 *            true to draw the tie breaks
+	 */
+	public void setNodeStreams(boolean on) {
+		nodeStreams = on;
+	}
+
+	/**
+	 * Compute the choices of all the nodes from their current communities.
+	 * The histograms are only read, before the tasks start.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @complexity O(n DELTA / p) where n is the number of nodes, DELTA the
+	 *             average node degree and p the number of threads
+	 */
+	public void compute(CommunityHistograms histograms) {
+		freeze(histograms);
+		computeNodes(null, size);
+		endStep();
+	}
+
+	/**
+	 * Copy the current communities of all the nodes to the frozen buffer.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @complexity O(n + c) where n is the number of nodes and c the capacity
+	 *             of the community ids
+	 */
+	public void freeze(CommunityHistograms histograms) {
+		size = index.size();
+		if (size > communities.length) {
+			int capacity = Math.max(2 * communities.length, size);
+			communities = new int[capacity];
+			choices = new int[capacity];
+			scores = new double[capacity];
+		}
+		for (int u = 0; u < size; u++)
+			communities[u] = index.idOf(u) == null ? ABSENT : histograms
+					.communityOf(u);
+		range = histograms.getCommunityIds().capacity();
+
+		/*
+		 * Applying the step releases the ids of the communities that become
+		 * empty, so that their labels are resolved beforehand
+		 */
+		ids = histograms.getCommunityIds();
+		labels = new Object[range];
+		for (int c = 0; c < range; c++)
+			labels[c] = ids.labelOf(c);
+		originated.clear();
+	}
+
+	/**
+	 * Compute the choices of some nodes from the frozen buffer, in parallel.
+	 * If the algorithm keeps a state per node, the nodes are computed by the
+	 * algorithm instead, from their neighborhoods gathered in parallel.
+	 * 
+	 * @param nodes
+	 *            numbers of the nodes, or null for all the node numbers
+	 * @param count
+	 *            number of nodes to compute
+	 * @complexity O(c DELTA / p) where c is the number of nodes, DELTA the
+	 *             average node degree and p the number of threads, plus the
+	 *             sequential computation of the nodes by the algorithm if it
+	 *             keeps a state per node
+	 */
+	public void computeNodes(int[] nodes, int count) {
+		subset = nodes;
+		try {
+			if (!stateful)
+				pool.invoke(new Range(0, count));
+			else
+				for (int from = 0; from < count; from += CHUNK) {
+					int to = Math.min(count, from + CHUNK);
+					scanNodes(from, to);
+					for (int i = from; i < to; i++)
+						commitNode(scans[i - from].getOwner(), scans[i - from]);
+				}
+		} finally {
+			subset = null;
+		}
+	}
+
+	/**
+	 * Gather the neighborhoods of a range of the nodes being computed, in
+	 * parallel.
+	 */
+	protected void scanNodes(int from, int to) {
+		if (scans.length < to - from) {
+			int length = scans.length;
+			scans = Arrays.copyOf(scans, Math.max(2 * length, to - from));
+			for (int i = length; i < scans.length; i++)
+				scans[i] = new NeighborScan(algorithm);
+		}
+		scanning = true;
+		first = from;
+		try {
+			pool.invoke(new Range(from, to));
+		} finally {
+			scanning = false;
+		}
+	}
+
+	/**
+	 * Gather the neighborhood of a node within a task, from the frozen
+	 * buffer.
+	 */
+	protected void scanNode(int i, int u) {
+		NeighborScan scan = scans[i];
+		Node n = u < size && communities[u] != ABSENT ? node(u) : null;
+		if (n == null)
+			scan.clear();
+		else
+			scan.prepare(n, index, communities);
+	}
+
+	/**
+	 * Compute a node in place with the algorithm, outside of the tasks.
+	 * 
+	 * @param n
+	 *            the node, ignored if null
+	 * @param scan
+	 *            its neighborhood gathered beforehand, or null to let the
+	 *            algorithm gather it
+	 */
+	protected void commitNode(Node n, NeighborScan scan) {
+		if (n == null)
+			return;
+		algorithm.prepared = scan;
+		try {
+			algorithm.computeNode(n);
+		} finally {
+			algorithm.prepared = null;
+		}
+		algorithm.updateDisplayClass(n);
+	}
+
+	/**
+	 * Node of a number, null if the number is not used.
+	 */
+	protected Node node(int u) {
+		String id = index.idOf(u);
+		return id == null ? null : algorithm.graph.<Node> getNode(id);
+	}
+
+	/**
+	 * Copy the current communities of some nodes to the frozen buffer, once
+	 * their choices have been applied.
+	 * 
+	 * @param histograms
+	 *            current communities of the nodes
+	 * @param nodes
+	 *            numbers of the nodes
+	 * @param count
+	 *            number of nodes
+	 * @return the number of nodes whose community changed
+	 */
+	public int update(CommunityHistograms histograms, int[] nodes, int count) {
+		int changed = 0;
+		for (int i = 0; i < count; i++)
+			if (nodes[i] < size && communities[nodes[i]] != ABSENT) {
+				int community = histograms.communityOf(nodes[i]);
+				if (community != communities[nodes[i]])
+					changed++;
+				communities[nodes[i]] = community;
+			}
+		range = histograms.getCommunityIds().capacity();
+		return changed;
+	}
+
+	/**
+	 * Whether the nodes are computed by the algorithm one after the other,
+	 * their neighborhoods only being gathered in parallel, as the algorithm
+	 * keeps a state per node. Their communities are then written as they are
+	 * computed, rather than applied once the step is complete.
+	 * 
+	 * @return true if the algorithm keeps a state per node
+	 */
+	public boolean isStateful() {
+		return stateful;
+	}
+
+	/**
+	 * Complete the step, changing the tie breaks of the next one.
+	 */
+	public void endStep() {
+		step++;
+	}
+
+	/**
+	 * Community chosen by a node at the last step.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the community id, -1 if the node has none, or ORIGINATE
+	 */
+	public int choiceOf(int u) {
+		return u < size && communities[u] != ABSENT ? choices[u] : -1;
+	}
+
+	/**
+	 * Label of the community chosen by a node at the last step, for the steps
+	 * that originate communities under ids above the frozen ones rather than
+	 * choosing ORIGINATE. The label of such a community is created on first
+	 * call. Not thread-safe, meant to be called once the step is complete.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the label, or null if the node has no community or must
+	 *         originate one
+	 */
+	public Object labelOf(int u) {
+		int community = choiceOf(u);
+		if (community < 0)
+			return null;
+		if (community < labels.length && labels[community] != null)
+			return labels[community];
+		Object label = originated.get(community);
+		if (label == null) {
+			label = new Community();
+			originated.put(community, label);
+		}
+		return label;
+	}
+
+	/**
+	 * Score of a node in the community it chose at the last step.
+	 * 
+	 * @param u
+	 *            number of the node
+	 * @return the score, i.e. the sum of the similarities of the node to its
+	 *         neighbors in the community
+	 */
+	public double scoreOf(int u) {
+		return u < size ? scores[u] : 0.0;
+	}
+
+	/**
+	 * Number of node numbers of the last step.
+	 * 
+	 * @return the upper bound of the node numbers
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of threads computing the nodes.
+	 * 
+	 * @return the parallelism of the pool
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Stop the threads of the pool.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Choose the community of a node from the frozen communities of its
+	 * neighbors, as the SHARC assignment does: highest sum of similarities,
+	 * ties going to the oldest community, a node hearing no community having
+	 * to originate one.
+	 */
+	protected void choose(int u, CommunityBuckets h) {
+		if (community(u) == ABSENT)
+			return;
+
+		h.reset(range);
+		int[] neighbors = index.neighbors(u);
+		for (int j = 0; j < index.degree(u); j++) {
+			int community = community(neighbors[j]);
+			if (community >= 0)
+				h.add(community, 1.0, algorithm.similarityValue(index, u,
+						neighbors[j]));
+		}
+
+		int slot = nodeStreams ? h.best(stream(u)) : h.best(ids);
+		if (slot < 0) {
+			choices[u] = ORIGINATE;
+			scores[u] = 0.0;
+			return;
+		}
+		choices[u] = h.key(slot);
+		scores[u] = h.sumAt(slot);
+	}
+
+	/**
+	 * Stream of the tie breaks of a node at the current step, from the
+	 * streams of the calling thread.
+	 */
+	protected NodeRandom stream(int u) {
+		NodeRandom random = streams.get();
+		random.position(step, u);
+		return random;
+	}
+
+	/**
+	 * Compute a node within a task, choosing its community.
+	 */
+	protected void computeNode(int u, CommunityBuckets h) {
+		choose(u, h);
+	}
+
+	/**
+	 * Community id of a node as read by the tasks, from the frozen buffer.
+	 */
+	protected int community(int u) {
+		return communities[u];
+	}
+
+	protected long hash(int u, int community) {
+		long h = seed ^ (step * 0x9E3779B97F4A7C15L)
+				^ (((long) u) << 32 | (community & 0xFFFFFFFFL));
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Task computing a range of node numbers, or of positions in the subset,
+	 * split until it is small enough.
+	 */
+	@SuppressWarnings("serial")
+	protected class Range extends RecursiveAction {
+
+		protected int from;
+
+		protected int to;
+
+		protected Range(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				CommunityBuckets h = buckets.get();
+				for (int i = from; i < to; i++) {
+					int u = subset == null ? i : subset[i];
+					if (scanning)
+						scanNode(i - first, u);
+					else
+						computeNode(u, h);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Range(from, middle), new Range(middle, to));
+			}
+		}
+	}
+}